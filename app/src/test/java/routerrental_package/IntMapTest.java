@@ -0,0 +1,101 @@
+package routerrental_package;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks IntMap against HashMap, which it replaces for the routers and the
+ * schedules
+ */
+class IntMapTest {
+
+	@Test
+	void putGetAndRemove() {
+		IntMap<String> map = new IntMap<String>();
+		int[] keys = { 0, 1, -1, 42, Integer.MIN_VALUE, Integer.MAX_VALUE };
+		for (int key : keys)
+			assertNull(map.put(key, "v" + key));
+		assertEquals(keys.length, map.size());
+		for (int key : keys) {
+			assertTrue(map.containsKey(key));
+			assertEquals("v" + key, map.get(key));
+		}
+		assertEquals("v42", map.put(42, "new"));
+		assertEquals("new", map.get(42));
+		assertEquals(keys.length, map.size());
+
+		for (int key : keys)
+			assertEquals(key == 42 ? "new" : "v" + key, map.remove(key));
+		assertTrue(map.isEmpty());
+		assertNull(map.get(0));
+		assertNull(map.remove(0));
+	}
+
+	@Test
+	void nullValuesAreRejected() {
+		assertThrows(NullPointerException.class, () -> new IntMap<String>().put(1, null));
+	}
+
+	@Test
+	void keepsTheKeysProbedPastARemovedOne() {
+		// Enough keys in a segment to collide and grow the tables many times
+		IntMap<Integer> map = new IntMap<Integer>();
+		for (int key = 0; key < 10_000; key++)
+			map.put(key, key);
+		for (int key = 0; key < 10_000; key += 2)
+			assertEquals(key, map.remove(key));
+		for (int key = 0; key < 10_000; key++)
+			assertEquals(key % 2 == 0 ? null : Integer.valueOf(key), map.get(key));
+		assertEquals(5_000, map.size());
+	}
+
+	@Test
+	void matchesHashMap() {
+		SplittableRandom random = new SplittableRandom(7);
+		IntMap<Integer> map = new IntMap<Integer>();
+		HashMap<Integer, Integer> model = new HashMap<Integer, Integer>();
+		for (int operation = 0; operation < 200_000; operation++) {
+			// A small range of keys, so the same keys are put and removed again
+			int key = random.nextInt(-2_000, 2_000);
+			int choice = random.nextInt(10);
+			if (choice < 5) {
+				int value = random.nextInt();
+				assertEquals(model.put(key, value), map.put(key, value));
+			} else if (choice < 8) {
+				assertEquals(model.remove(key), map.remove(key));
+			} else {
+				assertEquals(model.get(key), map.get(key));
+				assertEquals(model.containsKey(key), map.containsKey(key));
+			}
+			assertEquals(model.size(), map.size());
+
+			if (operation % 10_000 == 0) {
+				int[] keys = map.keys();
+				Arrays.sort(keys);
+				assertTrue(Arrays.equals(model.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(),
+						keys));
+				assertEquals(model, map.toMap());
+				assertEquals(model.size(), map.values().size());
+			}
+		}
+		assertEquals(model, map.toMap());
+		assertFalse(map.isEmpty());
+	}
+
+	@Test
+	void copiesAMap() {
+		HashMap<Integer, String> model = new HashMap<Integer, String>();
+		for (int key = -50; key < 50; key++)
+			model.put(key * 31, "v" + key);
+		assertEquals(model, new IntMap<String>(model).toMap());
+	}
+}
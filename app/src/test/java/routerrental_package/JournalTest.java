@@ -0,0 +1,147 @@
+package routerrental_package;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that replaying the journal keeps the whole records and cuts the torn
+ * one left by a crash. The journal is written to ./database like the system
+ * does.
+ */
+class JournalTest extends SystemIformationHolder {
+	/**
+	 * Path of the journal file
+	 */
+	private static final Path PATH = Paths.get("database", "journal.log");
+
+	@BeforeEach
+	void deleteJournal() throws IOException, ClassNotFoundException {
+		Files.createDirectories(PATH.getParent());
+		Files.deleteIfExists(PATH);
+		emptyStores();
+	}
+
+	/**
+	 * Empties the stores the journal is replayed to
+	 */
+	private static void emptyStores() throws IOException, ClassNotFoundException {
+		router = new IntMap<Router>();
+		reservation = new HashReservationStore();
+		routerSchedule = new IntMap<RouterSchedule>();
+		feedback = new StoreLoader<ArrayList<String>>("feedbacks", ArrayList::new);
+		feedback.load();
+	}
+
+	/**
+	 * Writes a router, a reservation and a feedback, then empties the stores
+	 *
+	 * @return length Length of the journal before the feedback
+	 */
+	private static long write() throws Exception {
+		journal = new Journal(true);
+		journal.open();
+		journal.logAddRouter(new Router(100, 'a', 4));
+		journal.logAddReservation(100, new Reservation(1, 100, 'd', 0, 86_400_000L, 2));
+		long length = journal.mark();
+		journal.logFeedback(0, "Fast and reliable");
+		journal.close();
+		emptyStores();
+		return length;
+	}
+
+	@Test
+	void replaysTheRecords() throws Exception {
+		write();
+		long length = Files.size(PATH);
+
+		new Journal(true).replay();
+
+		assertTrue(router.containsKey(100));
+		assertEquals(100, reservation.get(1).getRouterSerialNumber());
+		assertTrue(routerSchedule.get(100).contains(1, 86_400_000L));
+		assertEquals("Fast and reliable", feedback.get().get(0));
+		assertEquals(length, Files.size(PATH));
+	}
+
+	@Test
+	void cutsATornRecord() throws Exception {
+		long length = write();
+		try (RandomAccessFile file = new RandomAccessFile(PATH.toFile(), "rw")) {
+			file.setLength(file.length() - 3);
+		}
+
+		new Journal(true).replay();
+
+		assertTrue(router.containsKey(100));
+		assertTrue(routerSchedule.get(100).contains(1, 86_400_000L));
+		assertTrue(feedback.get().isEmpty());
+		assertEquals(length, Files.size(PATH));
+	}
+
+	@Test
+	void cutsARecordWithAWrongChecksum() throws Exception {
+		long length = write();
+		try (RandomAccessFile file = new RandomAccessFile(PATH.toFile(), "rw")) {
+			// A byte of the feedback's text
+			file.seek(file.length() - 6);
+			int b = file.read();
+			file.seek(file.length() - 6);
+			file.write(b ^ 0xff);
+		}
+
+		new Journal(true).replay();
+
+		assertTrue(router.containsKey(100));
+		assertTrue(feedback.get().isEmpty());
+		assertEquals(length, Files.size(PATH));
+	}
+
+	@Test
+	void cutsATornLength() throws Exception {
+		long length = write();
+		try (RandomAccessFile file = new RandomAccessFile(PATH.toFile(), "rw")) {
+			// Only two bytes of the length of the next record were written
+			file.setLength(length + 2);
+		}
+
+		new Journal(true).replay();
+
+		assertTrue(router.containsKey(100));
+		assertFalse(feedback.get().contains("Fast and reliable"));
+		assertEquals(length, Files.size(PATH));
+	}
+
+	@Test
+	void appendsAfterTheCut() throws Exception {
+		long length = write();
+		try (RandomAccessFile file = new RandomAccessFile(PATH.toFile(), "rw")) {
+			file.setLength(file.length() - 1);
+		}
+		journal = new Journal(true);
+		journal.replay();
+		journal.open();
+		journal.logRemoveRouter(100);
+		journal.close();
+		emptyStores();
+
+		new Journal(true).replay();
+
+		// The router is added and removed again by the records around the cut
+		assertFalse(router.containsKey(100));
+		assertNull(reservation.get(1));
+		assertTrue(feedback.get().isEmpty());
+		assertTrue(Files.size(PATH) > length);
+	}
+}
@@ -0,0 +1,46 @@
+package routerrental_package;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bucket bounds the percentiles are reported with
+ */
+class LatencyHistogramTest {
+
+	@Test
+	void shortDurationsHaveABucketEach() {
+		for (int nanos = 0; nanos < 64; nanos++) {
+			assertEquals(nanos, LatencyHistogram.index(nanos));
+			assertEquals(nanos, LatencyHistogram.highestValue(nanos));
+		}
+		assertEquals(0, LatencyHistogram.index(-5));
+	}
+
+	@Test
+	void bucketsFollowEachOther() {
+		int last = LatencyHistogram.index(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(last));
+		for (int index = 0; index < last; index++) {
+			long highest = LatencyHistogram.highestValue(index);
+			assertEquals(index, LatencyHistogram.index(highest));
+			assertEquals(index + 1, LatencyHistogram.index(highest + 1));
+		}
+	}
+
+	@Test
+	void relativeErrorIsUnderOneThirtySecond() {
+		SplittableRandom random = new SplittableRandom(3);
+		for (int i = 0; i < 100_000; i++) {
+			// Durations of every magnitude
+			long nanos = random.nextLong(Long.MAX_VALUE) >>> random.nextInt(63);
+			long highest = LatencyHistogram.highestValue(LatencyHistogram.index(nanos));
+			assertTrue(highest >= nanos, "bucket of " + nanos + " ends at " + highest);
+			assertTrue((highest - nanos) * 32 < Math.max(nanos, 1) + 32, "bucket of " + nanos + " is too wide");
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package routerrental_package;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reads the records written by the export sinks back with the import sources
+ */
+class RecordSourceTest {
+	/**
+	 * Texts that must be quoted or escaped. The CSV source reads every line break
+	 * of a quoted field as \n.
+	 */
+	private static final String[] TEXTS = { "plain", "", "with, comma", "say \"hi\"", "two\nlines",
+			"tab\tback\\slash", "control\u0001char", "é€ unicode" };
+
+	/**
+	 * Writes a record per text [number, text, fees]
+	 *
+	 * @param sink The sink to write to
+	 * @throws IOException
+	 */
+	private static void export(RecordSink sink) throws IOException {
+		sink.begin("number", "text", "fees");
+		for (int i = 0; i < TEXTS.length; i++) {
+			sink.field(i);
+			sink.field(TEXTS[i]);
+			sink.field(i * 2.5f);
+			sink.endRecord();
+		}
+		sink.close();
+	}
+
+	/**
+	 * Reads back the records written by export
+	 *
+	 * @param source The source to read from
+	 * @throws IOException
+	 * @throws InputError
+	 */
+	private static void check(RecordSource source) throws IOException, InputError {
+		for (int i = 0; i < TEXTS.length; i++) {
+			HashMap<String, String> fields = source.parse(source.nextRecord());
+			assertEquals(3, fields.size());
+			assertEquals(Integer.toString(i), fields.get("number"));
+			assertEquals(TEXTS[i], fields.get("text"));
+			assertEquals(i * 2.5f, Float.parseFloat(fields.get("fees")));
+		}
+		assertNull(source.nextRecord());
+		source.close();
+	}
+
+	@Test
+	void csvRoundTrip() throws Exception {
+		StringWriter out = new StringWriter();
+		export(new CsvRecordSink(out));
+
+		check(new CsvRecordSource(new BufferedReader(new StringReader(out.toString()))));
+	}
+
+	@Test
+	void csvRecordsSpanningLinesKeepTheirStartLine() throws Exception {
+		CsvRecordSource source = new CsvRecordSource(
+				new BufferedReader(new StringReader("a,b\r\n1,\"x\r\ny\"\r\n\r\n2,z\r\n")));
+
+		assertEquals("x\ny", source.parse(source.nextRecord()).get("b"));
+		assertEquals(2, source.getLine());
+		assertEquals("z", source.parse(source.nextRecord()).get("b"));
+		assertEquals(5, source.getLine());
+	}
+
+	@Test
+	void csvRejectsAWrongNumberOfFields() throws Exception {
+		CsvRecordSource source = new CsvRecordSource(new BufferedReader(new StringReader("a,b\n1,2,3\n")));
+		assertThrows(InputError.class, () -> source.parse(source.nextRecord()));
+		assertThrows(InputError.class, () -> new CsvRecordSource(new BufferedReader(new StringReader(""))));
+	}
+
+	@Test
+	void jsonRoundTrip() throws Exception {
+		StringWriter out = new StringWriter();
+		export(new JsonRecordSink(out));
+
+		assertEquals(TEXTS.length, out.toString().split("\n").length);
+		check(new JsonRecordSource(new BufferedReader(new StringReader(out.toString()))));
+	}
+
+	@Test
+	void jsonReadsEmptyObjectsAndLiterals() throws Exception {
+		StringWriter out = new StringWriter();
+		JsonRecordSink sink = new JsonRecordSink(out);
+		sink.begin();
+		sink.endRecord();
+		sink.close();
+		JsonRecordSource source = new JsonRecordSource(new BufferedReader(new StringReader(out + "\n"
+				+ " { \"a\" : null , \"b\":true,\"c\":-1.5e3, \"d\":\"\\u00e9\\/\" } \n")));
+
+		assertTrue(source.parse(source.nextRecord()).isEmpty());
+		HashMap<String, String> fields = source.parse(source.nextRecord());
+		assertEquals(3, source.getLine());
+		assertTrue(fields.containsKey("a"));
+		assertNull(fields.get("a"));
+		assertEquals("true", fields.get("b"));
+		assertEquals("-1.5e3", fields.get("c"));
+		assertEquals("é/", fields.get("d"));
+	}
+
+	@Test
+	void jsonRejectsMalformedRecords() {
+		JsonRecordSource source = new JsonRecordSource(new BufferedReader(new StringReader("")));
+		String[] records = { "[1]", "{\"a\":1", "{\"a\":{}}", "{\"a\":1} x", "{\"a\":\"open}", "{a:1}",
+				"{\"a\":\"\\u12\"}" };
+		for (String record : records)
+			assertThrows(InputError.class, () -> source.parse(record), record);
+	}
+}
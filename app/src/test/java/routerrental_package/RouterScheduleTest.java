@@ -0,0 +1,108 @@
+package routerrental_package;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that adding a batch to a schedule gives the same schedule as adding
+ * its reservations one at a time
+ */
+class RouterScheduleTest {
+
+	@Test
+	void addAllMergesFromTheEnd() {
+		RouterSchedule schedule = new RouterSchedule();
+		schedule.add(1, 100, 199);
+		schedule.add(2, 300, 399);
+		schedule.add(3, 500, 599);
+
+		schedule.addAll(new int[] { 4, 5, 6, 7 }, new long[] { 0, 200, 400, 600 }, new long[] { 99, 299, 499, 699 },
+				4);
+
+		assertEquals(7, schedule.size());
+		int[] numbers = { 4, 1, 5, 2, 6, 3, 7 };
+		for (int i = 0; i < numbers.length; i++) {
+			assertEquals(numbers[i], schedule.getNumber(i));
+			assertEquals(i * 100L, schedule.getStartDate(i));
+			assertEquals(i * 100L + 99, schedule.getDueDate(i));
+		}
+		assertTrue(schedule.contains(5, 200));
+		assertTrue(schedule.isAvailable(700, 800, 0));
+	}
+
+	@Test
+	void addAllUsesOnlyTheCountedReservations() {
+		RouterSchedule schedule = new RouterSchedule();
+		schedule.add(1, 100, 199);
+
+		schedule.addAll(new int[] { 2, 3, 0 }, new long[] { 0, 200, 0 }, new long[] { 99, 299, 0 }, 2);
+
+		assertEquals(3, schedule.size());
+		assertEquals(2, schedule.getNumber(0));
+		assertEquals(1, schedule.getNumber(1));
+		assertEquals(3, schedule.getNumber(2));
+	}
+
+	@Test
+	void addAllMatchesAdd() {
+		SplittableRandom random = new SplittableRandom(11);
+		for (int round = 0; round < 200; round++) {
+			RouterSchedule merged = new RouterSchedule();
+			RouterSchedule added = new RouterSchedule();
+			int number = 1;
+			for (int i = random.nextInt(50); i > 0; i--, number++) {
+				long start = random.nextLong(10_000);
+				merged.add(number, start, start + 10);
+				added.add(number, start, start + 10);
+			}
+
+			// More than the capacity at times, with start dates equal to scheduled ones
+			int count = random.nextInt(100);
+			int[] numbers = new int[count];
+			long[] startDates = new long[count];
+			long[] dueDates = new long[count];
+			for (int i = 0; i < count; i++)
+				startDates[i] = random.nextLong(10_000);
+			Arrays.sort(startDates);
+			for (int i = 0; i < count; i++, number++) {
+				numbers[i] = number;
+				dueDates[i] = startDates[i] + 10;
+				added.add(number, startDates[i], dueDates[i]);
+			}
+			merged.addAll(numbers, startDates, dueDates, count);
+
+			assertEquals(added.size(), merged.size());
+			for (int i = 0; i < added.size(); i++) {
+				assertEquals(added.getNumber(i), merged.getNumber(i));
+				assertEquals(added.getStartDate(i), merged.getStartDate(i));
+				assertEquals(added.getDueDate(i), merged.getDueDate(i));
+			}
+		}
+	}
+
+	@Test
+	void addAllToAnEmptySchedule() {
+		RouterSchedule schedule = new RouterSchedule();
+		schedule.addAll(new int[0], new long[0], new long[0], 0);
+		assertEquals(0, schedule.size());
+
+		int count = 20;
+		int[] numbers = new int[count];
+		long[] startDates = new long[count];
+		long[] dueDates = new long[count];
+		for (int i = 0; i < count; i++) {
+			numbers[i] = i + 1;
+			startDates[i] = i * 10L;
+			dueDates[i] = i * 10L + 5;
+		}
+		schedule.addAll(numbers, startDates, dueDates, count);
+		assertEquals(count, schedule.size());
+		for (int i = 0; i < count; i++)
+			assertEquals(i + 1, schedule.getNumber(i));
+	}
+}
@@ -0,0 +1,96 @@
+package routerrental_package;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the availability check and the schedule updates of a router across
+ * schedule sizes. The schedule updates replaced sorting the schedule on every
+ * insert.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityBenchmark {
+	/**
+	 * Number of reservations of the router
+	 */
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int size;
+
+	private RouterSchedule schedule;
+	private CustomerSystemManager customerSystemManager;
+	/**
+	 * Random indexes of the reservations probed, chosen before measuring
+	 */
+	private int[] indexes;
+	private int next;
+
+	@Setup
+	public void fill() throws InputError {
+		BenchmarkSystem.fill(1, size);
+		schedule = BenchmarkSystem.schedule(1);
+		customerSystemManager = CustomerSystemManager.getInstance();
+		SplittableRandom random = new SplittableRandom(42);
+		indexes = new int[1024];
+		for (int i = 0; i < indexes.length; i++)
+			indexes[i] = random.nextInt(size);
+	}
+
+	/**
+	 * @return index Index of the next reservation probed
+	 */
+	private int nextIndex() {
+		return indexes[next++ & (indexes.length - 1)];
+	}
+
+	@Benchmark
+	public boolean isAvailableBooked() {
+		long start = BenchmarkSystem.bookedStart(nextIndex());
+		return schedule.isAvailable(start, start + BenchmarkSystem.DAY, 0);
+	}
+
+	@Benchmark
+	public boolean isAvailableFree() {
+		long start = BenchmarkSystem.freeStart(nextIndex());
+		return schedule.isAvailable(start, start + BenchmarkSystem.DAY, 0);
+	}
+
+	/**
+	 * The whole booking path of a reservation overlapping a booked day. Holds the
+	 * router's lock and checks the availability.
+	 */
+	@Benchmark
+	public Object makeReservationRejected() {
+		try {
+			return customerSystemManager.makeReservation(1, BenchmarkSystem.reservation(-1, nextIndex()), false);
+		} catch (RentalError e) {
+			return e;
+		}
+	}
+
+	/**
+	 * Inserts a reservation in a free day of the schedule then removes it
+	 */
+	@Benchmark
+	public boolean addAndRemove() {
+		long start = BenchmarkSystem.freeStart(nextIndex());
+		schedule.add(-1, start, start + BenchmarkSystem.DAY);
+		return schedule.remove(-1, start);
+	}
+}
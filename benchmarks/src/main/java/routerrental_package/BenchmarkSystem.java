@@ -0,0 +1,85 @@
+package routerrental_package;
+
+/**
+ * Fills the system stores for the benchmarks without touching the database
+ * files. The reservations of the router take one day every fourth day, so two
+ * free days are left between each two reservations.
+ */
+class BenchmarkSystem extends SystemIformationHolder {
+	/**
+	 * One day in milliseconds
+	 */
+	public static final long DAY = 1000L * 60 * 60 * 24;
+	/**
+	 * Start date of the first reservation [01-01-2100]
+	 */
+	public static final long FIRST_START = 4102444800000L;
+
+	/**
+	 * Replaces the stores with one router having the given number of reservations
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param size               Number of reservations
+	 * @throws InputError
+	 */
+	public static void fill(int routerSerialNumber, int size) throws InputError {
+		router = new IntMap<Router>();
+		routerSchedule = new IntMap<RouterSchedule>();
+		reservation = new HashReservationStore();
+		journal = new Journal(false);
+
+		router.put(routerSerialNumber, new Router(routerSerialNumber, 'a', 4));
+		RouterSchedule schedule = new RouterSchedule();
+		for (int i = 0; i < size; i++) {
+			Reservation r = reservation(i + 1, i);
+			reservation.put(r);
+			schedule.add(r.getNumber(), r.getStartTime(), r.getDueTime());
+		}
+		routerSchedule.put(routerSerialNumber, schedule);
+		Reservation.updateCounter(size);
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @return schedule The schedule of the router
+	 */
+	public static RouterSchedule schedule(int routerSerialNumber) {
+		return routerSchedule.get(routerSerialNumber);
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @return router The router
+	 */
+	public static Router router(int routerSerialNumber) {
+		return router.get(routerSerialNumber);
+	}
+
+	/**
+	 * @param index Index of the reservation in the schedule
+	 * @return startDate The start date of the reservation in milliseconds
+	 */
+	public static long bookedStart(int index) {
+		return FIRST_START + 4L * index * DAY;
+	}
+
+	/**
+	 * @param index Index of the reservation in the schedule
+	 * @return startDate The start of a free day after the reservation in
+	 *         milliseconds
+	 */
+	public static long freeStart(int index) {
+		return bookedStart(index) + 2 * DAY;
+	}
+
+	/**
+	 * Makes a one day reservation without validating it
+	 * 
+	 * @param number Reservation's number
+	 * @param index  Index of the reservation in the schedule
+	 * @return reservation The reservation
+	 */
+	public static Reservation reservation(int number, int index) {
+		return new Reservation(number, 'd', System.currentTimeMillis(), bookedStart(index), 1);
+	}
+}
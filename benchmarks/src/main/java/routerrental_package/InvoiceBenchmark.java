@@ -0,0 +1,44 @@
+package routerrental_package;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures making an invoice, which calculates the fees
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvoiceBenchmark {
+	private Router router;
+	private Reservation reservation;
+
+	@Setup
+	public void create() throws InputError {
+		router = new Router(1, 'c', 4);
+		reservation = BenchmarkSystem.reservation(1, 0);
+	}
+
+	@Benchmark
+	public Invoice createInvoice() {
+		return new Invoice(router, reservation, 0.25f);
+	}
+
+	@Benchmark
+	public float createInvoiceFees() {
+		return new Invoice(router, reservation).getFees();
+	}
+}
@@ -0,0 +1,85 @@
+package routerrental_package;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures saving and loading the reservations using the serialized and the
+ * binary formats. The files are written to ./database under the working
+ * directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PersistenceBenchmark {
+	/**
+	 * Number of saved reservations
+	 */
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int size;
+
+	private static final String SERIALIZED_FILE = "benchmark-reservation.ser";
+	private static final String BINARY_FILE = "benchmark-reservation.bin";
+
+	private FileManager fileManager;
+	private BinaryCodec binaryCodec;
+	private HashMap<Integer, Reservation> reservation;
+	private HashReservationStore store;
+
+	@Setup
+	public void save() throws IOException {
+		new File("./database").mkdirs();
+		fileManager = new FileManager();
+		binaryCodec = new BinaryCodec();
+		reservation = new HashMap<Integer, Reservation>();
+		for (int i = 0; i < size; i++)
+			reservation.put(i + 1, BenchmarkSystem.reservation(i + 1, i));
+		store = new HashReservationStore(reservation);
+		fileManager.writeToFile(SERIALIZED_FILE, reservation);
+		binaryCodec.writeReservations(BINARY_FILE, store, size);
+	}
+
+	@TearDown
+	public void delete() {
+		new File("./database/" + SERIALIZED_FILE).delete();
+		new File("./database/" + BINARY_FILE).delete();
+	}
+
+	@Benchmark
+	public void writeSerialized() throws IOException {
+		fileManager.writeToFile(SERIALIZED_FILE, reservation);
+	}
+
+	@Benchmark
+	public Object readSerialized() throws IOException, ClassNotFoundException {
+		return fileManager.readFromFile(SERIALIZED_FILE);
+	}
+
+	@Benchmark
+	public void writeBinary() throws IOException {
+		binaryCodec.writeReservations(BINARY_FILE, store, size);
+	}
+
+	@Benchmark
+	public ReservationStore readBinary() throws IOException {
+		return binaryCodec.readReservations(BINARY_FILE, new HashReservationStore());
+	}
+}
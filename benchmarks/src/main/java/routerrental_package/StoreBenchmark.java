@@ -0,0 +1,87 @@
+package routerrental_package;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares looking up and replacing the reservations in the int keyed store
+ * against the boxed ConcurrentHashMap it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+	/**
+	 * Number of reservations in the store
+	 */
+	@Param({ "1000", "100000", "1000000" })
+	public int size;
+
+	private IntMap<Reservation> intMap;
+	private ConcurrentHashMap<Integer, Reservation> boxedMap;
+	/**
+	 * Random reservation numbers probed, chosen before measuring
+	 */
+	private int[] numbers;
+	private int next;
+
+	@Setup
+	public void fill() {
+		intMap = new IntMap<Reservation>();
+		boxedMap = new ConcurrentHashMap<Integer, Reservation>();
+		for (int i = 1; i <= size; i++) {
+			Reservation r = BenchmarkSystem.reservation(i, i);
+			intMap.put(i, r);
+			boxedMap.put(i, r);
+		}
+		SplittableRandom random = new SplittableRandom(42);
+		numbers = new int[1024];
+		for (int i = 0; i < numbers.length; i++)
+			numbers[i] = 1 + random.nextInt(size);
+	}
+
+	/**
+	 * @return number Number of the next reservation probed
+	 */
+	private int nextNumber() {
+		return numbers[next++ & (numbers.length - 1)];
+	}
+
+	@Benchmark
+	public Reservation intMapGet() {
+		return intMap.get(nextNumber());
+	}
+
+	@Benchmark
+	public Reservation boxedMapGet() {
+		return boxedMap.get(nextNumber());
+	}
+
+	@Benchmark
+	public Reservation intMapPut() {
+		int number = nextNumber();
+		return intMap.put(number, intMap.get(number));
+	}
+
+	@Benchmark
+	public Reservation boxedMapPut() {
+		int number = nextNumber();
+		return boxedMap.put(number, boxedMap.get(number));
+	}
+}
@@ -4,24 +4,98 @@ package routerrental_package;
  * Used packages
  */
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
 
 /**
  * An interface prints all the information of an instance. Applies Single.
@@ -33,6 +107,15 @@ interface Printer {
 	 * @param obj An instance of a class
 	 */
 	abstract public void printAllDataMemberInformation(Object obj);
+
+	/**
+	 * Appends the information instead of printing it. Used to print listings in
+	 * large chunks.
+	 * 
+	 * @param obj An instance of a class
+	 * @param out The text of the listing
+	 */
+	abstract public void appendAllDataMemberInformation(Object obj, StringBuilder out);
 }
 
 /**
@@ -54,10 +137,17 @@ class RouterPrinter implements Printer {
 	 */
 	@Override
 	public void printAllDataMemberInformation(Object obj) {
+		StringBuilder out = new StringBuilder();
+		appendAllDataMemberInformation(obj, out);
+		System.out.print(out);
+	}
+
+	@Override
+	public void appendAllDataMemberInformation(Object obj, StringBuilder out) {
 		try {
 			Router r = (Router) obj;
-			System.out.printf("Router's serial number: %d\nModel: %c\nNumber of ports: %d\n", r.getSerialNumber(),
-					r.getModel(), r.getPortsNumber());
+			out.append("Router's serial number: ").append(r.getSerialNumber()).append("\nModel: ").append(r.getModel())
+					.append("\nNumber of ports: ").append(r.getPortsNumber()).append('\n');
 		} catch (ClassCastException e) {
 			System.out.print("Couldn't cast " + obj.getClass() + " to class router \nProgram forced to stop");
 			System.exit(1);
@@ -79,13 +169,20 @@ class ReservationPrinter implements Printer {
 	 */
 	@Override
 	public void printAllDataMemberInformation(Object obj) {
+		StringBuilder out = new StringBuilder();
+		appendAllDataMemberInformation(obj, out);
+		System.out.print(out);
+	}
+
+	@Override
+	public void appendAllDataMemberInformation(Object obj, StringBuilder out) {
 		try {
-			Reservation r = (Reservation) obj;
-			SimpleDateFormat formater = new SimpleDateFormat("dd-MM-yyyy 'at' hh:mm a");
-			System.out.printf("Reservation's number: %d\nDate: %s\nStart date: %s\nDuration: %d%c\nDue date: %s\n",
-					r.getNumber(), formater.format(r.getReservationDate()).toString(),
-					formater.format(r.getStartDate()).toString(), r.getDuration(), r.getType(),
-					formater.format(r.getDueDate()).toString());
+			ReservationView r = (ReservationView) obj;
+			out.append("Reservation's number: ").append(r.getNumber()).append("\nDate: ")
+					.append(DateFormatter.format(r.getReservationTime())).append("\nStart date: ")
+					.append(DateFormatter.format(r.getStartTime())).append("\nDuration: ").append(r.getDuration())
+					.append(r.getType()).append("\nDue date: ").append(DateFormatter.format(r.getDueTime()))
+					.append('\n');
 		} catch (ClassCastException e) {
 			System.out.print("Can't cast " + obj.getClass() + " to class reservation \nProgram forced to stop");
 			System.exit(1);
@@ -104,10 +201,18 @@ class InvoicePrinter implements Printer {
 	 */
 	@Override
 	public void printAllDataMemberInformation(Object obj) {
+		StringBuilder out = new StringBuilder();
+		appendAllDataMemberInformation(obj, out);
+		System.out.print(out);
+	}
+
+	@Override
+	public void appendAllDataMemberInformation(Object obj, StringBuilder out) {
 		try {
 			Invoice i = (Invoice) obj;
-			System.out.printf("Reservation's number: %d\nRouter serial number: %d\nFees: %.2f\n",
-					i.getReservationNumber(), i.getRouterSerialNumber(), i.getFees());
+			out.append("Reservation's number: ").append(i.getReservationNumber()).append("\nRouter serial number: ")
+					.append(i.getRouterSerialNumber()).append("\nFees: ").append(String.format("%.2f", i.getFees()))
+					.append('\n');
 		} catch (ClassCastException e) {
 			System.out.print("Can't cast " + obj.getClass() + " to class Invoice \nProgram forced to stop");
 			System.exit(1);
@@ -136,6 +241,42 @@ final class InputError extends Exception {
 	}
 }
 
+/**
+ * User-defined exception thrown when a valid request is refused by the system.
+ * The reason tells the caller what went wrong without parsing the message.
+ */
+final class RentalError extends Exception {
+	/**
+	 * serialVersionUID is used in serializable classes
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Reasons of refusing a request
+	 */
+	enum Reason {
+		ROUTER_NOT_FOUND, ROUTER_EXISTS, ROUTER_UNAVAILABLE, RESERVATION_NOT_FOUND, INVOICE_NOT_FOUND,
+		CUSTOMER_NOT_FOUND, CANCELLATION_TOO_LATE, NOT_ALLOWED
+	}
+
+	/**
+	 * Why the request was refused
+	 */
+	private final Reason reason;
+
+	public RentalError(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+
+	/**
+	 * @return reason Why the request was refused
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+}
+
 /**
  * Creates a new router. Single responsibility applied.
  */
@@ -162,8 +303,9 @@ class Router implements Serializable {
 	 * 
 	 * @param serialNumber Serial number of the router.
 	 * @param model        Number of ports of the router.
+	 * @throws InputError If the model is invalid
 	 */
-	public Router(int serialNumber, char model) {
+	public Router(int serialNumber, char model) throws InputError {
 		this.serialNumber = serialNumber;
 		setModel(model);
 	}
@@ -174,8 +316,9 @@ class Router implements Serializable {
 	 * @param serialNumber Serial number of the router.
 	 * @param portsNumber  Number of ports of the router.
 	 * @param model        Router's model.
+	 * @throws InputError If the model or the number of ports is invalid
 	 */
-	public Router(int serialNumber, char model, int portsNumber) {
+	public Router(int serialNumber, char model, int portsNumber) throws InputError {
 		this(serialNumber, model);
 		setPortsNumber(portsNumber);
 	}
@@ -195,24 +338,15 @@ class Router implements Serializable {
 	}
 
 	/**
-	 * Sets the number of ports value The function may throw inputError a
-	 * user-defined exception if an invalid number is passed, which will cause it to
-	 * call itself recursively until a valid input is provided.
+	 * Sets the number of ports value.
 	 * 
-	 * @see <a href=
-	 *      "https://stackoverflow.com/questions/51300038/javadoc-exception-not-thrown-in-eclipse">
-	 *      Why the exception tag can't be used here </a>
 	 * @param portsNumber the number of ports (positive number).
+	 * @throws InputError If a negative number is passed
 	 */
-	public void setPortsNumber(int portsNumber) {
-		try {
-			if (portsNumber < 0)
-				throw new InputError("Invalid input. Please, enter a non-negative number: ");
-			this.portsNumber = portsNumber;
-		} catch (InputError e) {
-			System.out.print(e.getMessage());
-			setPortsNumber(RouterRental.read.nextInt());
-		}
+	public void setPortsNumber(int portsNumber) throws InputError {
+		if (portsNumber < 0)
+			throw new InputError("Invalid number of ports. It must be a non-negative number.");
+		this.portsNumber = portsNumber;
 	}
 
 	/**
@@ -223,139 +357,381 @@ class Router implements Serializable {
 	}
 
 	/**
-	 * Sets the model value. The function May throw inputError a user-defined
-	 * exception if an invalid character is passed, which will cause it to call
-	 * itself recursively until a valid input is provided.
+	 * Sets the model value.
 	 * 
 	 * @param model The model type (a - z or A - Z).
-	 * 
-	 * @see <a href=
-	 *      "https://stackoverflow.com/questions/51300038/javadoc-exception-not-thrown-in-eclipse">
-	 *      Why the exception tag can't be used here </a>
-	 * @see <a href="https://www.geeksforgeeks.org/gfact-51-java-scanner-nextchar/">
-	 *      How to read char in java </a>
+	 * @throws InputError If an invalid character is passed
 	 */
-	public void setModel(char model) {
-		try {
-			if (!((model >= 'A' && model <= 'Z') || (model >= 'a' && model <= 'z'))) {
-				throw new InputError("Invalid input. Please, enter [a - z] or [A- Z] charcters only: ");
-			}
-			this.model = Character.toUpperCase(model);
-		} catch (InputError e) {
-			System.out.print(e.getMessage());
-			setModel(RouterRental.read.next().charAt(0));
+	public void setModel(char model) throws InputError {
+		this.model = checkModel(model);
+	}
+
+	/**
+	 * @param model The model type (a - z or A - Z).
+	 * @return model The model in upper case
+	 * @throws InputError If an invalid character is passed
+	 */
+	public static char checkModel(char model) throws InputError {
+		if (!((model >= 'A' && model <= 'Z') || (model >= 'a' && model <= 'z'))) {
+			throw new InputError("Invalid model. It must be one of [a - z] or [A- Z] charcters only.");
 		}
+		return Character.toUpperCase(model);
+	}
+}
+
+/**
+ * Formats and parses the dates shown to the users [day-month-year at
+ * hour:minutes PM/AM]. The formatters are immutable and thread-safe, so one
+ * instance of each is shared by the whole system instead of making a
+ * SimpleDateFormat per call.
+ * 
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/time/format/DateTimeFormatter.html">
+ *      DateTimeFormatter </a>
+ */
+final class DateFormatter {
+	/**
+	 * Formats the dates
+	 */
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy 'at' hh:mm a")
+			.withZone(ZoneId.systemDefault());
+	/**
+	 * Parses the dates. Accepts one digit days, months and hours and any case of
+	 * AM/PM like the format used before. Days missing from the month are rejected
+	 * instead of being moved to its last day.
+	 */
+	private static final DateTimeFormatter PARSER = new DateTimeFormatterBuilder().parseCaseInsensitive()
+			.appendPattern("d-M-uuuu 'at' h:mm a").toFormatter().withResolverStyle(ResolverStyle.STRICT)
+			.withZone(ZoneId.systemDefault());
+
+	/**
+	 * Prevents making objects from the class
+	 */
+	private DateFormatter() {
+	}
+
+	/**
+	 * @param millis The date in milliseconds
+	 * @return text The formatted date
+	 */
+	public static String format(long millis) {
+		return FORMATTER.format(Instant.ofEpochMilli(millis));
+	}
+
+	/**
+	 * @param text The date [day-month-year at hour:minutes PM/AM]
+	 * @return millis The date in milliseconds
+	 * @throws DateTimeParseException If the format couldn't be identified
+	 */
+	public static long parse(String text) {
+		return PARSER.parse(text.trim(), Instant::from).toEpochMilli();
 	}
 }
 
+/**
+ * Read-only view of a reservation. Lets the stores hand out reservations
+ * without making a Reservation object.
+ */
+interface ReservationView {
+	abstract public int getNumber();
+
+	/**
+	 * @return routerSerialNumber Serial number of the reserved router. 0 if it's
+	 *         not reserved yet
+	 */
+	abstract public int getRouterSerialNumber();
+
+	abstract public char getType();
+
+	abstract public int getDuration();
+
+	abstract public Date getReservationDate();
+
+	abstract public Date getStartDate();
+
+	abstract public Date getDueDate();
+
+	/**
+	 * @return reservationTime The date of the reservation in milliseconds
+	 */
+	abstract public long getReservationTime();
+
+	/**
+	 * @return startTime The start date in milliseconds
+	 */
+	abstract public long getStartTime();
+
+	/**
+	 * @return dueTime The due date in milliseconds
+	 */
+	abstract public long getDueTime();
+}
+
 /**
  * Creates a reservation.
  */
-class Reservation implements Serializable {
+class Reservation implements Serializable, ReservationView {
 	/**
 	 * serialVersionUID is used in serializable classes
 	 */
 	private static final long serialVersionUID = 3L;
 
 	/**
-	 * Static member counts the instances of the class
+	 * Static member counts the instances of the class. Atomic so that concurrent
+	 * bookings never get the same number.
 	 */
-	private static int counter = 0;
+	private static final AtomicInteger counter = new AtomicInteger();
 	/**
 	 * Static member makes sure that the counter variable will be loaded only once
 	 */
 	private static boolean isCalled = false;
 	/**
-	 * Final member reservation's number
+	 * The serialized fields. The dates are kept in milliseconds but still saved
+	 * as Date objects, so the saved .ser files stay readable.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("number", int.class),
+			new ObjectStreamField("duration", int.class), new ObjectStreamField("reservationDate", Date.class),
+			new ObjectStreamField("startDate", Date.class), new ObjectStreamField("dueDate", Date.class),
+			new ObjectStreamField("type", char.class), new ObjectStreamField("routerSerialNumber", int.class) };
+	/**
+	 * Reservation's number. Never changed after the reservation is made or read
 	 */
-	private final int number;
+	private int number;
+	/**
+	 * Serial number of the reserved router. 0 until the reservation is made, and
+	 * for reservations saved by the former versions until their router is
+	 * restored.
+	 */
+	private int routerSerialNumber;
 	/**
 	 * The duration of the reservation
 	 */
 	private int duration;
 	/**
-	 * The date of the reservation
-	 * 
-	 * @see <a href="https://www.tutorialspoint.com/java/java_date_time.htm"> Java -
-	 *      Date and Time </a>
+	 * The date of the reservation in milliseconds
 	 */
-	private final Date reservationDate;
+	private long reservationDate;
 	/**
-	 * The start date of the reservation
+	 * The start date of the reservation in milliseconds
 	 */
-	private Date startDate;
+	private long startDate;
 	/**
-	 * The end of reservation date
+	 * The end of reservation date in milliseconds
 	 */
-	private Date dueDate;
+	private long dueDate;
 	/**
-	 * Type of reservation
+	 * Type of reservation. Never changed after the reservation is made or read
 	 */
-	private final char type;
+	private char type;
 
 	/**
 	 * Overloaded constructor
 	 * 
-	 * @param type Type of reservation
+	 * @param type      Type of reservation
+	 * @param startDate The start date of the reservation [day-month-year at
+	 *                  hour:minutes PM/AM]
+	 * @param duration  The duration of the reservation
+	 * @throws InputError If any of the parameters is invalid
 	 */
-	public Reservation(char type) {
-		type = Character.toLowerCase(type);
-		if (type != 'm' && type != 'd' && type != 'w') {
-			System.out.print("Invalid reservation type.\nProgram forced to stop.");
-			System.exit(1);
-		}
-		this.type = type;
-		number = ++counter;
-		this.reservationDate = new Date();
-		this.duration = 0;
-		this.startDate = this.dueDate = null;
+	public Reservation(char type, String startDate, int duration) throws InputError {
+		this(type, new Date(parseStartTime(startDate)), duration);
 	}
 
 	/**
-	 * Overloaded constructor
+	 * Overloaded constructor. The number is given only after all the parameters
+	 * are validated.
 	 * 
 	 * @param type      Type of reservation
 	 * @param startDate The start date of the reservation
 	 * @param duration  The duration of the reservation
+	 * @throws InputError If any of the parameters is invalid
 	 */
-	public Reservation(char type, String startDate, int duration) {
-		this(type);
+	public Reservation(char type, Date startDate, int duration) throws InputError {
+		this(type, System.currentTimeMillis(), startDate.getTime(), duration);
+	}
+
+	/**
+	 * Overloaded constructor. Used to import reservations made before. The number
+	 * is given only after all the parameters are validated.
+	 * 
+	 * @param type            Type of reservation
+	 * @param reservationDate The date of the reservation in milliseconds
+	 * @param startDate       The start date of the reservation in milliseconds
+	 * @param duration        The duration of the reservation
+	 * @throws InputError If any of the parameters is invalid
+	 */
+	public Reservation(char type, long reservationDate, long startDate, int duration) throws InputError {
+		this.type = checkType(type);
+		this.reservationDate = reservationDate;
 		setStartDate(startDate);
 		setDuration(duration);
+		number = counter.incrementAndGet();
+	}
+
+	/**
+	 * Restores a saved reservation without validating it again. The counter
+	 * isn't incremented.
+	 * 
+	 * @param number          Reservation's number
+	 * @param type            Type of reservation
+	 * @param reservationDate The date of the reservation
+	 * @param startDate       The start date of the reservation
+	 * @param duration        The duration of the reservation
+	 */
+	public Reservation(int number, char type, Date reservationDate, Date startDate, int duration) {
+		this(number, type, reservationDate.getTime(), startDate.getTime(), duration);
+	}
+
+	/**
+	 * Restores a saved reservation without validating it again. The counter
+	 * isn't incremented.
+	 * 
+	 * @param number          Reservation's number
+	 * @param type            Type of reservation
+	 * @param reservationDate The date of the reservation in milliseconds
+	 * @param startDate       The start date of the reservation in milliseconds
+	 * @param duration        The duration of the reservation
+	 */
+	public Reservation(int number, char type, long reservationDate, long startDate, int duration) {
+		this(number, 0, type, reservationDate, startDate, duration);
+	}
+
+	/**
+	 * Restores a saved reservation without validating it again. The counter
+	 * isn't incremented.
+	 * 
+	 * @param number             Reservation's number
+	 * @param routerSerialNumber Serial number of the reserved router
+	 * @param type               Type of reservation
+	 * @param reservationDate    The date of the reservation in milliseconds
+	 * @param startDate          The start date of the reservation in milliseconds
+	 * @param duration           The duration of the reservation
+	 */
+	public Reservation(int number, int routerSerialNumber, char type, long reservationDate, long startDate,
+			int duration) {
+		this.number = number;
+		this.routerSerialNumber = routerSerialNumber;
+		this.type = type;
+		this.reservationDate = reservationDate;
+		this.startDate = startDate;
+		this.duration = duration;
+		setDueDate();
+	}
+
+	/**
+	 * Saves the dates as Date objects like the former versions did
+	 * 
+	 * @param out The stream
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("number", number);
+		fields.put("duration", duration);
+		fields.put("reservationDate", new Date(reservationDate));
+		fields.put("startDate", new Date(startDate));
+		fields.put("dueDate", new Date(dueDate));
+		fields.put("type", type);
+		fields.put("routerSerialNumber", routerSerialNumber);
+		out.writeFields();
+	}
+
+	/**
+	 * @param in The stream
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		number = fields.get("number", 0);
+		duration = fields.get("duration", 0);
+		type = fields.get("type", 'd');
+		routerSerialNumber = fields.get("routerSerialNumber", 0);
+		Date reservationDate = (Date) fields.get("reservationDate", null);
+		Date startDate = (Date) fields.get("startDate", null);
+		if (reservationDate == null || startDate == null)
+			throw new InvalidObjectException("Reservation without dates");
+		this.reservationDate = reservationDate.getTime();
+		this.startDate = startDate.getTime();
+		setDueDate();
 	}
 
 	/**
 	 * @return startDate The start date of the reservation
 	 */
 	public Date getStartDate() {
+		return new Date(startDate);
+	}
+
+	/**
+	 * @return startTime The start date of the reservation in milliseconds
+	 */
+	public long getStartTime() {
 		return startDate;
 	}
 
 	/**
-	 * If an invalid date or unidentified format is passed, will cause the program
-	 * to call itself recursively until a valid parameter is provided.
-	 * 
-	 * @param startDate The start date of the reservation
+	 * @param type Type of reservation [d - w - m]
+	 * @return type The type in lower case
+	 * @throws InputError If the type is unknown
+	 */
+	public static char checkType(char type) throws InputError {
+		type = Character.toLowerCase(type);
+		if (type != 'm' && type != 'd' && type != 'w')
+			throw new InputError("Invalid reservation type. It must be one of [d - w - m].");
+		return type;
+	}
+
+	/**
+	 * @param startDate The start date [day-month-year at hour:minutes PM/AM]
+	 * @return date The parsed date
+	 * @throws InputError If the format couldn't be identified
 	 */
-	public void setStartDate(String startDate) {
+	public static Date parseStartDate(String startDate) throws InputError {
+		return new Date(parseStartTime(startDate));
+	}
+
+	/**
+	 * @param startDate The start date [day-month-year at hour:minutes PM/AM]
+	 * @return millis The parsed date in milliseconds
+	 * @throws InputError If the format couldn't be identified
+	 */
+	public static long parseStartTime(String startDate) throws InputError {
 		try {
-			SimpleDateFormat formater = new SimpleDateFormat("dd-MM-yyyy 'at' hh:mm a");
-			Date d = formater.parse(startDate);
-			if (d.compareTo(reservationDate) < 0)
-				throw new InputError(
-						"Invalid start date. Please, enter the date again using the next format [day-month-year at hour:minutes PM/AM]: ");
-			this.startDate = d;
-			setDueDate();
-		} catch (InputError e) {
-			System.out.print(e.getMessage());
-			setStartDate(RouterRental.read.nextLine());
-		} catch (ParseException e) {
-			System.out.print("Couldn't identify the entered format.\n"
-					+ "Please, enter the date again using the next format [day-month-year at hour:minutes PM/AM]:");
-			setStartDate(RouterRental.read.nextLine());
+			return DateFormatter.parse(startDate);
+		} catch (DateTimeException e) {
+			throw new InputError("Couldn't identify the entered format [day-month-year at hour:minutes PM/AM].");
 		}
 	}
 
+	/**
+	 * @param startDate The start date of the reservation [day-month-year at
+	 *                  hour:minutes PM/AM]
+	 * @throws InputError If an invalid date or unidentified format is passed
+	 */
+	public void setStartDate(String startDate) throws InputError {
+		setStartDate(parseStartTime(startDate));
+	}
+
+	/**
+	 * @param startDate The start date of the reservation
+	 * @throws InputError If the date is before the reservation date
+	 */
+	public void setStartDate(Date startDate) throws InputError {
+		setStartDate(startDate.getTime());
+	}
+
+	/**
+	 * @param startDate The start date of the reservation in milliseconds
+	 * @throws InputError If the date is before the reservation date
+	 */
+	public void setStartDate(long startDate) throws InputError {
+		if (startDate < reservationDate)
+			throw new InputError("Invalid start date. It can't be in the past.");
+		this.startDate = startDate;
+		setDueDate();
+	}
+
 	/**
 	 * @return duration The duration of the reservation
 	 */
@@ -364,30 +740,29 @@ class Reservation implements Serializable {
 	}
 
 	/**
-	 * Throws a user-defined exception if an invalid duration is passed, which will
-	 * cause it to call itself recursively until a valid input is provided.
-	 * 
 	 * @param duration the duration of the reservation. Must be more than the
 	 *                 current one.
-	 */
-	public void setDuration(int duration) {
-		try {
-			if (duration <= this.duration)
-				throw new InputError(
-						"The new duration must be postive number which is greater than the current duration.\n"
-								+ "Please, try again: ");
-			this.duration = duration;
-			setDueDate();
-		} catch (InputError e) {
-			System.out.print(e.getMessage());
-			setDuration(RouterRental.read.nextInt());
-		}
+	 * @throws InputError If the duration isn't greater than the current one
+	 */
+	public void setDuration(int duration) throws InputError {
+		if (duration <= this.duration)
+			throw new InputError(
+					"The new duration must be postive number which is greater than the current duration.");
+		this.duration = duration;
+		setDueDate();
 	}
 
 	/**
 	 * @return dueDate The end of reservation date
 	 */
 	public Date getDueDate() {
+		return new Date(dueDate);
+	}
+
+	/**
+	 * @return dueTime The end of reservation date in milliseconds
+	 */
+	public long getDueTime() {
 		return dueDate;
 	}
 
@@ -400,8 +775,32 @@ class Reservation implements Serializable {
 	 *      How to add one day to a date? </a>
 	 */
 	private void setDueDate() {
-		if (startDate == null || duration == 0)
+		if (duration == 0)
 			return;
+		dueDate = calculateDueTime(startDate, type, duration);
+	}
+
+	/**
+	 * Calculates the due date of a reservation
+	 * 
+	 * @param startDate Start date
+	 * @param type      Reservation type [d:daily, w:weekly, m:monthly]
+	 * @param duration  Reservation duration
+	 * @return dueDate The due date
+	 */
+	public static Date calculateDueDate(Date startDate, char type, int duration) {
+		return new Date(calculateDueTime(startDate.getTime(), type, duration));
+	}
+
+	/**
+	 * Calculates the due date of a reservation
+	 * 
+	 * @param startDate Start date in milliseconds
+	 * @param type      Reservation type [d:daily, w:weekly, m:monthly]
+	 * @param duration  Reservation duration
+	 * @return dueDate The due date in milliseconds
+	 */
+	public static long calculateDueTime(long startDate, char type, int duration) {
 		long days;
 		if (type == 'd')
 			days = duration;
@@ -410,7 +809,7 @@ class Reservation implements Serializable {
 		else
 			days = duration * 30;
 
-		dueDate = new Date(startDate.getTime() + ((1000 * 60 * 60 * 24) * days));
+		return startDate + ((1000 * 60 * 60 * 24) * days);
 	}
 
 	/**
@@ -427,10 +826,32 @@ class Reservation implements Serializable {
 		return number;
 	}
 
+	/**
+	 * @return routerSerialNumber Serial number of the reserved router
+	 */
+	public int getRouterSerialNumber() {
+		return routerSerialNumber;
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the reserved router. Set when
+	 *                           the reservation is added to the router's schedule
+	 */
+	public void setRouterSerialNumber(int routerSerialNumber) {
+		this.routerSerialNumber = routerSerialNumber;
+	}
+
 	/**
 	 * @return reservationDate The date of the reservation
 	 */
 	public Date getReservationDate() {
+		return new Date(reservationDate);
+	}
+
+	/**
+	 * @return reservationTime The date of the reservation in milliseconds
+	 */
+	public long getReservationTime() {
 		return reservationDate;
 	}
 
@@ -447,9 +868,7 @@ class Reservation implements Serializable {
 
 		FileManager fileManager = new FileManager();
 		if (!fileManager.isFileEmpty("reservationCounter.ser")) {
-			counter = (int) fileManager.readFromFile("reservationCounter.ser");
-		} else {
-			counter = 0;
+			updateCounter((int) fileManager.readFromFile("reservationCounter.ser"));
 		}
 
 		isCalled = true;
@@ -459,7 +878,16 @@ class Reservation implements Serializable {
 	 * @return counter the counter value
 	 */
 	public static int getCounter() {
-		return counter;
+		return counter.get();
+	}
+
+	/**
+	 * Makes sure that the counter is not behind a restored reservation's number
+	 * 
+	 * @param number Reservation's number
+	 */
+	public static void updateCounter(int number) {
+		counter.accumulateAndGet(number, Math::max);
 	}
 }
 
@@ -484,6 +912,11 @@ class Invoice implements Serializable {
 	 * Fees of the reservation
 	 */
 	private float fees;
+	/**
+	 * Start date of the reservation in milliseconds. 0 in the invoices saved by
+	 * the former versions.
+	 */
+	private final long startDate;
 
 	/**
 	 * Overloaded constructor
@@ -505,9 +938,25 @@ class Invoice implements Serializable {
 	public Invoice(Router router, Reservation reservation, float discount) {
 		this.routerSerialNumber = router.getSerialNumber();
 		this.reservationNumber = reservation.getNumber();
+		this.startDate = reservation.getStartTime();
 		setFees(router.getModel(), reservation.getType(), reservation.getDuration(), discount);
 	}
 
+	/**
+	 * Restores a saved invoice without calculating the fees again
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param reservationNumber  Number of the reservation
+	 * @param fees               Fees of the reservation
+	 * @param startDate          Start date of the reservation in milliseconds
+	 */
+	public Invoice(int routerSerialNumber, int reservationNumber, float fees, long startDate) {
+		this.routerSerialNumber = routerSerialNumber;
+		this.reservationNumber = reservationNumber;
+		this.fees = fees;
+		this.startDate = startDate;
+	}
+
 	/**
 	 * Calculates the fees automatically
 	 * 
@@ -515,12 +964,11 @@ class Invoice implements Serializable {
 	 * @param reservationType     Type of reservation
 	 * @param reservationDuration Duration of reservation
 	 * @param discount            The discount percentage [0-1]
+	 * @throws IllegalArgumentException If the discount isn't in [0-1]
 	 */
 	private void setFees(char routerModel, char reservationType, int reservationDuration, float discount) {
-		if (discount < 0 || discount > 1) {
-			System.out.print("Invalid discount. Please, try again [0-1]: ");
-			setFees(routerModel, reservationType, reservationDuration, RouterRental.read.nextFloat());
-		}
+		if (discount < 0 || discount > 1)
+			throw new IllegalArgumentException("Invalid discount " + discount + " [0-1]");
 		int days;
 		if (routerModel == 'd')
 			days = reservationDuration;
@@ -553,47 +1001,141 @@ class Invoice implements Serializable {
 	public float getFees() {
 		return fees;
 	}
+
+	/**
+	 * @return startDate Start date of the reservation in milliseconds. 0 if it
+	 *         wasn't saved
+	 */
+	public long getStartDate() {
+		return startDate;
+	}
 }
 
 /**
- * Handles all read/write operation from and to file
- * 
- * @see <a href="https://www.javatpoint.com/serialization-in-java">
- *      Serialization and Deserialization in Java </a>
- * @see <a href="https://www.tutorialspoint.com/java/java_files_io.htm"> Java -
- *      Files and I/O </a>
- * @see <a href=
- *      "https://stackoverflow.com/questions/285793/what-is-a-serialversionuid-and-why-should-i-use-it">
- *      What is a serialVersionUID and why should I use it? </a>
- * @see <a href=
- *      "https://stackoverflow.com/questions/1816673/how-do-i-check-if-a-file-exists-in-java">
- *      How do I check if a file exists in Java? </a>
- * @see <a href=
- *      "https://www.java67.com/2018/03/a-simple-example-to-check-if-file-is-empty-in-java.html">
- *      A Simple Example to Check if File is Empty in Java </a>
+ * One reservation of a batch. Holds the outcome after the batch is made, either
+ * the invoice or the reason of refusing it.
  */
-class FileManager {
+class ReservationRequest {
 	/**
-	 * Stream to write to files
+	 * Serial number of the router
 	 */
-	private ObjectOutputStream outputStream;
+	private final int routerSerialNumber;
 	/**
-	 * Stream to read from file
+	 * Type of reservation
 	 */
-	private ObjectInputStream inputStream;
-
+	private final char type;
 	/**
-	 * Checks if the file is empty
-	 * 
-	 * @param fileName The name of the file
-	 * @return boolean Returns true if the file empty
+	 * The start date of the reservation
 	 */
-	public final boolean isFileEmpty(String fileName) {
-		File file = new File("./database/" + fileName);
-
-		return (file.length() == 0);
-	}
-
+	private final Date startDate;
+	/**
+	 * The duration of the reservation
+	 */
+	private final int duration;
+	/**
+	 * The invoice of the accepted reservation
+	 */
+	private Invoice invoice;
+	/**
+	 * Why the reservation was refused [InputError or RentalError]
+	 */
+	private Exception error;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param type               Type of reservation [d - w - m]
+	 * @param startDate          The start date of the reservation
+	 * @param duration           The duration of the reservation
+	 */
+	public ReservationRequest(int routerSerialNumber, char type, Date startDate, int duration) {
+		this.routerSerialNumber = routerSerialNumber;
+		this.type = type;
+		this.startDate = startDate;
+		this.duration = duration;
+	}
+
+	public int getRouterSerialNumber() {
+		return routerSerialNumber;
+	}
+
+	public char getType() {
+		return type;
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return invoice The invoice. Null if the reservation was refused
+	 */
+	public Invoice getInvoice() {
+		return invoice;
+	}
+
+	/**
+	 * @return error Why the reservation was refused. Null if it was accepted
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @param invoice The invoice of the accepted reservation
+	 */
+	void accept(Invoice invoice) {
+		this.invoice = invoice;
+	}
+
+	/**
+	 * @param error Why the reservation was refused
+	 */
+	void refuse(Exception error) {
+		this.error = error;
+	}
+}
+
+/**
+ * Handles all read/write operation from and to file
+ * 
+ * @see <a href="https://www.javatpoint.com/serialization-in-java">
+ *      Serialization and Deserialization in Java </a>
+ * @see <a href="https://www.tutorialspoint.com/java/java_files_io.htm"> Java -
+ *      Files and I/O </a>
+ * @see <a href=
+ *      "https://stackoverflow.com/questions/285793/what-is-a-serialversionuid-and-why-should-i-use-it">
+ *      What is a serialVersionUID and why should I use it? </a>
+ * @see <a href=
+ *      "https://stackoverflow.com/questions/1816673/how-do-i-check-if-a-file-exists-in-java">
+ *      How do I check if a file exists in Java? </a>
+ * @see <a href=
+ *      "https://www.java67.com/2018/03/a-simple-example-to-check-if-file-is-empty-in-java.html">
+ *      A Simple Example to Check if File is Empty in Java </a>
+ */
+class FileManager {
+	/**
+	 * Size of the buffers of the streams in bytes
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Checks if the file is empty
+	 * 
+	 * @param fileName The name of the file
+	 * @return boolean Returns true if the file empty
+	 */
+	public final boolean isFileEmpty(String fileName) {
+		File file = new File("./database/" + fileName);
+
+		return (file.length() == 0);
+	}
+
 	/**
 	 * Read the data from file
 	 * 
@@ -607,8 +1149,22 @@ class FileManager {
 	 */
 	public final Object readFromFile(String fileName)
 			throws FileNotFoundException, IOException, ClassNotFoundException {
-		inputStream = new ObjectInputStream(new FileInputStream("./database/" + fileName));
-		return inputStream.readObject();
+		long start = System.nanoTime();
+		StoreFileEvent event = new StoreFileEvent();
+		event.begin();
+		boolean isRead = false;
+		try (ObjectInputStream inputStream = new ObjectInputStream(
+				new BufferedInputStream(new FileInputStream("./database/" + fileName), BUFFER_SIZE))) {
+			Object obj = inputStream.readObject();
+			isRead = true;
+			return obj;
+		} finally {
+			Metrics.READ_FILE.record(start, isRead);
+			long bytes = new File("./database/" + fileName).length();
+			if (isRead)
+				Metrics.BYTES_READ.add(bytes);
+			event.report(fileName, "read", bytes);
+		}
 	}
 
 	/**
@@ -621,9 +1177,22 @@ class FileManager {
 	 * @throws IOException
 	 */
 	public final void writeToFile(String fileName, Object obj) throws FileNotFoundException, IOException {
-		outputStream = new ObjectOutputStream(new FileOutputStream("./database/" + fileName));
-		outputStream.writeObject(obj);
-		outputStream.flush();
+		long start = System.nanoTime();
+		StoreFileEvent event = new StoreFileEvent();
+		event.begin();
+		boolean isWritten = false;
+		try (ObjectOutputStream outputStream = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream("./database/" + fileName), BUFFER_SIZE))) {
+			outputStream.writeObject(obj);
+			outputStream.flush();
+			isWritten = true;
+		} finally {
+			Metrics.WRITE_FILE.record(start, isWritten);
+			long bytes = new File("./database/" + fileName).length();
+			if (isWritten)
+				Metrics.BYTES_WRITTEN.add(bytes);
+			event.report(fileName, "write", bytes);
+		}
 	}
 
 	/**
@@ -641,9 +1210,6 @@ class FileManager {
 		if (!Files.exists(Paths.get("./database/reservation.ser"))) {
 			Files.createFile(Paths.get("./database/reservation.ser"));
 		}
-		if (!Files.exists(Paths.get("./database/routerSchedule.ser"))) {
-			Files.createFile(Paths.get("./database/routerSchedule.ser"));
-		}
 		if (!Files.exists(Paths.get("./database/customer.ser"))) {
 			Files.createFile(Paths.get("./database/customer.ser"));
 		}
@@ -653,824 +1219,8293 @@ class FileManager {
 		if (!Files.exists(Paths.get("./database/reservationCounter.ser"))) {
 			Files.createFile(Paths.get("./database/reservationCounter.ser"));
 		}
+		if (!Files.exists(Paths.get("./database/journal.log"))) {
+			Files.createFile(Paths.get("./database/journal.log"));
+		}
 	}
-}
 
-/**
- * Class that has all the information needed by the system. All inheriting
- * classes applies Single-Responsibility, Open-Closed and Liskov Substitution
- * principle.
- * 
- * @see <a href="https://www.tutorialspoint.com/java/java_hashmap_class.htm">
- *      Java - The HashMap Class </a>
- */
-abstract class SystemIformationHolder {
-	/**
-	 * Saves all Routers [Key: Serial number, Value: Router]
-	 */
-	protected static HashMap<Integer, Router> router;
 	/**
-	 * Saves all Reservations [Key: Reservation number, Value: Reservation]
+	 * Checks if the journaling persistence mode is enabled. It's enabled by
+	 * default and can be disabled using -Drouterrental.journal=false
+	 * 
+	 * @return boolean Returns true if every change is appended to the journal
 	 */
-	protected static HashMap<Integer, Reservation> reservation;
+	public static boolean isJournalEnabled() {
+		return Boolean.parseBoolean(System.getProperty("routerrental.journal", "true"));
+	}
+
 	/**
-	 * Keeps track of the router's reservations [Key: Router serial number, Value:
-	 * Array-list of Reservation's Number]
+	 * Checks which format the stores are saved with. Java serialization [.ser
+	 * files] is used by default, the binary format [.bin files] is used with
+	 * -Drouterrental.format=binary after running DatabaseMigration once.
+	 * 
+	 * @return boolean Returns true if the binary format is used
 	 */
-	protected static HashMap<Integer, ArrayList<Integer>> routerSchedule;
+	public static boolean isBinaryFormat() {
+		return "binary".equalsIgnoreCase(System.getProperty("routerrental.format", "serial"));
+	}
+
 	/**
-	 * Keeps track of all received feedbacks
+	 * Checks if the reservations are kept in the memory-mapped store
+	 * [reservation.dat] instead of being loaded to the heap. Enabled using
+	 * -Drouterrental.storage=mapped
+	 * 
+	 * @return boolean Returns true if the memory-mapped store is used
 	 */
-	protected static ArrayList<String> feedback;
-}
+	public static boolean isMappedStorage() {
+		return "mapped".equalsIgnoreCase(System.getProperty("routerrental.storage", "heap"));
+	}
 
-/**
- * System printer Class that prints any information needed by the system users
- * [Admin/Customer]. All the functions apply Least Privilege principle.
- */
-class SystemInformationPrinter extends SystemIformationHolder {
-	private HashMap<String, Printer> printer;
 	/**
-	 * Makes sure that there's only one instance
+	 * Checks if the reservations are kept on the heap in columns instead of
+	 * Reservation objects. Enabled using -Drouterrental.storage=columnar
+	 * 
+	 * @return boolean Returns true if the columnar store is used
 	 */
-	private static boolean isUsed = false;
+	public static boolean isColumnarStorage() {
+		return "columnar".equalsIgnoreCase(System.getProperty("routerrental.storage", "heap"));
+	}
+
 	/**
-	 * The only instance of the class
+	 * Checks if the feedbacks and customers are loaded on a background thread
+	 * instead of before the menu appears. Enabled using
+	 * -Drouterrental.loading=lazy
+	 * 
+	 * @return boolean Returns true if the lazy loading is used
 	 */
-	private static SystemInformationPrinter systemInformationPrinter;
+	public static boolean isLazyLoading() {
+		return "lazy".equalsIgnoreCase(System.getProperty("routerrental.loading", "eager"));
+	}
 
 	/**
-	 * Gets the only instance of the class
+	 * Time between two background snapshots of the stores. Set using
+	 * -Drouterrental.snapshot.interval=seconds, 0 disables the periodic snapshots.
 	 * 
-	 * @return systemInformationPrinter The only instance of the class
+	 * @return interval The interval in seconds [60 by default]
 	 */
-	public static SystemInformationPrinter getInstance() {
-		if (!isUsed) {
-			systemInformationPrinter = new SystemInformationPrinter();
-			systemInformationPrinter.initialize();
-			return systemInformationPrinter;
-		} else
-			return null;
+	public static long getSnapshotInterval() {
+		return Long.getLong("routerrental.snapshot.interval", 60);
 	}
 
 	/**
-	 * Initialize the printer
+	 * Number of changes after which a snapshot is taken before the interval ends.
+	 * Set using -Drouterrental.snapshot.mutations=n, 0 disables it.
+	 * 
+	 * @return mutations Number of changes [1000 by default]
 	 */
-	private void initialize() {
-		printer = new HashMap<String, Printer>();
-		printer.put("Router", new RouterPrinter());
-		printer.put("Reservation", new ReservationPrinter());
-		printer.put("Invoice", new InvoicePrinter());
+	public static int getSnapshotMutations() {
+		return Integer.getInteger("routerrental.snapshot.mutations", 1000);
 	}
 
 	/**
-	 * Print all available routers in the system
+	 * Forces a completely written file to the disk
+	 * 
+	 * @param fileName The name of the file
+	 * @throws IOException
 	 */
-	public void printSystemRouters() {
-		if (router.isEmpty())
-			System.out.print("No routers were found\n");
-		for (Router r : router.values()) {
-			printer.get("Router").printAllDataMemberInformation(r);
-			System.out.println();
+	public final void forceFile(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get("./database/" + fileName), StandardOpenOption.WRITE)) {
+			channel.force(true);
 		}
 	}
 
 	/**
-	 * Prints the schedule of given router [start/end date]
+	 * Renames a temporary file forced to the disk to the given name, replacing
+	 * the previous file atomically if the file system supports it
 	 * 
-	 * @param routerSerialNumber Serial number of the router
+	 * @param temporary The name of the temporary file
+	 * @param fileName  The name of the file
+	 * @throws IOException
 	 */
-	public void printRouterSchedule(final Integer routerSerialNumber) {
-		if (!routerSchedule.containsKey(routerSerialNumber)) {
-			System.out.print("Router doesn't exist\n");
-			return;
-		}
-		SimpleDateFormat formater = new SimpleDateFormat("dd-MM-yyyy 'at' hh:mm a");
-		for (Integer reservationNumber : routerSchedule.get(routerSerialNumber)) {
-			System.out.printf("Start date: %s\n", formater.format(reservation.get(reservationNumber).getStartDate()));
-			System.out.printf("Due date: %s\n\n", formater.format(reservation.get(reservationNumber).getDueDate()));
+	public final void replaceFile(String temporary, String fileName) throws IOException {
+		Path source = Paths.get("./database/" + temporary);
+		Path target = Paths.get("./database/" + fileName);
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
 		}
 	}
+}
 
+/**
+ * Loads a store once, either on the calling thread, on a background thread or
+ * on the first access. Used to make the system usable before the stores that
+ * might not be needed by the session are loaded.
+ * 
+ * @param <T> Type of the store
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/FutureTask.html">
+ *      FutureTask </a>
+ */
+class StoreLoader<T> {
 	/**
-	 * Prints the reservation information
-	 * 
-	 * @param reservationNumber Reservation number
+	 * Name of the store used in the messages
 	 */
-	public void printReservation(final Integer reservationNumber) {
-		if (!reservation.containsKey(reservationNumber)) {
-			System.out.print("Reservation doesn't exist\n");
-			return;
-		}
-		printer.get("Reservation").printAllDataMemberInformation(reservation.get(reservationNumber));
+	private final String name;
+	/**
+	 * Task that loads the store. Runs only once.
+	 */
+	private final FutureTask<T> task;
+	/**
+	 * The store once it was loaded successfully
+	 */
+	private volatile T store;
+	/**
+	 * Updates received before the store was loaded, in the order they were
+	 * received
+	 */
+	private final ArrayList<Consumer<T>> updates = new ArrayList<Consumer<T>>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name   Name of the store
+	 * @param loader Loads the store from the files
+	 */
+	public StoreLoader(String name, Callable<T> loader) {
+		this.name = name;
+		this.task = new FutureTask<T>(() -> {
+			T loaded = loader.call();
+			synchronized (this) {
+				for (Consumer<T> update : updates)
+					update.accept(loaded);
+				updates.clear();
+				store = loaded;
+			}
+			return loaded;
+		});
 	}
 
 	/**
-	 * Prints all information about each invoice
+	 * Loads the store on the calling thread
 	 * 
-	 * @param invoice Array-list that holds all the invoices the customer has
+	 * @throws IOException
+	 * @throws ClassNotFoundException
 	 */
-	public void printCustomerInvoices(final ArrayList<Invoice> invoice) {
-		if (invoice == null || invoice.isEmpty()) {
-			System.out.print("No invoices were found\n");
-			return;
+	public void load() throws IOException, ClassNotFoundException {
+		task.run();
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + name, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof ClassNotFoundException)
+				throw (ClassNotFoundException) e.getCause();
+			throw new IOException("Failed to load " + name, e.getCause());
 		}
+	}
 
-		for (int i = 0; i < invoice.size(); i++) {
-			System.out.printf("%d] ", i + 1);
-			printer.get("Invoice").printAllDataMemberInformation(invoice.get(i));
-			System.out.println();
-		}
+	/**
+	 * Starts loading the store on a background thread
+	 */
+	public void loadInBackground() {
+		Thread thread = new Thread(() -> {
+			task.run();
+			// Reports a failure right away instead of on the first access
+			get();
+		}, name + "-loader");
+		thread.setDaemon(true);
+		thread.start();
 	}
 
 	/**
-	 * Prints all information about specific router
+	 * @return boolean Returns true if the store was loaded successfully
+	 */
+	public boolean isLoaded() {
+		return store != null;
+	}
+
+	/**
+	 * Checks if some updates wait for the store to be loaded
 	 * 
-	 * @param routerSerialNumber Serial number of the router
+	 * @return boolean Returns true if an update wasn't applied yet
 	 */
-	public void printRouter(final Integer routerSerialNumber) {
-		if (!router.containsKey(routerSerialNumber)) {
-			System.out.print("Router doesn't exist\n");
-			return;
-		}
-		printer.get("Router").printAllDataMemberInformation(router.get(routerSerialNumber));
+	public synchronized boolean hasUpdates() {
+		return !updates.isEmpty();
 	}
 
 	/**
-	 * Prints all feedbacks
+	 * Applies an update to the store without loading it. The update is applied
+	 * right away if the store is loaded, otherwise once it is.
+	 * 
+	 * @param update Changes the store
 	 */
-	public void printAllFeedbacks() {
-		if (feedback.isEmpty()) {
-			System.out.print("No feedbacks were found\n");
-		}
-		for (int i = 0; i < feedback.size(); i++) {
-			System.out.printf("%d] %s\n", i + 1, feedback.get(i));
-			System.out.println();
+	public synchronized void update(Consumer<T> update) {
+		if (store != null)
+			update.accept(store);
+		else
+			updates.add(update);
+	}
+
+	/**
+	 * Gets the store. Loads it if it's not loaded yet or waits for the background
+	 * thread to finish. Failing to load the store will cause the program to stop.
+	 * 
+	 * @return store The loaded store
+	 */
+	public T get() {
+		task.run();
+		try {
+			return task.get();
+		} catch (InterruptedException | ExecutionException e) {
+			System.out.print("Failed to load " + name + "\nProgram forced to stop\n");
+			e.printStackTrace();
+			System.exit(1);
+			return null;
 		}
 	}
 }
 
 /**
- * Class that manages the system start and close
+ * Reads or writes independent store files at the same time on a bounded pool
+ * of threads, so loading or saving the stores takes about as long as the
+ * largest file. A batch fails as a whole: all the files are waited for before
+ * the first failure is thrown, and the written files replace the saved ones
+ * only once all of them are complete.
  */
-abstract class SystemManager extends SystemIformationHolder {
+class StoreFileBatch {
 	/**
-	 * Used to restrict the calling of start function
+	 * Number of files read or written at the same time
 	 */
-	private static boolean isCalled = false;
+	private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
 	/**
-	 * The only instance of the class
+	 * Threads reading and writing the files. Shared by all the batches.
 	 */
-	private static FileManager fileManager = new FileManager();
+	private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS, runnable -> {
+		Thread thread = new Thread(runnable, "store-io");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	/**
-	 * Loads the data from the files to the Information holder class members
+	 * Writes a store to a file
+	 */
+	interface StoreWriter {
+		/**
+		 * @param fileName The name of the file
+		 * @throws IOException
+		 */
+		void write(String fileName) throws IOException;
+	}
+
+	/**
+	 * Used to force and rename the written files
+	 */
+	private final FileManager fileManager = new FileManager();
+	/**
+	 * The reads and writes not waited for yet
+	 */
+	private final ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+	/**
+	 * The names of the files written by the batch
+	 */
+	private final ArrayList<String> written = new ArrayList<String>();
+
+	/**
+	 * Starts reading a store
 	 * 
-	 * @throws IOException
-	 * @throws ClassNotFoundException
+	 * @param reader Reads the store from its file
+	 * @return task Gives the store once read
 	 */
-	public static void startSystem() throws IOException, ClassNotFoundException {
-		if (!isCalled)
-			isCalled = true;
-		else
-			return;
+	public <T> Future<T> read(Callable<T> reader) {
+		Future<T> task = pool.submit(reader);
+		tasks.add(task);
+		return task;
+	}
 
-		fileManager.checkSystemDataBase();
+	/**
+	 * Starts writing a store to a temporary file which is forced to the disk
+	 * 
+	 * @param fileName The name of the file
+	 * @param writer   Writes the store to the given file
+	 */
+	public void write(String fileName, StoreWriter writer) {
+		written.add(fileName);
+		tasks.add(pool.submit(() -> {
+			writer.write(fileName + ".tmp");
+			fileManager.forceFile(fileName + ".tmp");
+			return null;
+		}));
+	}
 
-		if (!fileManager.isFileEmpty("router.ser")) {
-			router = (HashMap<Integer, Router>) fileManager.readFromFile("router.ser");
-		} else {
-			router = new HashMap<Integer, Router>();
+	/**
+	 * Waits for all the reads and writes
+	 * 
+	 * @throws IOException            If any of them failed
+	 * @throws ClassNotFoundException If a read file holds an unknown class
+	 */
+	public void await() throws IOException, ClassNotFoundException {
+		Exception failure = null;
+		for (Future<?> task : tasks) {
+			try {
+				get(task);
+			} catch (IOException | ClassNotFoundException e) {
+				if (failure == null)
+					failure = e;
+				else
+					failure.addSuppressed(e);
+			}
 		}
+		tasks.clear();
+		if (failure instanceof ClassNotFoundException)
+			throw (ClassNotFoundException) failure;
+		if (failure != null)
+			throw (IOException) failure;
+	}
 
-		if (!fileManager.isFileEmpty("reservation.ser")) {
-			reservation = (HashMap<Integer, Reservation>) fileManager.readFromFile("reservation.ser");
-		} else {
-			reservation = new HashMap<Integer, Reservation>();
+	/**
+	 * Waits for the writes and replaces the saved files with the written ones.
+	 * Nothing is replaced if any write failed.
+	 * 
+	 * @throws IOException If any of the writes failed
+	 */
+	public void commit() throws IOException {
+		try {
+			await();
+		} catch (IOException | ClassNotFoundException e) {
+			for (String fileName : written) {
+				try {
+					Files.deleteIfExists(Paths.get("./database/" + fileName + ".tmp"));
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			if (e instanceof IOException)
+				throw (IOException) e;
+			throw new IOException(e);
+		}
+		for (String fileName : written)
+			fileManager.replaceFile(fileName + ".tmp", fileName);
+	}
+
+	/**
+	 * Waits for a read or a write
+	 * 
+	 * @param task The read or write
+	 * @return result The read store
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public <T> T get(Future<T> task) throws IOException, ClassNotFoundException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading or writing the stores", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof ClassNotFoundException)
+				throw (ClassNotFoundException) e.getCause();
+			throw new IOException("Failed to read or write the stores", e.getCause());
+		}
+	}
+}
+
+/**
+ * Writes primitive values to a file through a buffered NIO channel. All values
+ * are written using a fixed width except strings which are prefixed with their
+ * length.
+ * 
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html">
+ *      FileChannel </a>
+ */
+class BinaryFileWriter implements Closeable {
+	/**
+	 * Channel of the file
+	 */
+	private final FileChannel channel;
+	/**
+	 * Holds the values until they are written to the channel
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+	/**
+	 * Value of System.nanoTime() when the file was opened
+	 */
+	private final long start = System.nanoTime();
+	/**
+	 * Lasts until the file is closed
+	 */
+	private final StoreFileEvent event = new StoreFileEvent();
+	/**
+	 * The path of the file
+	 */
+	private final String path;
+
+	/**
+	 * Creates the file or empties it if it exists
+	 * 
+	 * @param path The path of the file
+	 * @throws IOException
+	 */
+	public BinaryFileWriter(String path) throws IOException {
+		event.begin();
+		this.path = path;
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Makes sure that the buffer has room for the given number of bytes
+	 * 
+	 * @param bytes Number of bytes
+	 * @throws IOException
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+
+	public void writeByte(byte value) throws IOException {
+		ensure(1);
+		buffer.put(value);
+	}
+
+	public void writeBoolean(boolean value) throws IOException {
+		writeByte((byte) (value ? 1 : 0));
+	}
+
+	public void writeChar(char value) throws IOException {
+		ensure(2);
+		buffer.putChar(value);
+	}
+
+	public void writeInt(int value) throws IOException {
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	public void writeLong(long value) throws IOException {
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	public void writeFloat(float value) throws IOException {
+		ensure(4);
+		buffer.putFloat(value);
+	}
+
+	/**
+	 * Writes the length of the string followed by its UTF-8 bytes
+	 * 
+	 * @param value The string
+	 * @throws IOException
+	 */
+	public void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		for (int offset = 0; offset < bytes.length;) {
+			if (!buffer.hasRemaining())
+				flush();
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Writes the buffered values to the file
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		long bytes = 0;
+		try {
+			flush();
+			bytes = channel.size();
+			Metrics.BYTES_WRITTEN.add(bytes);
+		} finally {
+			channel.close();
+			Metrics.WRITE_FILE.record(start);
+			event.report(path, "write", bytes);
+		}
+	}
+}
+
+/**
+ * Reads the primitive values written by BinaryFileWriter through a buffered
+ * NIO channel
+ */
+class BinaryFileReader implements Closeable {
+	/**
+	 * Channel of the file
+	 */
+	private final FileChannel channel;
+	/**
+	 * Holds the values read from the channel
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+	/**
+	 * Value of System.nanoTime() when the file was opened
+	 */
+	private final long start = System.nanoTime();
+	/**
+	 * Lasts until the file is closed
+	 */
+	private final StoreFileEvent event = new StoreFileEvent();
+	/**
+	 * The path of the file
+	 */
+	private final String path;
+
+	/**
+	 * Opens the file for reading
+	 * 
+	 * @param path The path of the file
+	 * @throws IOException
+	 */
+	public BinaryFileReader(String path) throws IOException {
+		event.begin();
+		this.path = path;
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+		buffer.limit(0);
+	}
+
+	/**
+	 * Makes sure that the buffer holds the given number of bytes
+	 * 
+	 * @param bytes Number of bytes
+	 * @throws IOException
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes)
+			return;
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0)
+				throw new EOFException("Unexpected end of file");
+		}
+		buffer.flip();
+	}
+
+	public byte readByte() throws IOException {
+		ensure(1);
+		return buffer.get();
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public char readChar() throws IOException {
+		ensure(2);
+		return buffer.getChar();
+	}
+
+	public int readInt() throws IOException {
+		ensure(4);
+		return buffer.getInt();
+	}
+
+	public long readLong() throws IOException {
+		ensure(8);
+		return buffer.getLong();
+	}
+
+	public float readFloat() throws IOException {
+		ensure(4);
+		return buffer.getFloat();
+	}
+
+	/**
+	 * Reads a string written by BinaryFileWriter.writeString
+	 * 
+	 * @return value The string
+	 * @throws IOException
+	 */
+	public String readString() throws IOException {
+		byte[] bytes = new byte[readInt()];
+		for (int offset = 0; offset < bytes.length;) {
+			if (!buffer.hasRemaining())
+				ensure(1);
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.get(bytes, offset, length);
+			offset += length;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		long bytes = channel.position();
+		Metrics.BYTES_READ.add(bytes);
+		channel.close();
+		Metrics.READ_FILE.record(start);
+		event.report(path, "read", bytes);
+	}
+}
+
+/**
+ * Reads and writes the system stores using a compact binary format instead of
+ * Java serialization. Every file starts with a header [magic number, format
+ * version, store kind, number of records] followed by fixed-width records.
+ */
+class BinaryCodec {
+	/**
+	 * First 4 bytes of every binary file ["RRDB"]
+	 */
+	private static final int MAGIC = 0x52524442;
+	/**
+	 * Version of the binary format. Version 2 keeps the router of every
+	 * reservation instead of the routerSchedule.bin file, version 3 keeps the
+	 * start date of every invoice. The files of the former versions can still be
+	 * read.
+	 */
+	private static final byte VERSION = 3;
+	/**
+	 * Kinds of the stores. The router schedules are only read from the files of
+	 * version 1.
+	 */
+	private static final byte ROUTER = 1, RESERVATION = 2, ROUTER_SCHEDULE = 3, FEEDBACK = 4, CUSTOMER = 5;
+
+	/**
+	 * Creates a binary file and writes its header
+	 * 
+	 * @param fileName The name of the file
+	 * @param kind     The kind of the store
+	 * @param records  Number of records
+	 * @return writer Writer positioned after the header
+	 * @throws IOException
+	 */
+	private BinaryFileWriter create(String fileName, byte kind, int records) throws IOException {
+		BinaryFileWriter writer = new BinaryFileWriter("./database/" + fileName);
+		writer.writeInt(MAGIC);
+		writer.writeByte(VERSION);
+		writer.writeByte(kind);
+		writer.writeInt(records);
+		return writer;
+	}
+
+	/**
+	 * Opens a binary file and checks its header
+	 * 
+	 * @param fileName The name of the file
+	 * @param kind     The kind of the store
+	 * @return reader Reader positioned after the header
+	 * @throws IOException
+	 */
+	private BinaryFileReader open(String fileName, byte kind) throws IOException {
+		BinaryFileReader reader = new BinaryFileReader("./database/" + fileName);
+		try {
+			checkHeader(reader, fileName, kind);
+		} catch (IOException e) {
+			reader.close();
+			throw e;
+		}
+		return reader;
+	}
+
+	/**
+	 * @param reader   Reader of the file positioned at its start
+	 * @param fileName The name of the file
+	 * @param kind     The kind of the store
+	 * @return version The version the file was written with
+	 * @throws IOException If the file isn't a valid binary file of the kind
+	 */
+	private byte checkHeader(BinaryFileReader reader, String fileName, byte kind) throws IOException {
+		int magic = reader.readInt();
+		byte version = reader.readByte();
+		if (magic != MAGIC || version < 1 || version > VERSION || reader.readByte() != kind)
+			throw new IOException(fileName + " isn't a valid binary file");
+		return version;
+	}
+
+	/**
+	 * @param fileName The name of the file
+	 * @return boolean Returns true if the file doesn't exist or is empty
+	 */
+	private boolean isFileEmpty(String fileName) {
+		return new File("./database/" + fileName).length() == 0;
+	}
+
+	/**
+	 * Record: [serial number, model, number of ports]
+	 * 
+	 * @param fileName The name of the file
+	 * @param router   Routers
+	 * @throws IOException
+	 */
+	public void writeRouters(String fileName, Collection<Router> router) throws IOException {
+		try (BinaryFileWriter writer = create(fileName, ROUTER, router.size())) {
+			for (Router r : router) {
+				writer.writeInt(r.getSerialNumber());
+				writer.writeChar(r.getModel());
+				writer.writeInt(r.getPortsNumber());
+			}
+		}
+	}
+
+	/**
+	 * Restores a saved router. A router that fails the validation means the file
+	 * is corrupted.
+	 * 
+	 * @param serialNumber Serial number of the router
+	 * @param model        Router's model
+	 * @param portsNumber  Number of ports of the router
+	 * @return router The restored router
+	 * @throws IOException
+	 */
+	public static Router restoreRouter(int serialNumber, char model, int portsNumber) throws IOException {
+		try {
+			return new Router(serialNumber, model, portsNumber);
+		} catch (InputError e) {
+			throw new IOException("Corrupted router " + serialNumber, e);
+		}
+	}
+
+	/**
+	 * @param fileName The name of the file
+	 * @return router Routers [Key: Serial number, Value: Router]
+	 * @throws IOException
+	 */
+	public HashMap<Integer, Router> readRouters(String fileName) throws IOException {
+		HashMap<Integer, Router> router = new HashMap<Integer, Router>();
+		if (isFileEmpty(fileName))
+			return router;
+		try (BinaryFileReader reader = open(fileName, ROUTER)) {
+			for (int i = reader.readInt(); i > 0; i--) {
+				Router r = restoreRouter(reader.readInt(), reader.readChar(), reader.readInt());
+				router.put(r.getSerialNumber(), r);
+			}
+		}
+		return router;
+	}
+
+	/**
+	 * Header is followed by the reservation counter. Record: [number, router
+	 * serial number, type, reservation date, start date, duration]. The due date
+	 * is calculated on load.
+	 * 
+	 * @param fileName    The name of the file
+	 * @param reservation The reservations store
+	 * @param counter     The reservation counter
+	 * @throws IOException
+	 */
+	public void writeReservations(String fileName, ReservationStore reservation, int counter)
+			throws IOException {
+		try (BinaryFileWriter writer = create(fileName, RESERVATION, reservation.size())) {
+			writer.writeInt(counter);
+			for (Reservation r : reservation.values()) {
+				writer.writeInt(r.getNumber());
+				writer.writeInt(r.getRouterSerialNumber());
+				writer.writeChar(r.getType());
+				writer.writeLong(r.getReservationTime());
+				writer.writeLong(r.getStartTime());
+				writer.writeInt(r.getDuration());
+			}
+		}
+	}
+
+	/**
+	 * Reads the reservations and restores the reservation counter
+	 * 
+	 * @param fileName    The name of the file
+	 * @param reservation The empty store to read the reservations to
+	 * @return reservation The reservations store
+	 * @throws IOException
+	 */
+	public ReservationStore readReservations(String fileName, ReservationStore reservation) throws IOException {
+		if (isFileEmpty(fileName))
+			return reservation;
+		try (BinaryFileReader reader = new BinaryFileReader("./database/" + fileName)) {
+			boolean hasRouters = checkHeader(reader, fileName, RESERVATION) >= 2;
+			int records = reader.readInt();
+			Reservation.updateCounter(reader.readInt());
+			for (int i = records; i > 0; i--) {
+				int number = reader.readInt();
+				int routerSerialNumber = hasRouters ? reader.readInt() : 0;
+				reservation.put(new Reservation(number, routerSerialNumber, reader.readChar(), reader.readLong(),
+						reader.readLong(), reader.readInt()));
+			}
+		}
+		return reservation;
+	}
+
+	/**
+	 * Reads the routerSchedule.bin file written by version 1. Record: [serial
+	 * number, number of reservations, reservation's numbers]
+	 * 
+	 * @param fileName The name of the file
+	 * @return routerSchedule [Key: Router serial number, Value: Array-list of
+	 *         Reservation's Number]
+	 * @throws IOException
+	 */
+	public HashMap<Integer, ArrayList<Integer>> readRouterSchedule(String fileName) throws IOException {
+		HashMap<Integer, ArrayList<Integer>> routerSchedule = new HashMap<Integer, ArrayList<Integer>>();
+		if (isFileEmpty(fileName))
+			return routerSchedule;
+		try (BinaryFileReader reader = open(fileName, ROUTER_SCHEDULE)) {
+			for (int i = reader.readInt(); i > 0; i--) {
+				int routerSerialNumber = reader.readInt();
+				int size = reader.readInt();
+				ArrayList<Integer> reservationList = new ArrayList<Integer>(size);
+				for (int j = 0; j < size; j++)
+					reservationList.add(reader.readInt());
+				routerSchedule.put(routerSerialNumber, reservationList);
+			}
+		}
+		return routerSchedule;
+	}
+
+	/**
+	 * Record: [length, UTF-8 bytes]
+	 * 
+	 * @param fileName The name of the file
+	 * @param feedback All received feedbacks
+	 * @throws IOException
+	 */
+	public void writeFeedback(String fileName, ArrayList<String> feedback) throws IOException {
+		try (BinaryFileWriter writer = create(fileName, FEEDBACK, feedback.size())) {
+			for (String f : feedback)
+				writer.writeString(f);
+		}
+	}
+
+	/**
+	 * @param fileName The name of the file
+	 * @return feedback All received feedbacks
+	 * @throws IOException
+	 */
+	public ArrayList<String> readFeedback(String fileName) throws IOException {
+		ArrayList<String> feedback = new ArrayList<String>();
+		if (isFileEmpty(fileName))
+			return feedback;
+		try (BinaryFileReader reader = open(fileName, FEEDBACK)) {
+			for (int i = reader.readInt(); i > 0; i--)
+				feedback.add(reader.readString());
+		}
+		return feedback;
+	}
+
+	/**
+	 * Record: [ID, is resident, number of invoices, invoices]. Invoice: [router
+	 * serial number, reservation number, fees, start date]
+	 * 
+	 * @param fileName The name of the file
+	 * @param customer Customers [Key: ID, Value: Customer]
+	 * @throws IOException
+	 */
+	public void writeCustomers(String fileName, Map<Integer, Customer> customer) throws IOException {
+		try (BinaryFileWriter writer = create(fileName, CUSTOMER, customer.size())) {
+			for (Customer c : customer.values()) {
+				writer.writeInt(c.getID());
+				writer.writeBoolean(c.isResident());
+				writer.writeInt(c.getInvoices().size());
+				for (Invoice i : c.getInvoices()) {
+					writer.writeInt(i.getRouterSerialNumber());
+					writer.writeInt(i.getReservationNumber());
+					writer.writeFloat(i.getFees());
+					writer.writeLong(i.getStartDate());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param fileName The name of the file
+	 * @return customer Customers [Key: ID, Value: Customer]
+	 * @throws IOException
+	 */
+	public HashMap<Integer, Customer> readCustomers(String fileName) throws IOException {
+		HashMap<Integer, Customer> customer = new HashMap<Integer, Customer>();
+		if (isFileEmpty(fileName))
+			return customer;
+		try (BinaryFileReader reader = new BinaryFileReader("./database/" + fileName)) {
+			boolean hasStartDates = checkHeader(reader, fileName, CUSTOMER) >= 3;
+			for (int i = reader.readInt(); i > 0; i--) {
+				Customer c = new Customer(reader.readInt(), reader.readBoolean());
+				for (int j = reader.readInt(); j > 0; j--)
+					c.getInvoices().add(new Invoice(reader.readInt(), reader.readInt(), reader.readFloat(),
+							hasStartDates ? reader.readLong() : 0));
+				customer.put(c.getID(), c);
+			}
+		}
+		return customer;
+	}
+}
+
+/**
+ * One-time migration tool. Converts the .ser files written using Java
+ * serialization to the binary format. Run it once before starting the system
+ * using -Drouterrental.format=binary
+ */
+class DatabaseMigration {
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) {
+		FileManager fileManager = new FileManager();
+		BinaryCodec binaryCodec = new BinaryCodec();
+		try {
+			fileManager.checkSystemDataBase();
+
+			HashMap<Integer, Router> router = new HashMap<Integer, Router>();
+			if (!fileManager.isFileEmpty("router.ser"))
+				router = (HashMap<Integer, Router>) fileManager.readFromFile("router.ser");
+			binaryCodec.writeRouters("router.bin", router.values());
+
+			HashMap<Integer, Reservation> reservation = new HashMap<Integer, Reservation>();
+			if (!fileManager.isFileEmpty("reservation.ser"))
+				reservation = (HashMap<Integer, Reservation>) fileManager.readFromFile("reservation.ser");
+			int counter = 0;
+			if (!fileManager.isFileEmpty("reservationCounter.ser"))
+				counter = (int) fileManager.readFromFile("reservationCounter.ser");
+			HashReservationStore reservations = new HashReservationStore(reservation);
+			if (!fileManager.isFileEmpty("routerSchedule.ser"))
+				SystemManager.restoreRouters(
+						(HashMap<Integer, ArrayList<Integer>>) fileManager.readFromFile("routerSchedule.ser"),
+						reservations);
+			binaryCodec.writeReservations("reservation.bin", reservations, counter);
+
+			ArrayList<String> feedback = new ArrayList<String>();
+			if (!fileManager.isFileEmpty("feedback.ser"))
+				feedback = (ArrayList<String>) fileManager.readFromFile("feedback.ser");
+			binaryCodec.writeFeedback("feedback.bin", feedback);
+
+			HashMap<Integer, Customer> customer = new HashMap<Integer, Customer>();
+			if (!fileManager.isFileEmpty("customer.ser"))
+				customer = (HashMap<Integer, Customer>) fileManager.readFromFile("customer.ser");
+			binaryCodec.writeCustomers("customer.bin", customer);
+
+			System.out.printf("Migrated %d routers, %d reservations, %d feedbacks and %d customers\n", router.size(),
+					reservation.size(), feedback.size(), customer.size());
+		} catch (ClassNotFoundException | IOException e) {
+			System.out.print("Failed to migrate the database\n");
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
+
+/**
+ * Append-only log of every change made to the system stores. Each change is
+ * written as a compact record [length, operation, data, checksum] and the
+ * records are forced to the disk in groups by a background thread. The journal
+ * is replayed on start and compacted into the .ser files once it grows too
+ * long. Replaying a record that's already in the .ser files has no effect.
+ * 
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#force-boolean-">
+ *      FileChannel.force </a>
+ */
+class Journal extends SystemIformationHolder {
+	/**
+	 * Record operations. FEEDBACK records hold modified UTF-8 text limited to
+	 * 65535 bytes and are only replayed from journals written before
+	 * FEEDBACK_TEXT. The invoices are put and removed by their reservation's
+	 * number.
+	 */
+	private static final byte ADD_ROUTER = 1, REMOVE_ROUTER = 2, ADD_RESERVATION = 3, EXTEND_RESERVATION = 4,
+			CANCEL_RESERVATION = 5, FEEDBACK = 6, ADD_RESERVATIONS = 7, FEEDBACK_TEXT = 8, PUT_INVOICES = 9,
+			REMOVE_INVOICE = 10;
+	/**
+	 * Time between two group commits in milliseconds
+	 */
+	private static final long COMMIT_INTERVAL = 50;
+	/**
+	 * Number of records after which the journal is compacted into the .ser files
+	 */
+	private static final int COMPACTION_THRESHOLD = 1000;
+	/**
+	 * Path of the journal file
+	 */
+	private static final String PATH = "./database/journal.log";
+	/**
+	 * Boolean to know whether the journaling is enabled
+	 */
+	private final boolean isEnabled;
+	/**
+	 * File the records are appended to
+	 */
+	private FileOutputStream file;
+	/**
+	 * Buffered stream over the file
+	 */
+	private DataOutputStream outputStream;
+	/**
+	 * Holds the record being written
+	 */
+	private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+	/**
+	 * Stream to write the record being written
+	 */
+	private final DataOutputStream record = new DataOutputStream(recordBuffer);
+	/**
+	 * Used to calculate records checksum
+	 */
+	private final CRC32 checksum = new CRC32();
+	/**
+	 * Number of records since the last compaction
+	 */
+	private int records = 0;
+	/**
+	 * Number of records before the position returned by mark
+	 */
+	private int markedRecords = 0;
+	/**
+	 * Boolean to know whether there are records not forced to the disk yet
+	 */
+	private boolean isDirty = false;
+	/**
+	 * Boolean to know whether a compaction is scheduled
+	 */
+	private boolean isCompacting = false;
+	/**
+	 * Background thread that forces the records to the disk
+	 */
+	private ScheduledExecutorService committer;
+	/**
+	 * Replayed invoice records. Applied once the customers are loaded, which is
+	 * after the journal is replayed.
+	 */
+	private final ArrayList<Consumer<Map<Integer, Customer>>> invoices = new ArrayList<Consumer<Map<Integer, Customer>>>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param isEnabled Boolean to know whether the journaling is enabled
+	 */
+	public Journal(boolean isEnabled) {
+		this.isEnabled = isEnabled;
+	}
+
+	/**
+	 * Applies the records of the journal to the stores. A torn record left by a
+	 * crash ends the replay and is cut from the file.
+	 * 
+	 * @throws IOException
+	 */
+	public void replay() throws IOException {
+		if (!isEnabled)
+			return;
+
+		File journalFile = new File(PATH);
+		long validLength = 0;
+		try (DataInputStream inputStream = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(journalFile)))) {
+			while (true) {
+				int length = inputStream.readInt();
+				if (length <= 0 || length > journalFile.length())
+					break;
+				byte[] data = new byte[length];
+				inputStream.readFully(data);
+				int crc = inputStream.readInt();
+				checksum.reset();
+				checksum.update(data, 0, length);
+				if ((int) checksum.getValue() != crc)
+					break;
+				apply(new DataInputStream(new ByteArrayInputStream(data)));
+				validLength += length + 8;
+				records++;
+			}
+		} catch (EOFException e) {
+			// The last record wasn't completely written
+		}
+
+		if (validLength < journalFile.length()) {
+			try (RandomAccessFile f = new RandomAccessFile(journalFile, "rw")) {
+				f.setLength(validLength);
+			}
+		}
+	}
+
+	/**
+	 * Applies a single record to the stores
+	 * 
+	 * @param data Stream holding the record
+	 * @throws IOException
+	 */
+	private void apply(DataInputStream data) throws IOException {
+		byte operation = data.readByte();
+		if (operation == ADD_ROUTER) {
+			Router r = BinaryCodec.restoreRouter(data.readInt(), data.readChar(), data.readInt());
+			if (!router.containsKey(r.getSerialNumber())) {
+				router.put(r.getSerialNumber(), r);
+				routerSchedule.put(r.getSerialNumber(), new RouterSchedule());
+			}
+		} else if (operation == REMOVE_ROUTER) {
+			int routerSerialNumber = data.readInt();
+			if (router.containsKey(routerSerialNumber)) {
+				RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+				for (int i = 0; i < schedule.size(); i++)
+					reservation.remove(schedule.getNumber(i));
+				router.remove(routerSerialNumber);
+				routerSchedule.remove(routerSerialNumber);
+			}
+		} else if (operation == ADD_RESERVATION) {
+			applyAddReservation(data);
+		} else if (operation == ADD_RESERVATIONS) {
+			for (int i = data.readInt(); i > 0; i--)
+				applyAddReservation(data);
+		} else if (operation == EXTEND_RESERVATION) {
+			int routerSerialNumber = data.readInt();
+			Reservation r = reservation.get(data.readInt());
+			int duration = data.readInt();
+			if (r != null && !isOnOtherRouter(r, routerSerialNumber) && duration > r.getDuration()) {
+				try {
+					r.setDuration(duration);
+				} catch (InputError e) {
+					throw new IOException("Corrupted journal record", e);
+				}
+				reservation.put(r);
+				routerSchedule.get(routerSerialNumber).setDueDate(r.getNumber(), r.getStartTime(),
+						r.getDueTime());
+			}
+		} else if (operation == CANCEL_RESERVATION) {
+			int routerSerialNumber = data.readInt();
+			Reservation r = reservation.get(data.readInt());
+			if (r != null && !isOnOtherRouter(r, routerSerialNumber)
+					&& routerSchedule.containsKey(routerSerialNumber)
+					&& routerSchedule.get(routerSerialNumber).remove(r.getNumber(), r.getStartTime()))
+				reservation.remove(r.getNumber());
+		} else if (operation == FEEDBACK || operation == FEEDBACK_TEXT) {
+			int index = data.readInt();
+			String text;
+			if (operation == FEEDBACK) {
+				text = data.readUTF();
+			} else {
+				byte[] bytes = new byte[data.readInt()];
+				data.readFully(bytes);
+				text = new String(bytes, StandardCharsets.UTF_8);
+			}
+			// Applied once the feedbacks are loaded, so lazy loading isn't forced
+			feedback.update(list -> {
+				if (list.size() <= index)
+					list.add(text);
+			});
+		} else if (operation == PUT_INVOICES) {
+			int customerId = data.readInt();
+			boolean isResident = data.readBoolean();
+			ArrayList<Invoice> put = new ArrayList<Invoice>();
+			for (int i = data.readInt(); i > 0; i--)
+				put.add(new Invoice(data.readInt(), data.readInt(), data.readFloat(), data.readLong()));
+			invoices.add(customer -> {
+				ArrayList<Invoice> list = customer.computeIfAbsent(customerId, id -> new Customer(id, isResident))
+						.getInvoices();
+				for (Invoice i : put) {
+					int index = indexOf(list, i.getReservationNumber());
+					if (index >= 0)
+						list.set(index, i);
+					else
+						list.add(i);
+				}
+			});
+		} else if (operation == REMOVE_INVOICE) {
+			int customerId = data.readInt();
+			int reservationNumber = data.readInt();
+			invoices.add(customer -> {
+				Customer c = customer.get(customerId);
+				int index = c != null ? indexOf(c.getInvoices(), reservationNumber) : -1;
+				if (index >= 0)
+					c.getInvoices().remove(index);
+			});
+		}
+	}
+
+	/**
+	 * @param invoices          Invoices of a customer
+	 * @param reservationNumber Number of the reservation
+	 * @return index Position of the invoice of the reservation. -1 if not found
+	 */
+	private static int indexOf(List<Invoice> invoices, int reservationNumber) {
+		for (int i = 0; i < invoices.size(); i++)
+			if (invoices.get(i).getReservationNumber() == reservationNumber)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Applies the replayed invoice records to the customers. Called once they are
+	 * loaded and before they can be used.
+	 * 
+	 * @param customer All customers
+	 */
+	public synchronized void applyInvoices(Map<Integer, Customer> customer) {
+		for (Consumer<Map<Integer, Customer>> update : invoices)
+			update.accept(customer);
+		invoices.clear();
+	}
+
+	/**
+	 * @return boolean Returns true if replayed invoice records wait for the
+	 *         customers to be loaded
+	 */
+	public synchronized boolean hasInvoices() {
+		return !invoices.isEmpty();
+	}
+
+	/**
+	 * Opens the journal for appending and starts the group commit thread
+	 * 
+	 * @throws IOException
+	 */
+	public void open() throws IOException {
+		if (!isEnabled)
+			return;
+
+		file = new FileOutputStream(PATH, true);
+		outputStream = new DataOutputStream(new BufferedOutputStream(file));
+		committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-committer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		committer.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL, COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Drops the record being written when it couldn't be encoded, so a partial
+	 * record is never appended
+	 * 
+	 * @param e The exception thrown while writing the record
+	 */
+	private void discard(IOException e) {
+		System.out.print("Failed to write to the journal\n");
+		e.printStackTrace();
+		recordBuffer.reset();
+	}
+
+	/**
+	 * Appends the record being written to the journal. Schedules a compaction if
+	 * the journal grew too long.
+	 */
+	private void append() {
+		try {
+			record.flush();
+			checksum.reset();
+			checksum.update(recordBuffer.toByteArray(), 0, recordBuffer.size());
+			outputStream.writeInt(recordBuffer.size());
+			recordBuffer.writeTo(outputStream);
+			outputStream.writeInt((int) checksum.getValue());
+			isDirty = true;
+		} catch (IOException e) {
+			System.out.print("Failed to write to the journal\n");
+			e.printStackTrace();
+		} finally {
+			recordBuffer.reset();
+		}
+
+		// Compacted by the committer thread since the caller may hold router locks.
+		// Scheduled again once the journal is emptied or trimmed.
+		if (++records >= COMPACTION_THRESHOLD && !isCompacting) {
+			isCompacting = true;
+			committer.execute(() -> {
+				try {
+					SystemManager.compact();
+				} catch (IOException e) {
+					System.out.print("Failed to compact the journal\n");
+					e.printStackTrace();
+					synchronized (this) {
+						isCompacting = false;
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Forces the appended records to the disk. Called periodically by the group
+	 * commit thread.
+	 */
+	public synchronized void commit() {
+		if (!isEnabled || !isDirty)
+			return;
+		long start = System.nanoTime();
+		try {
+			outputStream.flush();
+			file.getChannel().force(false);
+			isDirty = false;
+			Metrics.JOURNAL_COMMIT.record(start);
+		} catch (IOException e) {
+			Metrics.JOURNAL_COMMIT.record(start, false);
+			System.out.print("Failed to commit the journal\n");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Empties the journal. Called after its records are saved to the .ser files.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void truncate() throws IOException {
+		if (!isEnabled)
+			return;
+		outputStream.flush();
+		file.getChannel().truncate(0);
+		file.getChannel().force(false);
+		records = 0;
+		isDirty = false;
+		isCompacting = false;
+	}
+
+	/**
+	 * Marks the end of the records saved by a snapshot. Called while the stores
+	 * can't change.
+	 * 
+	 * @return position Length of the journal
+	 * @throws IOException
+	 */
+	public synchronized long mark() throws IOException {
+		if (!isEnabled)
+			return 0;
+		outputStream.flush();
+		markedRecords = records;
+		return file.getChannel().size();
+	}
+
+	/**
+	 * Removes the records saved by a snapshot. The records appended after the
+	 * mark are copied to a new journal which replaces the old one atomically.
+	 * 
+	 * @param position The position returned by mark
+	 * @throws IOException
+	 */
+	public synchronized void trim(long position) throws IOException {
+		if (!isEnabled)
+			return;
+		outputStream.flush();
+		Path trimmed = Paths.get(PATH + ".tmp");
+		try (FileChannel in = FileChannel.open(Paths.get(PATH), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(trimmed, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (long copied = position, end = in.size(); copied < end;)
+				copied += in.transferTo(copied, end - copied, out);
+			out.force(false);
+		}
+		outputStream.close();
+		try {
+			Files.move(trimmed, Paths.get(PATH), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			file = new FileOutputStream(PATH, true);
+			outputStream = new DataOutputStream(new BufferedOutputStream(file));
+		}
+		records -= markedRecords;
+		markedRecords = 0;
+		isDirty = false;
+		isCompacting = false;
+	}
+
+	/**
+	 * Applies a single added reservation to the stores
+	 * 
+	 * @param data Stream holding the reservation
+	 * @throws IOException
+	 */
+	private void applyAddReservation(DataInputStream data) throws IOException {
+		int routerSerialNumber = data.readInt();
+		Reservation r = new Reservation(data.readInt(), routerSerialNumber, data.readChar(), data.readLong(),
+				data.readLong(), data.readInt());
+		Reservation.updateCounter(r.getNumber());
+		Reservation stored = reservation.get(r.getNumber());
+		if (stored != null && isOnOtherRouter(stored, routerSerialNumber))
+			return;
+		if (routerSchedule.containsKey(routerSerialNumber)
+				&& !routerSchedule.get(routerSerialNumber).contains(r.getNumber(), r.getStartTime())) {
+			reservation.put(r);
+			routerSchedule.get(routerSerialNumber).add(r.getNumber(), r.getStartTime(),
+					r.getDueTime());
+		}
+	}
+
+	/**
+	 * The stores may be newer than the record being replayed, the mapped store
+	 * is written in place. A reservation already moved to another router is left
+	 * as it is, the records moving it follow.
+	 * 
+	 * @param r                  Stored reservation
+	 * @param routerSerialNumber Serial number of the router in the record
+	 * @return boolean Whether the reservation is stored on another router
+	 */
+	private static boolean isOnOtherRouter(Reservation r, int routerSerialNumber) {
+		return r.getRouterSerialNumber() != 0 && r.getRouterSerialNumber() != routerSerialNumber;
+	}
+
+	/**
+	 * Stops the group commit thread and closes the journal
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (!isEnabled)
+			return;
+		committer.shutdown();
+		commit();
+		outputStream.close();
+	}
+
+	/**
+	 * @param r Router object
+	 */
+	public synchronized void logAddRouter(Router r) {
+		SystemManager.countChanges(1);
+		if (!isEnabled)
+			return;
+		try {
+			record.writeByte(ADD_ROUTER);
+			record.writeInt(r.getSerialNumber());
+			record.writeChar(r.getModel());
+			record.writeInt(r.getPortsNumber());
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 */
+	public synchronized void logRemoveRouter(int routerSerialNumber) {
+		SystemManager.countChanges(1);
+		if (!isEnabled)
+			return;
+		try {
+			record.writeByte(REMOVE_ROUTER);
+			record.writeInt(routerSerialNumber);
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @param r                  Reservation object
+	 */
+	public synchronized void logAddReservation(int routerSerialNumber, Reservation r) {
+		SystemManager.countChanges(1);
+		if (!isEnabled)
+			return;
+		try {
+			record.writeByte(ADD_RESERVATION);
+			writeReservation(routerSerialNumber, r);
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * Logs the reservations of a batch as one record
+	 * 
+	 * @param routerSerialNumbers Serial numbers of the routers of the reservations
+	 * @param reservations        The added reservations
+	 */
+	public synchronized void logAddReservations(ArrayList<Integer> routerSerialNumbers,
+			ArrayList<Reservation> reservations) {
+		SystemManager.countChanges(reservations.size());
+		if (!isEnabled || reservations.isEmpty())
+			return;
+		try {
+			record.writeByte(ADD_RESERVATIONS);
+			record.writeInt(reservations.size());
+			for (int i = 0; i < reservations.size(); i++)
+				writeReservation(routerSerialNumbers.get(i), reservations.get(i));
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * Writes an added reservation to the record being written
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param r                  Reservation object
+	 * @throws IOException
+	 */
+	private void writeReservation(int routerSerialNumber, Reservation r) throws IOException {
+		record.writeInt(routerSerialNumber);
+		record.writeInt(r.getNumber());
+		record.writeChar(r.getType());
+		record.writeLong(r.getReservationTime());
+		record.writeLong(r.getStartTime());
+		record.writeInt(r.getDuration());
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @param r                  Reservation object holding the new duration
+	 */
+	public synchronized void logExtendReservation(int routerSerialNumber, Reservation r) {
+		SystemManager.countChanges(1);
+		if (!isEnabled)
+			return;
+		try {
+			record.writeByte(EXTEND_RESERVATION);
+			record.writeInt(routerSerialNumber);
+			record.writeInt(r.getNumber());
+			record.writeInt(r.getDuration());
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @param reservationNumber  Reservation's number
+	 */
+	public synchronized void logCancelReservation(int routerSerialNumber, int reservationNumber) {
+		SystemManager.countChanges(1);
+		if (!isEnabled)
+			return;
+		try {
+			record.writeByte(CANCEL_RESERVATION);
+			record.writeInt(routerSerialNumber);
+			record.writeInt(reservationNumber);
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * Logs the invoices added or replaced by a customer. Counted as changes with
+	 * the records of their reservations.
+	 * 
+	 * @param c        The customer
+	 * @param invoices The invoices
+	 */
+	public synchronized void logPutInvoices(Customer c, List<Invoice> invoices) {
+		if (!isEnabled || invoices.isEmpty())
+			return;
+		try {
+			record.writeByte(PUT_INVOICES);
+			record.writeInt(c.getID());
+			record.writeBoolean(c.isResident());
+			record.writeInt(invoices.size());
+			for (Invoice i : invoices) {
+				record.writeInt(i.getRouterSerialNumber());
+				record.writeInt(i.getReservationNumber());
+				record.writeFloat(i.getFees());
+				record.writeLong(i.getStartDate());
+			}
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * @param customerId        ID of the customer
+	 * @param reservationNumber Number of the reservation of the removed invoice
+	 */
+	public synchronized void logRemoveInvoice(int customerId, int reservationNumber) {
+		if (!isEnabled)
+			return;
+		try {
+			record.writeByte(REMOVE_INVOICE);
+			record.writeInt(customerId);
+			record.writeInt(reservationNumber);
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+
+	/**
+	 * @param index Position of the feedback in the feedbacks list
+	 * @param text  The feedback
+	 */
+	public synchronized void logFeedback(int index, String text) {
+		SystemManager.countChanges(1);
+		if (!isEnabled)
+			return;
+		try {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			record.writeByte(FEEDBACK_TEXT);
+			record.writeInt(index);
+			record.writeInt(bytes.length);
+			record.write(bytes);
+		} catch (IOException e) {
+			discard(e);
+			return;
+		}
+		append();
+	}
+}
+
+/**
+ * Schedule of a router. Keeps the reservation's numbers and start/due dates in
+ * parallel arrays sorted by start date, so adding a reservation and checking
+ * the availability are answered by a binary search instead of sorting or
+ * walking the whole schedule. Reservations of the same router never overlap,
+ * which means the due dates are sorted as well.
+ * 
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/util/Arrays.html#binarySearch-long:A-long-">
+ *      Arrays.binarySearch </a>
+ */
+class RouterSchedule {
+	/**
+	 * Start dates of the reservations in milliseconds
+	 */
+	private long[] startDates;
+	/**
+	 * Due dates of the reservations in milliseconds
+	 */
+	private long[] dueDates;
+	/**
+	 * Reservation's numbers
+	 */
+	private int[] numbers;
+	/**
+	 * Number of the scheduled reservations
+	 */
+	private int size;
+
+	/**
+	 * Constructor
+	 */
+	public RouterSchedule() {
+		startDates = new long[4];
+		dueDates = new long[4];
+		numbers = new int[4];
+		size = 0;
+	}
+
+	/**
+	 * @return size Number of the scheduled reservations
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index Position in the schedule
+	 * @return number Reservation's number
+	 */
+	public int getNumber(int index) {
+		return numbers[index];
+	}
+
+	/**
+	 * @param index Position in the schedule
+	 * @return startDate Start date in milliseconds
+	 */
+	public long getStartDate(int index) {
+		return startDates[index];
+	}
+
+	/**
+	 * @param index Position in the schedule
+	 * @return dueDate Due date in milliseconds
+	 */
+	public long getDueDate(int index) {
+		return dueDates[index];
+	}
+
+	/**
+	 * Finds the position of the last reservation that starts at or before the
+	 * given time
+	 * 
+	 * @param time Time in milliseconds
+	 * @return index The position of the reservation. Returns -1 if there's none
+	 */
+	private int lastStartingAtOrBefore(long time) {
+		int low = 0, high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (startDates[mid] <= time)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return high;
+	}
+
+	/**
+	 * Checks if the given period doesn't overlap any scheduled reservation.
+	 * 
+	 * @param startDate         Start date in milliseconds
+	 * @param dueDate           Due date in milliseconds
+	 * @param reservationNumber Reservation to be ignored while checking [0 to
+	 *                          check against all reservations]
+	 * @return boolean Returns true if available
+	 */
+	public boolean isAvailable(long startDate, long dueDate, int reservationNumber) {
+		int i = lastStartingAtOrBefore(dueDate);
+		if (i >= 0 && numbers[i] == reservationNumber)
+			i--;
+		return i < 0 || dueDates[i] < startDate;
+	}
+
+	/**
+	 * Adds a reservation to the schedule keeping it sorted by start date
+	 * 
+	 * @param reservationNumber Reservation's number
+	 * @param startDate         Start date in milliseconds
+	 * @param dueDate           Due date in milliseconds
+	 */
+	public void add(int reservationNumber, long startDate, long dueDate) {
+		if (size == numbers.length) {
+			startDates = Arrays.copyOf(startDates, size * 2);
+			dueDates = Arrays.copyOf(dueDates, size * 2);
+			numbers = Arrays.copyOf(numbers, size * 2);
+		}
+		int i = lastStartingAtOrBefore(startDate) + 1;
+		System.arraycopy(startDates, i, startDates, i + 1, size - i);
+		System.arraycopy(dueDates, i, dueDates, i + 1, size - i);
+		System.arraycopy(numbers, i, numbers, i + 1, size - i);
+		startDates[i] = startDate;
+		dueDates[i] = dueDate;
+		numbers[i] = reservationNumber;
+		size++;
+	}
+
+	/**
+	 * Adds many reservations in one pass. The reservations must be sorted by their
+	 * start dates. The schedule is merged with them from its end, so every
+	 * scheduled reservation is moved at most once.
+	 * 
+	 * @param reservationNumbers Reservations' numbers
+	 * @param startDates         Start dates in milliseconds
+	 * @param dueDates           Due dates in milliseconds
+	 * @param count              Number of the added reservations
+	 */
+	public void addAll(int[] reservationNumbers, long[] startDates, long[] dueDates, int count) {
+		if (size + count > numbers.length) {
+			int capacity = Math.max(numbers.length * 2, size + count);
+			this.startDates = Arrays.copyOf(this.startDates, capacity);
+			this.dueDates = Arrays.copyOf(this.dueDates, capacity);
+			numbers = Arrays.copyOf(numbers, capacity);
+		}
+		int i = size - 1, j = count - 1;
+		for (int k = size + count - 1; j >= 0; k--) {
+			if (i >= 0 && this.startDates[i] > startDates[j]) {
+				this.startDates[k] = this.startDates[i];
+				this.dueDates[k] = this.dueDates[i];
+				numbers[k] = numbers[i--];
+			} else {
+				this.startDates[k] = startDates[j];
+				this.dueDates[k] = dueDates[j];
+				numbers[k] = reservationNumbers[j--];
+			}
+		}
+		size += count;
+	}
+
+	/**
+	 * Finds the position of a reservation
+	 * 
+	 * @param reservationNumber Reservation's number
+	 * @param startDate         Start date in milliseconds
+	 * @return index The position of the reservation. Returns -1 if not found
+	 */
+	private int indexOf(int reservationNumber, long startDate) {
+		for (int i = lastStartingAtOrBefore(startDate); i >= 0 && startDates[i] == startDate; i--) {
+			if (numbers[i] == reservationNumber)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param reservationNumber Reservation's number
+	 * @param startDate         Start date in milliseconds
+	 * @return boolean Returns true if the reservation is in the schedule
+	 */
+	public boolean contains(int reservationNumber, long startDate) {
+		return indexOf(reservationNumber, startDate) != -1;
+	}
+
+	/**
+	 * Removes a reservation from the schedule
+	 * 
+	 * @param reservationNumber Reservation's number
+	 * @param startDate         Start date in milliseconds
+	 * @return boolean Returns true if the reservation was removed
+	 */
+	public boolean remove(int reservationNumber, long startDate) {
+		int i = indexOf(reservationNumber, startDate);
+		if (i == -1)
+			return false;
+		System.arraycopy(startDates, i + 1, startDates, i, size - i - 1);
+		System.arraycopy(dueDates, i + 1, dueDates, i, size - i - 1);
+		System.arraycopy(numbers, i + 1, numbers, i, size - i - 1);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Updates the due date of a reservation. The start date must not change.
+	 * 
+	 * @param reservationNumber Reservation's number
+	 * @param startDate         Start date in milliseconds
+	 * @param dueDate           The new due date in milliseconds
+	 * @return boolean Returns true if the reservation was updated
+	 */
+	public boolean setDueDate(int reservationNumber, long startDate, long dueDate) {
+		int i = indexOf(reservationNumber, startDate);
+		if (i == -1)
+			return false;
+		dueDates[i] = dueDate;
+		return true;
+	}
+}
+
+/**
+ * Striped locks guarding the routers and their schedules. Every router is
+ * mapped to one of a fixed number of locks, so checking the availability and
+ * updating the schedule of a router happen atomically while bookings of other
+ * routers rarely wait.
+ * 
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/locks/ReentrantLock.html">
+ *      ReentrantLock </a>
+ */
+class RouterLocks {
+	/**
+	 * The locks. Their number is a power of two.
+	 */
+	private final ReentrantLock[] stripes;
+	/**
+	 * Called with the index of every lock right after it's taken, while a
+	 * snapshot is being copied. Null otherwise.
+	 */
+	private volatile IntConsumer listener;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param stripesNumber Number of locks [power of two]
+	 */
+	public RouterLocks(int stripesNumber) {
+		stripes = new ReentrantLock[stripesNumber];
+		for (int i = 0; i < stripesNumber; i++)
+			stripes[i] = new ReentrantLock();
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @return index The index of the router's lock
+	 */
+	public int stripe(int routerSerialNumber) {
+		int hash = routerSerialNumber * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+	}
+
+	/**
+	 * @return stripesNumber Number of locks
+	 */
+	public int getStripesNumber() {
+		return stripes.length;
+	}
+
+	/**
+	 * @param listener Called with the index of every lock right after it's
+	 *                 taken. Null to stop calling it.
+	 */
+	public void setListener(IntConsumer listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Takes a lock and calls the listener if any
+	 * 
+	 * @param index The index of the lock
+	 */
+	public void lockStripe(int index) {
+		stripes[index].lock();
+		IntConsumer l = listener;
+		if (l != null)
+			l.accept(index);
+	}
+
+	/**
+	 * @param index The index of the lock
+	 */
+	public void unlockStripe(int index) {
+		stripes[index].unlock();
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 */
+	public void lock(int routerSerialNumber) {
+		lockStripe(stripe(routerSerialNumber));
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 */
+	public void unlock(int routerSerialNumber) {
+		stripes[stripe(routerSerialNumber)].unlock();
+	}
+
+	/**
+	 * Locks two routers. The locks are always taken in the same order to avoid
+	 * deadlocks.
+	 * 
+	 * @param first  Serial number of the first router
+	 * @param second Serial number of the second router
+	 */
+	public void lock(int first, int second) {
+		int a = stripe(first), b = stripe(second);
+		lockStripe(Math.min(a, b));
+		if (a != b)
+			lockStripe(Math.max(a, b));
+	}
+
+	/**
+	 * @param first  Serial number of the first router
+	 * @param second Serial number of the second router
+	 */
+	public void unlock(int first, int second) {
+		int a = stripe(first), b = stripe(second);
+		if (a != b)
+			stripes[Math.max(a, b)].unlock();
+		stripes[Math.min(a, b)].unlock();
+	}
+
+	/**
+	 * @param routerSerialNumbers Serial numbers of the routers
+	 * @return indexes The indexes of the routers' locks, sorted without
+	 *         duplicates
+	 */
+	private int[] stripes(int[] routerSerialNumbers) {
+		int[] indexes = new int[routerSerialNumbers.length];
+		for (int i = 0; i < indexes.length; i++)
+			indexes[i] = stripe(routerSerialNumbers[i]);
+		Arrays.sort(indexes);
+		int count = 0;
+		for (int i = 0; i < indexes.length; i++)
+			if (i == 0 || indexes[i] != indexes[i - 1])
+				indexes[count++] = indexes[i];
+		return Arrays.copyOf(indexes, count);
+	}
+
+	/**
+	 * Locks many routers. The locks are taken in ascending order.
+	 * 
+	 * @param routerSerialNumbers Serial numbers of the routers
+	 */
+	public void lock(int[] routerSerialNumbers) {
+		for (int index : stripes(routerSerialNumbers))
+			lockStripe(index);
+	}
+
+	/**
+	 * @param routerSerialNumbers Serial numbers of the routers
+	 */
+	public void unlock(int[] routerSerialNumbers) {
+		int[] indexes = stripes(routerSerialNumbers);
+		for (int i = indexes.length - 1; i >= 0; i--)
+			stripes[indexes[i]].unlock();
+	}
+
+	/**
+	 * Locks all the routers. Used to take a consistent copy of the stores.
+	 */
+	public void lockAll() {
+		for (int i = 0; i < stripes.length; i++)
+			lockStripe(i);
+	}
+
+	public void unlockAll() {
+		for (int i = stripes.length - 1; i >= 0; i--)
+			stripes[i].unlock();
+	}
+}
+
+/**
+ * Map from int keys to values using open addressing [linear probing]. The keys
+ * are kept in int arrays next to the values, so no key is boxed and no entry
+ * object is made per mapping. The map is split into segments guarded by their
+ * own locks, so writers working on different keys rarely wait for each other,
+ * and lookups don't take a lock unless they race with a writer. Null values
+ * aren't allowed.
+ * 
+ * @param <V> Type of the values
+ * @see <a href= "https://en.wikipedia.org/wiki/Linear_probing"> Linear probing
+ *      </a>
+ */
+class IntMap<V> {
+	/**
+	 * Number of segments [power of two]
+	 */
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * Part of the map. A slot is free when its value is null. Readers don't block:
+	 * they probe optimistically and probe again under the read lock only if a
+	 * writer changed the segment meanwhile.
+	 */
+	private static final class Segment {
+		private final StampedLock lock = new StampedLock();
+		/**
+		 * Keys by slot
+		 */
+		private int[] keys = new int[8];
+		/**
+		 * Values by slot
+		 */
+		private Object[] values = new Object[8];
+		/**
+		 * Number of the used slots
+		 */
+		private int size;
+
+		/**
+		 * @param key The key
+		 * @return slot The slot holding the key, or the free slot where it goes
+		 */
+		private int slot(int key) {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (values[i] != null && keys[i] != key)
+				i = (i + 1) & mask;
+			return i;
+		}
+
+		/**
+		 * Probes the given arrays, which may be changed by a writer meanwhile
+		 * 
+		 * @return value The value. Null if not found or the arrays are inconsistent
+		 */
+		private static Object find(int[] keys, Object[] values, int key) {
+			if (keys.length != values.length)
+				return null;
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			for (int probes = 0; probes < keys.length; probes++) {
+				Object value = values[i];
+				if (value == null || keys[i] == key)
+					return value;
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		Object get(int key) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				Object value = find(keys, values, key);
+				if (lock.validate(stamp))
+					return value;
+			}
+			stamp = lock.readLock();
+			try {
+				return find(keys, values, key);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		Object put(int key, Object value) {
+			long stamp = lock.writeLock();
+			try {
+				int i = slot(key);
+				Object old = values[i];
+				if (old == null) {
+					if ((size + 1) * 4 > keys.length * 3) {
+						resize();
+						i = slot(key);
+					}
+					keys[i] = key;
+					size++;
+				}
+				values[i] = value;
+				return old;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Removes the key and shifts back the following keys of the probe sequence,
+		 * so no tombstones are left behind
+		 */
+		Object remove(int key) {
+			long stamp = lock.writeLock();
+			try {
+				int hole = slot(key);
+				Object old = values[hole];
+				if (old == null)
+					return null;
+				int mask = keys.length - 1;
+				for (int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+					int home = hash(keys[j]) & mask;
+					boolean reachable = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+					if (!reachable) {
+						keys[hole] = keys[j];
+						values[hole] = values[j];
+						hole = j;
+					}
+				}
+				values[hole] = null;
+				size--;
+				return old;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		int size() {
+			long stamp = lock.readLock();
+			try {
+				return size;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * Doubles the number of slots
+		 */
+		private void resize() {
+			int[] oldKeys = keys;
+			Object[] oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new Object[oldValues.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					int j = slot(oldKeys[i]);
+					keys[j] = oldKeys[i];
+					values[j] = oldValues[i];
+				}
+			}
+		}
+
+		int[] keys() {
+			long stamp = lock.readLock();
+			try {
+				int[] copy = new int[size];
+				int n = 0;
+				for (int i = 0; i < keys.length; i++)
+					if (values[i] != null)
+						copy[n++] = keys[i];
+				return copy;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		void copyValuesTo(ArrayList<Object> values) {
+			long stamp = lock.readLock();
+			try {
+				for (Object value : this.values)
+					if (value != null)
+						values.add(value);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		void copyTo(HashMap<Integer, Object> map) {
+			long stamp = lock.readLock();
+			try {
+				for (int i = 0; i < keys.length; i++)
+					if (values[i] != null)
+						map.put(keys[i], values[i]);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+	}
+
+	/**
+	 * The segments. The high bits of a key's hash choose its segment and the low
+	 * bits its slot.
+	 */
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * Constructor
+	 */
+	public IntMap() {
+		for (int i = 0; i < SEGMENTS; i++)
+			segments[i] = new Segment();
+	}
+
+	/**
+	 * @param map Initial mappings
+	 */
+	public IntMap(Map<Integer, ? extends V> map) {
+		this();
+		for (Map.Entry<Integer, ? extends V> e : map.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	/**
+	 * @param key The key
+	 * @return hash Spreads the bits of the key
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @param key The key
+	 * @return segment The segment of the key
+	 */
+	private Segment segment(int key) {
+		return segments[(key * 0x9E3779B9) >>> 28];
+	}
+
+	/**
+	 * @param key The key
+	 * @return value The value. Returns null if not found
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		return (V) segment(key).get(key);
+	}
+
+	/**
+	 * @param key   The key
+	 * @param value The value
+	 * @return old The replaced value. Returns null if the key was absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null)
+			throw new NullPointerException();
+		return (V) segment(key).put(key, value);
+	}
+
+	/**
+	 * @param key The key
+	 * @return value The removed value. Returns null if not found
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		return (V) segment(key).remove(key);
+	}
+
+	/**
+	 * @param key The key
+	 * @return boolean Returns true if the key exists
+	 */
+	public boolean containsKey(int key) {
+		return segment(key).get(key) != null;
+	}
+
+	/**
+	 * @return size Number of the mappings
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments)
+			size += segment.size();
+		return size;
+	}
+
+	/**
+	 * @return boolean Returns true if the map has no mappings
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return keys Copy of the keys
+	 */
+	public int[] keys() {
+		int[][] parts = new int[SEGMENTS][];
+		int length = 0;
+		for (int i = 0; i < SEGMENTS; i++)
+			length += (parts[i] = segments[i].keys()).length;
+		int[] keys = new int[length];
+		int offset = 0;
+		for (int[] part : parts) {
+			System.arraycopy(part, 0, keys, offset, part.length);
+			offset += part.length;
+		}
+		return keys;
+	}
+
+	/**
+	 * @return values Copy of the values
+	 */
+	@SuppressWarnings("unchecked")
+	public ArrayList<V> values() {
+		ArrayList<Object> values = new ArrayList<Object>();
+		for (Segment segment : segments)
+			segment.copyValuesTo(values);
+		return (ArrayList<V>) values;
+	}
+
+	/**
+	 * @return map Copy of the mappings. Used to save the map in the .ser files
+	 */
+	@SuppressWarnings("unchecked")
+	public HashMap<Integer, V> toMap() {
+		HashMap<Integer, Object> map = new HashMap<Integer, Object>(size() * 4 / 3 + 1);
+		for (Segment segment : segments)
+			segment.copyTo(map);
+		return (HashMap<Integer, V>) (HashMap<Integer, ?>) map;
+	}
+}
+
+/**
+ * Fleet-wide index of the routers. Gives each router a slot and keeps the
+ * slots of the routers by model in bit sets and by number of ports in a sorted
+ * map, so filtering the fleet combines a few bit sets instead of scanning all
+ * the routers. The free time is indexed by day: each day has the bit set of the
+ * routers booked during it. A router booked on a day lying inside the searched
+ * period isn't free, and one booked on neither its first nor its last day is
+ * free, so only the schedules of the routers booked on these two days are
+ * checked, in parallel for big fleets. The slots of removed routers are reused.
+ * 
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/util/BitSet.html">
+ *      BitSet </a>
+ */
+class FleetIndex extends SystemIformationHolder {
+	/**
+	 * Number of routers from which the free routers are searched in parallel
+	 */
+	private static final int PARALLEL_THRESHOLD = 4096;
+	/**
+	 * Length of a day in milliseconds
+	 */
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * Guards the index. Searches share the read lock.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * Slots of the routers [Key: Serial number, Value: Slot]
+	 */
+	private final HashMap<Integer, Integer> slots = new HashMap<Integer, Integer>();
+	/**
+	 * Serial numbers of the routers by their slots
+	 */
+	private int[] serialNumbers = new int[16];
+	/**
+	 * Models of the routers by their slots
+	 */
+	private char[] models = new char[16];
+	/**
+	 * Number of ports of the routers by their slots
+	 */
+	private int[] portsNumbers = new int[16];
+	/**
+	 * Used slots
+	 */
+	private final BitSet routers = new BitSet();
+	/**
+	 * Slots of the routers by model ['A' - 'Z']
+	 */
+	private final BitSet[] byModel = new BitSet[26];
+	/**
+	 * Slots of the routers by number of ports
+	 */
+	private final TreeMap<Integer, BitSet> byPorts = new TreeMap<Integer, BitSet>();
+	/**
+	 * Slots of the routers booked during each day [Key: Days since 1970-01-01
+	 * UTC, Value: Slots]. Bookings change it under the read lock: a day is added
+	 * and dropped atomically by the map, and its bit set is guarded by its own
+	 * monitor for the searches.
+	 */
+	private final ConcurrentHashMap<Integer, BitSet> busyDays = new ConcurrentHashMap<Integer, BitSet>();
+
+	/**
+	 * Constructor
+	 */
+	public FleetIndex() {
+		for (int i = 0; i < byModel.length; i++)
+			byModel[i] = new BitSet();
+	}
+
+	/**
+	 * Rebuilds the index from the routers and their schedules. Called once the
+	 * schedules are loaded or while all the routers are locked.
+	 * 
+	 * @param routers All the routers
+	 */
+	public void rebuild(Collection<Router> routers) {
+		lock.writeLock().lock();
+		try {
+			slots.clear();
+			this.routers.clear();
+			for (BitSet b : byModel)
+				b.clear();
+			byPorts.clear();
+			busyDays.clear();
+			for (Router r : routers) {
+				add(r);
+				RouterSchedule schedule = routerSchedule.get(r.getSerialNumber());
+				for (int i = 0; schedule != null && i < schedule.size(); i++)
+					occupy(r.getSerialNumber(), schedule.getStartDate(i), schedule.getDueDate(i));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param r The added router
+	 */
+	public void add(Router r) {
+		lock.writeLock().lock();
+		try {
+			if (slots.containsKey(r.getSerialNumber()))
+				return;
+			int slot = routers.nextClearBit(0);
+			if (slot == serialNumbers.length) {
+				serialNumbers = Arrays.copyOf(serialNumbers, slot * 2);
+				models = Arrays.copyOf(models, slot * 2);
+				portsNumbers = Arrays.copyOf(portsNumbers, slot * 2);
+			}
+			serialNumbers[slot] = r.getSerialNumber();
+			models[slot] = r.getModel();
+			portsNumbers[slot] = r.getPortsNumber();
+			slots.put(r.getSerialNumber(), slot);
+			routers.set(slot);
+			byModel[r.getModel() - 'A'].set(slot);
+			BitSet ports = byPorts.get(r.getPortsNumber());
+			if (ports == null) {
+				ports = new BitSet();
+				byPorts.put(r.getPortsNumber(), ports);
+			}
+			ports.set(slot);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the router and the days of its schedule. Called before its schedule
+	 * is removed.
+	 * 
+	 * @param routerSerialNumber Serial number of the removed router
+	 */
+	public void remove(int routerSerialNumber) {
+		lock.writeLock().lock();
+		try {
+			Integer slot = slots.remove(routerSerialNumber);
+			if (slot == null)
+				return;
+			routers.clear(slot);
+			byModel[models[slot] - 'A'].clear(slot);
+			BitSet ports = byPorts.get(portsNumbers[slot]);
+			ports.clear(slot);
+			if (ports.isEmpty())
+				byPorts.remove(portsNumbers[slot]);
+			RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+			for (int i = 0; schedule != null && i < schedule.size(); i++)
+				for (int day = day(schedule.getStartDate(i)), last = day(schedule.getDueDate(i)); day <= last; day++)
+					clear(day, slot);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param time Time in milliseconds
+	 * @return day Days since 1970-01-01 UTC
+	 */
+	private static int day(long time) {
+		return (int) Math.floorDiv(time, DAY);
+	}
+
+	/**
+	 * Marks the days of a booking as busy for the router
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          Start of the booked time in milliseconds
+	 * @param dueDate            End of the booked time in milliseconds
+	 */
+	public void occupy(int routerSerialNumber, long startDate, long dueDate) {
+		lock.readLock().lock();
+		try {
+			Integer slot = slots.get(routerSerialNumber);
+			if (slot == null)
+				return;
+			for (int day = day(startDate), last = day(dueDate); day <= last; day++) {
+				busyDays.compute(day, (k, busy) -> {
+					if (busy == null)
+						busy = new BitSet();
+					synchronized (busy) {
+						busy.set(slot);
+					}
+					return busy;
+				});
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates the days of a removed booking from the router's schedule. The
+	 * router must be locked by the caller.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          Start of the removed booking in milliseconds
+	 * @param dueDate            End of the removed booking in milliseconds
+	 */
+	public void release(int routerSerialNumber, long startDate, long dueDate) {
+		RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+		lock.readLock().lock();
+		try {
+			Integer slot = slots.get(routerSerialNumber);
+			if (slot == null)
+				return;
+			for (int day = day(startDate), last = day(dueDate); day <= last; day++)
+				if (schedule == null || schedule.isAvailable(day * DAY, (day + 1) * DAY - 1, 0))
+					clear(day, slot);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Clears the router from a day and drops the day once no router is booked
+	 * during it
+	 * 
+	 * @param day  Days since 1970-01-01 UTC
+	 * @param slot Slot of the router
+	 */
+	private void clear(int day, int slot) {
+		busyDays.computeIfPresent(day, (k, busy) -> {
+			synchronized (busy) {
+				busy.clear(slot);
+				return busy.isEmpty() ? null : busy;
+			}
+		});
+	}
+
+	/**
+	 * @return size Number of the indexed routers
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return slots.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Filters the fleet
+	 * 
+	 * @param model    Router's model ['A' - 'Z']. 0 matches any model
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
+	 * @return serialNumbers Serial numbers of the matching routers in ascending
+	 *         order
+	 */
+	public int[] find(char model, int minPorts, int maxPorts) {
+		lock.readLock().lock();
+		try {
+			int[] found = toSerialNumbers(matching(model, minPorts, maxPorts));
+			Arrays.sort(found);
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The read lock must be held by the caller
+	 * 
+	 * @param model    Router's model ['A' - 'Z']. 0 matches any model
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
+	 * @return slots Slots of the matching routers
+	 */
+	private BitSet matching(char model, int minPorts, int maxPorts) {
+		BitSet matching = new BitSet();
+		if (minPorts <= maxPorts)
+			for (BitSet ports : byPorts.subMap(minPorts, true, maxPorts, true).values())
+				matching.or(ports);
+		if (model != 0)
+			matching.and(byModel[model - 'A']);
+		return matching;
+	}
+
+	/**
+	 * The read lock must be held by the caller
+	 * 
+	 * @param slots Slots of the routers
+	 * @return serialNumbers Serial numbers of the routers
+	 */
+	private int[] toSerialNumbers(BitSet slots) {
+		int[] found = new int[slots.cardinality()];
+		int i = 0;
+		for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1))
+			found[i++] = serialNumbers[slot];
+		return found;
+	}
+
+	/**
+	 * Finds the routers that are free during the whole period
+	 * 
+	 * @param startDate Start date in milliseconds
+	 * @param dueDate   Due date in milliseconds
+	 * @param model     Router's model ['A' - 'Z']. 0 matches any model
+	 * @param minPorts  Minimum number of ports
+	 * @return serialNumbers Serial numbers of the free routers in ascending order
+	 */
+	public int[] findFree(long startDate, long dueDate, char model, int minPorts) {
+		int[] free, candidates;
+		lock.readLock().lock();
+		try {
+			BitSet matching = matching(model, minPorts, Integer.MAX_VALUE);
+			int first = day(startDate), last = day(dueDate);
+			// Booked on a day inside the period
+			for (int day = first + 1; day < last && !matching.isEmpty(); day++) {
+				BitSet busy = busyDays.get(day);
+				if (busy != null)
+					synchronized (busy) {
+						matching.andNot(busy);
+					}
+			}
+			// Booked on the first or the last day, maybe outside the period
+			BitSet edges = new BitSet();
+			for (int day : new int[] { first, last }) {
+				BitSet busy = busyDays.get(day);
+				if (busy != null)
+					synchronized (busy) {
+						edges.or(busy);
+					}
+			}
+			edges.and(matching);
+			matching.andNot(edges);
+			free = toSerialNumbers(matching);
+			candidates = toSerialNumbers(edges);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		IntStream serials = Arrays.stream(candidates);
+		if (candidates.length >= PARALLEL_THRESHOLD)
+			serials = serials.parallel();
+		int[] checked = serials.filter(serial -> isFree(serial, startDate, dueDate)).toArray();
+		int[] found = Arrays.copyOf(free, free.length + checked.length);
+		System.arraycopy(checked, 0, found, free.length, checked.length);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          Start date in milliseconds
+	 * @param dueDate            Due date in milliseconds
+	 * @return boolean Returns true if the router exists and is free
+	 */
+	private boolean isFree(int routerSerialNumber, long startDate, long dueDate) {
+		routerLocks.lock(routerSerialNumber);
+		try {
+			RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+			return schedule != null && schedule.isAvailable(startDate, dueDate, 0);
+		} finally {
+			routerLocks.unlock(routerSerialNumber);
+		}
+	}
+}
+
+/**
+ * Store that holds the reservations by their numbers
+ */
+interface ReservationStore {
+	/**
+	 * @param number Reservation's number
+	 * @return reservation The reservation. Returns null if not found
+	 */
+	abstract public Reservation get(int number);
+
+	/**
+	 * @param number Reservation's number
+	 * @return view Read-only view of the reservation. Returns null if not found
+	 */
+	abstract public ReservationView view(int number);
+
+	/**
+	 * Adds the reservation or replaces the saved one with the same number
+	 * 
+	 * @param r Reservation object
+	 */
+	abstract public void put(Reservation r);
+
+	/**
+	 * @param number Reservation's number
+	 * @return reservation The removed reservation. Returns null if not found
+	 */
+	abstract public Reservation remove(int number);
+
+	/**
+	 * @param number Reservation's number
+	 * @return boolean Returns true if the reservation exists
+	 */
+	abstract public boolean containsKey(int number);
+
+	/**
+	 * @return size Number of the reservations
+	 */
+	abstract public int size();
+
+	/**
+	 * @return reservations All the reservations
+	 */
+	abstract public Collection<Reservation> values();
+
+	/**
+	 * @return numbers Numbers of all the reservations in ascending order
+	 */
+	abstract public int[] numbers();
+
+	/**
+	 * @return reservation The reservations using the reservation.ser format [Key:
+	 *         Reservation number, Value: Reservation]
+	 */
+	abstract public HashMap<Integer, Reservation> toMap();
+}
+
+/**
+ * Implements ReservationStore. Keeps the reservations in an IntMap on the
+ * heap.
+ */
+class HashReservationStore implements ReservationStore {
+	/**
+	 * [Key: Reservation number, Value: Reservation]
+	 */
+	private final IntMap<Reservation> reservation;
+
+	/**
+	 * Constructor
+	 */
+	public HashReservationStore() {
+		this.reservation = new IntMap<Reservation>();
+	}
+
+	/**
+	 * @param reservation Loaded reservations [Key: Reservation number, Value:
+	 *                    Reservation]
+	 */
+	public HashReservationStore(HashMap<Integer, Reservation> reservation) {
+		this.reservation = new IntMap<Reservation>(reservation);
+	}
+
+	@Override
+	public Reservation get(int number) {
+		return reservation.get(number);
+	}
+
+	@Override
+	public ReservationView view(int number) {
+		return reservation.get(number);
+	}
+
+	@Override
+	public void put(Reservation r) {
+		reservation.put(r.getNumber(), r);
+	}
+
+	@Override
+	public Reservation remove(int number) {
+		return reservation.remove(number);
+	}
+
+	@Override
+	public boolean containsKey(int number) {
+		return reservation.containsKey(number);
+	}
+
+	@Override
+	public int size() {
+		return reservation.size();
+	}
+
+	@Override
+	public Collection<Reservation> values() {
+		return reservation.values();
+	}
+
+	@Override
+	public int[] numbers() {
+		int[] numbers = reservation.keys();
+		Arrays.sort(numbers);
+		return numbers;
+	}
+
+	@Override
+	public HashMap<Integer, Reservation> toMap() {
+		return reservation.toMap();
+	}
+}
+
+/**
+ * Implements ReservationStore. Keeps the reservations on the heap in parallel
+ * primitive arrays [columns] indexed by the reservation's number, instead of a
+ * Reservation object with three Date objects per reservation. Takes about a
+ * quarter of the memory and keeps scans over a column sequential. Reservation
+ * objects returned by get are copies, changing them requires calling put
+ * again. Enabled using -Drouterrental.storage=columnar
+ */
+class ColumnarReservationStore implements ReservationStore {
+	/**
+	 * Number of slots of a new store
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Immutable view of a reservation read from the columns
+	 */
+	static final class View implements ReservationView {
+		private final int number;
+		private final int routerSerialNumber;
+		private final char type;
+		private final int duration;
+		private final long reservationDate;
+		private final long startDate;
+		private final long dueDate;
+
+		View(int number, int routerSerialNumber, char type, int duration, long reservationDate, long startDate,
+				long dueDate) {
+			this.number = number;
+			this.routerSerialNumber = routerSerialNumber;
+			this.type = type;
+			this.duration = duration;
+			this.reservationDate = reservationDate;
+			this.startDate = startDate;
+			this.dueDate = dueDate;
+		}
+
+		@Override
+		public int getNumber() {
+			return number;
+		}
+
+		@Override
+		public int getRouterSerialNumber() {
+			return routerSerialNumber;
+		}
+
+		@Override
+		public char getType() {
+			return type;
+		}
+
+		@Override
+		public int getDuration() {
+			return duration;
+		}
+
+		@Override
+		public Date getReservationDate() {
+			return new Date(reservationDate);
+		}
+
+		@Override
+		public Date getStartDate() {
+			return new Date(startDate);
+		}
+
+		@Override
+		public Date getDueDate() {
+			return new Date(dueDate);
+		}
+
+		@Override
+		public long getReservationTime() {
+			return reservationDate;
+		}
+
+		@Override
+		public long getStartTime() {
+			return startDate;
+		}
+
+		@Override
+		public long getDueTime() {
+			return dueDate;
+		}
+	}
+
+	/**
+	 * Guards the columns. Lookups share the read lock.
+	 */
+	private final StampedLock lock = new StampedLock();
+	/**
+	 * Reservation dates in milliseconds
+	 */
+	private long[] reservationDates = new long[INITIAL_CAPACITY];
+	/**
+	 * Start dates in milliseconds
+	 */
+	private long[] startDates = new long[INITIAL_CAPACITY];
+	/**
+	 * Due dates in milliseconds
+	 */
+	private long[] dueDates = new long[INITIAL_CAPACITY];
+	/**
+	 * Durations
+	 */
+	private int[] durations = new int[INITIAL_CAPACITY];
+	/**
+	 * Serial numbers of the reserved routers
+	 */
+	private int[] routers = new int[INITIAL_CAPACITY];
+	/**
+	 * Types [d - w - m]. 0 marks a free slot
+	 */
+	private byte[] types = new byte[INITIAL_CAPACITY];
+	/**
+	 * Number of the saved reservations
+	 */
+	private int size;
+
+	/**
+	 * Constructor
+	 */
+	public ColumnarReservationStore() {
+	}
+
+	/**
+	 * @param reservation Loaded reservations [Key: Reservation number, Value:
+	 *                    Reservation]
+	 */
+	public ColumnarReservationStore(Map<Integer, Reservation> reservation) {
+		for (Reservation r : reservation.values())
+			put(r);
+	}
+
+	/**
+	 * @param number Reservation's number
+	 * @return boolean Returns true if the slot holds a reservation. The lock must
+	 *         be held by the caller
+	 */
+	private boolean isUsed(int number) {
+		return number > 0 && number < types.length && types[number] != 0;
+	}
+
+	/**
+	 * Makes a reservation object from the columns. The lock must be held by the
+	 * caller
+	 */
+	private Reservation read(int number) {
+		return new Reservation(number, routers[number], (char) types[number], reservationDates[number],
+				startDates[number], durations[number]);
+	}
+
+	/**
+	 * Grows the columns to hold the given number
+	 */
+	private void ensureCapacity(int number) {
+		if (number < types.length)
+			return;
+		int capacity = Math.max(types.length * 2, number + 1);
+		reservationDates = Arrays.copyOf(reservationDates, capacity);
+		startDates = Arrays.copyOf(startDates, capacity);
+		dueDates = Arrays.copyOf(dueDates, capacity);
+		durations = Arrays.copyOf(durations, capacity);
+		routers = Arrays.copyOf(routers, capacity);
+		types = Arrays.copyOf(types, capacity);
+	}
+
+	@Override
+	public Reservation get(int number) {
+		long stamp = lock.readLock();
+		try {
+			return isUsed(number) ? read(number) : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public ReservationView view(int number) {
+		long stamp = lock.readLock();
+		try {
+			if (!isUsed(number))
+				return null;
+			return new View(number, routers[number], (char) types[number], durations[number],
+					reservationDates[number], startDates[number], dueDates[number]);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void put(Reservation r) {
+		long stamp = lock.writeLock();
+		try {
+			int number = r.getNumber();
+			ensureCapacity(number);
+			if (types[number] == 0)
+				size++;
+			reservationDates[number] = r.getReservationTime();
+			startDates[number] = r.getStartTime();
+			dueDates[number] = r.getDueTime();
+			durations[number] = r.getDuration();
+			routers[number] = r.getRouterSerialNumber();
+			types[number] = (byte) r.getType();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public Reservation remove(int number) {
+		long stamp = lock.writeLock();
+		try {
+			if (!isUsed(number))
+				return null;
+			Reservation r = read(number);
+			types[number] = 0;
+			size--;
+			return r;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public boolean containsKey(int number) {
+		long stamp = lock.readLock();
+		try {
+			return isUsed(number);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public Collection<Reservation> values() {
+		long stamp = lock.readLock();
+		try {
+			ArrayList<Reservation> reservations = new ArrayList<Reservation>(size);
+			for (int number = 1; number < types.length; number++)
+				if (types[number] != 0)
+					reservations.add(read(number));
+			return reservations;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public int[] numbers() {
+		long stamp = lock.readLock();
+		try {
+			int[] numbers = new int[size];
+			int next = 0;
+			for (int number = 1; number < types.length; number++)
+				if (types[number] != 0)
+					numbers[next++] = number;
+			return numbers;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public HashMap<Integer, Reservation> toMap() {
+		HashMap<Integer, Reservation> reservation = new HashMap<Integer, Reservation>();
+		for (Reservation r : values())
+			reservation.put(r.getNumber(), r);
+		return reservation;
+	}
+}
+
+/**
+ * Implements ReservationStore. Keeps the reservations in fixed-size slots of a
+ * memory-mapped file where the slot of a reservation is given by its number.
+ * Reservations are read on demand, so nothing has to be loaded on start and
+ * the heap doesn't grow with the number of reservations. Reservation objects
+ * returned by the store are copies, changing them requires calling put again.
+ * 
+ * Slot layout: [reservation date, start date, duration, type, used flag,
+ * router serial number]
+ * 
+ * @see <a href=
+ *      "https://docs.oracle.com/javase/8/docs/api/java/nio/MappedByteBuffer.html">
+ *      MappedByteBuffer </a>
+ */
+class MappedReservationStore implements ReservationStore {
+	/**
+	 * First 4 bytes of the file ["RRMS"]
+	 */
+	private static final int MAGIC = 0x52524D53;
+	/**
+	 * Header: [magic number, reservation counter, number of reservations, slot
+	 * size]. The slot size is 0 in the files of the former versions.
+	 */
+	private static final int HEADER_SIZE = 16;
+	/**
+	 * Size of a single reservation in bytes
+	 */
+	private static final int SLOT_SIZE = 32;
+	/**
+	 * Size of a slot of the former versions, which didn't keep the router
+	 */
+	private static final int LEGACY_SLOT_SIZE = 24;
+	/**
+	 * Number of slots of a new file
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+	/**
+	 * Channel of the file
+	 */
+	private final FileChannel channel;
+	/**
+	 * The mapped file
+	 */
+	private MappedByteBuffer buffer;
+	/**
+	 * Number of slots in the mapped file
+	 */
+	private int capacity;
+	/**
+	 * Boolean to know whether the file was created by this store
+	 */
+	private final boolean isCreated;
+
+	/**
+	 * Opens the store file or creates it if it doesn't exist
+	 * 
+	 * @param path The path of the file
+	 * @throws IOException
+	 */
+	public MappedReservationStore(String path) throws IOException {
+		upgrade(path);
+		isCreated = new File(path).length() == 0;
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		if (isCreated) {
+			map(INITIAL_CAPACITY);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(12, SLOT_SIZE);
+		} else {
+			map((int) ((channel.size() - HEADER_SIZE) / SLOT_SIZE));
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(12) != SLOT_SIZE)
+				throw new IOException(path + " isn't a valid reservation store");
+		}
+	}
+
+	/**
+	 * Moves the reservations of a file written by the former versions to a file
+	 * using the current slots. The new file is written next to the old one and
+	 * replaces it once complete. The routers of the moved reservations are
+	 * restored from the former routerSchedule file when the stores are loaded.
+	 * 
+	 * @param path The path of the file
+	 * @throws IOException
+	 */
+	private static void upgrade(String path) throws IOException {
+		Path source = Paths.get(path), upgraded = Paths.get(path + ".tmp");
+		if (new File(path).length() < HEADER_SIZE)
+			return;
+		try (FileChannel legacy = FileChannel.open(source, StandardOpenOption.READ)) {
+			MappedByteBuffer old = legacy.map(FileChannel.MapMode.READ_ONLY, 0, legacy.size());
+			if (old.getInt(0) != MAGIC || old.getInt(12) != 0)
+				return;
+			Files.deleteIfExists(upgraded);
+			MappedReservationStore store = new MappedReservationStore(upgraded.toString());
+			int slots = (int) ((legacy.size() - HEADER_SIZE) / LEGACY_SLOT_SIZE);
+			for (int number = 1; number < slots; number++) {
+				int offset = HEADER_SIZE + number * LEGACY_SLOT_SIZE;
+				if (old.get(offset + 22) == 1)
+					store.put(new Reservation(number, old.getChar(offset + 20), old.getLong(offset),
+							old.getLong(offset + 8), old.getInt(offset + 16)));
+			}
+			store.close(old.getInt(4));
+		}
+		Files.move(upgraded, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Maps the file using the given number of slots. The file grows if needed.
+	 * 
+	 * @param slots Number of slots
+	 * @throws IOException
+	 */
+	private void map(int slots) throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+		capacity = slots;
+	}
+
+	/**
+	 * @param number Reservation's number
+	 * @return offset The position of the reservation's slot
+	 */
+	private int offset(int number) {
+		return HEADER_SIZE + number * SLOT_SIZE;
+	}
+
+	@Override
+	public synchronized boolean containsKey(int number) {
+		return number > 0 && number < capacity && buffer.get(offset(number) + 22) == 1;
+	}
+
+	@Override
+	public synchronized Reservation get(int number) {
+		if (!containsKey(number))
+			return null;
+		int offset = offset(number);
+		return new Reservation(number, buffer.getInt(offset + 24), buffer.getChar(offset + 20),
+				buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getInt(offset + 16));
+	}
+
+	@Override
+	public ReservationView view(int number) {
+		return get(number);
+	}
+
+	@Override
+	public synchronized void put(Reservation r) {
+		if (r.getNumber() >= capacity) {
+			try {
+				map(Math.max(capacity * 2, r.getNumber() + 1));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (!containsKey(r.getNumber()))
+			buffer.putInt(8, size() + 1);
+		if (r.getNumber() > getCounter())
+			buffer.putInt(4, r.getNumber());
+		int offset = offset(r.getNumber());
+		buffer.putLong(offset, r.getReservationTime());
+		buffer.putLong(offset + 8, r.getStartTime());
+		buffer.putInt(offset + 16, r.getDuration());
+		buffer.putChar(offset + 20, r.getType());
+		buffer.put(offset + 22, (byte) 1);
+		buffer.putInt(offset + 24, r.getRouterSerialNumber());
+	}
+
+	@Override
+	public synchronized Reservation remove(int number) {
+		Reservation r = get(number);
+		if (r != null) {
+			buffer.put(offset(number) + 22, (byte) 0);
+			buffer.putInt(8, size() - 1);
+		}
+		return r;
+	}
+
+	@Override
+	public synchronized int size() {
+		return buffer.getInt(8);
+	}
+
+	@Override
+	public synchronized Collection<Reservation> values() {
+		ArrayList<Reservation> reservations = new ArrayList<Reservation>(size());
+		for (int number = 1; number < capacity; number++) {
+			if (containsKey(number))
+				reservations.add(get(number));
+		}
+		return reservations;
+	}
+
+	@Override
+	public synchronized int[] numbers() {
+		int[] numbers = new int[size()];
+		int next = 0;
+		for (int number = 1; number < capacity && next < numbers.length; number++) {
+			if (containsKey(number))
+				numbers[next++] = number;
+		}
+		return next == numbers.length ? numbers : Arrays.copyOf(numbers, next);
+	}
+
+	@Override
+	public synchronized HashMap<Integer, Reservation> toMap() {
+		HashMap<Integer, Reservation> reservation = new HashMap<Integer, Reservation>();
+		for (Reservation r : values())
+			reservation.put(r.getNumber(), r);
+		return reservation;
+	}
+
+	/**
+	 * @return isCreated Returns true if the file was created by this store
+	 */
+	public boolean isCreated() {
+		return isCreated;
+	}
+
+	/**
+	 * @return counter The reservation counter saved in the file. It's never behind
+	 *         the number of a saved reservation.
+	 */
+	public synchronized int getCounter() {
+		return buffer.getInt(4);
+	}
+
+	/**
+	 * Saves the reservation counter and forces the changes to the disk
+	 * 
+	 * @param counter The reservation counter
+	 */
+	public synchronized void force(int counter) {
+		buffer.putInt(4, counter);
+		buffer.force();
+	}
+
+	/**
+	 * Forces the changes to the disk and closes the file
+	 * 
+	 * @param counter The reservation counter
+	 * @throws IOException
+	 */
+	public synchronized void close(int counter) throws IOException {
+		force(counter);
+		channel.close();
+	}
+}
+
+/**
+ * Class that has all the information needed by the system. All inheriting
+ * classes applies Single-Responsibility, Open-Closed and Liskov Substitution
+ * principle.
+ * 
+ * @see <a href="https://www.tutorialspoint.com/java/java_hashmap_class.htm">
+ *      Java - The HashMap Class </a>
+ */
+abstract class SystemIformationHolder {
+	/**
+	 * Saves all Routers [Key: Serial number, Value: Router]
+	 */
+	protected static IntMap<Router> router;
+	/**
+	 * Saves all Reservations [Key: Reservation number, Value: Reservation]
+	 */
+	protected static ReservationStore reservation;
+	/**
+	 * Keeps track of the router's reservations [Key: Router serial number, Value:
+	 * Router's schedule sorted by start date]. Built from the reservations on
+	 * start, it's never saved.
+	 */
+	protected static IntMap<RouterSchedule> routerSchedule;
+	/**
+	 * Keeps track of all received feedbacks. May be loaded on the first access.
+	 */
+	protected static StoreLoader<ArrayList<String>> feedback;
+	/**
+	 * Records every change made to the stores
+	 */
+	protected static Journal journal;
+	/**
+	 * Locks that must be held while reading or changing a router's schedule
+	 */
+	protected static final RouterLocks routerLocks = new RouterLocks(64);
+	/**
+	 * Index of the routers used to find the free ones
+	 */
+	protected static final FleetIndex fleet = new FleetIndex();
+	/**
+	 * Running totals of the revenue and the booked time
+	 */
+	protected static final RentalAnalytics analytics = new RentalAnalytics();
+}
+
+/**
+ * Collects the text of a listing in a reusable StringBuilder and writes it to
+ * the console in large chunks. Every write to System.out is synchronized and
+ * flushes the console, so writing each line on its own stalls large listings.
+ */
+class ConsoleBuffer {
+	/**
+	 * Number of characters collected before writing them
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+	/**
+	 * The text not written yet
+	 */
+	private final StringBuilder buffer = new StringBuilder(CHUNK_SIZE);
+
+	/**
+	 * @return buffer The text not written yet. Append the next item to it
+	 */
+	public StringBuilder text() {
+		return buffer;
+	}
+
+	/**
+	 * Called after appending an item. Writes the text once a chunk is collected.
+	 */
+	public void endItem() {
+		if (buffer.length() >= CHUNK_SIZE)
+			flush();
+	}
+
+	/**
+	 * Writes the remaining text
+	 */
+	public void flush() {
+		if (buffer.length() > 0) {
+			System.out.print(buffer);
+			buffer.setLength(0);
+		}
+		System.out.flush();
+	}
+}
+
+/**
+ * System printer Class that prints any information needed by the system users
+ * [Admin/Customer]. All the functions apply Least Privilege principle.
+ */
+class SystemInformationPrinter extends SystemIformationHolder {
+	private HashMap<String, Printer> printer;
+	/**
+	 * Collects the listings before writing them to the console
+	 */
+	private final ConsoleBuffer console = new ConsoleBuffer();
+	/**
+	 * The only instance of the class. Shared by all the sessions.
+	 */
+	private static SystemInformationPrinter systemInformationPrinter;
+
+	/**
+	 * Gets the only instance of the class
+	 * 
+	 * @return systemInformationPrinter The only instance of the class
+	 */
+	public static synchronized SystemInformationPrinter getInstance() {
+		if (systemInformationPrinter == null) {
+			systemInformationPrinter = new SystemInformationPrinter();
+			systemInformationPrinter.initialize();
+		}
+		return systemInformationPrinter;
+	}
+
+	/**
+	 * Initialize the printer
+	 */
+	private void initialize() {
+		printer = new HashMap<String, Printer>();
+		printer.put("Router", new RouterPrinter());
+		printer.put("Reservation", new ReservationPrinter());
+		printer.put("Invoice", new InvoicePrinter());
+	}
+
+	/**
+	 * Print all available routers in the system
+	 */
+	public void printSystemRouters() {
+		printSystemRouters(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints a page of the routers in the system
+	 * 
+	 * @param offset Number of routers to skip
+	 * @param limit  Maximum number of routers to print
+	 * @return remaining Number of routers after the page
+	 */
+	public int printSystemRouters(int offset, int limit) {
+		return printRouters((char) 0, 0, Integer.MAX_VALUE, offset, limit);
+	}
+
+	/**
+	 * Prints the routers of a model
+	 * 
+	 * @param model Router's model ['A' - 'Z']
+	 */
+	public void printRoutersByModel(char model) {
+		printRouters(model, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints the routers having a number of ports in the given range
+	 * 
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
+	 */
+	public void printRoutersByPorts(int minPorts, int maxPorts) {
+		printRouters((char) 0, minPorts, maxPorts);
+	}
+
+	/**
+	 * Prints the routers of a model having a number of ports in the given range
+	 * 
+	 * @param model    Router's model ['A' - 'Z']. 0 matches any model
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
+	 */
+	public void printRouters(char model, int minPorts, int maxPorts) {
+		printRouters(model, minPorts, maxPorts, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints a page of the routers of a model having a number of ports in the
+	 * given range. Only the routers of the page are looked up.
+	 * 
+	 * @param model    Router's model ['A' - 'Z']. 0 matches any model
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
+	 * @param offset   Number of routers to skip
+	 * @param limit    Maximum number of routers to print
+	 * @return remaining Number of routers after the page
+	 */
+	public int printRouters(char model, int minPorts, int maxPorts, int offset, int limit) {
+		return printRouters(findRouters(model, minPorts, maxPorts), offset, limit);
+	}
+
+	/**
+	 * Finds the routers once for a listing printed page by page, so the pages
+	 * don't search the whole fleet again
+	 * 
+	 * @param model    Router's model ['A' - 'Z']. 0 matches any model
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
+	 * @return serialNumbers Serial numbers of the matching routers in ascending
+	 *         order
+	 */
+	public int[] findRouters(char model, int minPorts, int maxPorts) {
+		return fleet.find(model, minPorts, maxPorts);
+	}
+
+	/**
+	 * Prints a page of the given routers. Only the routers of the page are looked
+	 * up, the removed ones are skipped.
+	 * 
+	 * @param serialNumbers Serial numbers of the routers
+	 * @param offset        Number of routers to skip
+	 * @param limit         Maximum number of routers to print
+	 * @return remaining Number of routers after the page
+	 */
+	public int printRouters(int[] serialNumbers, int offset, int limit) {
+		if (serialNumbers.length == 0)
+			return printRouters(new ArrayList<Router>(), 0, limit);
+		ArrayList<Router> routers = new ArrayList<Router>();
+		for (int i = Math.min(offset, serialNumbers.length); i < Math.min(end(offset, limit),
+				serialNumbers.length); i++) {
+			Router r = router.get(serialNumbers[i]);
+			if (r != null)
+				routers.add(r);
+		}
+		printRouters(routers);
+		return Math.max(0, serialNumbers.length - end(offset, limit));
+	}
+
+	/**
+	 * Prints the given routers
+	 * 
+	 * @param routers The routers
+	 */
+	public void printRouters(Collection<Router> routers) {
+		printRouters(routers, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints a page of the given routers
+	 * 
+	 * @param routers The routers
+	 * @param offset  Number of routers to skip
+	 * @param limit   Maximum number of routers to print
+	 * @return remaining Number of routers after the page
+	 */
+	public synchronized int printRouters(Collection<Router> routers, int offset, int limit) {
+		if (routers.isEmpty())
+			System.out.print("No routers were found\n");
+		int index = 0, end = end(offset, limit);
+		for (Router r : routers) {
+			if (index >= end)
+				break;
+			if (index++ < offset)
+				continue;
+			printer.get("Router").appendAllDataMemberInformation(r, console.text());
+			console.text().append('\n');
+			console.endItem();
+		}
+		console.flush();
+		return Math.max(0, routers.size() - end);
+	}
+
+	/**
+	 * Prints the schedule of given router [start/end date]
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 */
+	public void printRouterSchedule(final Integer routerSerialNumber) {
+		printRouterSchedule(routerSerialNumber, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints a page of the schedule of given router [start/end date]. The dates
+	 * are copied under the router's lock and printed after releasing it.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param offset             Number of reservations to skip
+	 * @param limit              Maximum number of reservations to print
+	 * @return remaining Number of reservations after the page
+	 */
+	public synchronized int printRouterSchedule(final Integer routerSerialNumber, int offset, int limit) {
+		if (!routerSchedule.containsKey(routerSerialNumber)) {
+			System.out.print("Router doesn't exist\n");
+			return 0;
+		}
+		long[] startDates, dueDates;
+		int size;
+		routerLocks.lock(routerSerialNumber);
+		try {
+			RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+			size = schedule == null ? 0 : schedule.size();
+			int first = Math.min(offset, size), last = Math.min(end(offset, limit), size);
+			startDates = new long[last - first];
+			dueDates = new long[last - first];
+			for (int i = first; i < last; i++) {
+				startDates[i - first] = schedule.getStartDate(i);
+				dueDates[i - first] = schedule.getDueDate(i);
+			}
+		} finally {
+			routerLocks.unlock(routerSerialNumber);
+		}
+		for (int i = 0; i < startDates.length; i++) {
+			console.text().append("Start date: ").append(DateFormatter.format(startDates[i])).append("\nDue date: ")
+					.append(DateFormatter.format(dueDates[i])).append("\n\n");
+			console.endItem();
+		}
+		console.flush();
+		return Math.max(0, size - end(offset, limit));
+	}
+
+	/**
+	 * Prints the reservation information
+	 * 
+	 * @param reservationNumber Reservation number
+	 */
+	public void printReservation(final Integer reservationNumber) {
+		if (!reservation.containsKey(reservationNumber)) {
+			System.out.print("Reservation doesn't exist\n");
+			return;
+		}
+		printer.get("Reservation").printAllDataMemberInformation(reservation.view(reservationNumber));
+	}
+
+	/**
+	 * Prints all information about each invoice
+	 * 
+	 * @param invoice Array-list that holds all the invoices the customer has
+	 */
+	public void printCustomerInvoices(final ArrayList<Invoice> invoice) {
+		printCustomerInvoices(invoice, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints a page of the invoices
+	 * 
+	 * @param invoice Array-list that holds all the invoices the customer has
+	 * @param offset  Number of invoices to skip
+	 * @param limit   Maximum number of invoices to print
+	 * @return remaining Number of invoices after the page
+	 */
+	public synchronized int printCustomerInvoices(final ArrayList<Invoice> invoice, int offset, int limit) {
+		if (invoice == null || invoice.isEmpty()) {
+			System.out.print("No invoices were found\n");
+			return 0;
+		}
+
+		int end = Math.min(end(offset, limit), invoice.size());
+		for (int i = offset; i < end; i++) {
+			console.text().append(i + 1).append("] ");
+			printer.get("Invoice").appendAllDataMemberInformation(invoice.get(i), console.text());
+			console.text().append('\n');
+			console.endItem();
+		}
+		console.flush();
+		return Math.max(0, invoice.size() - end(offset, limit));
+	}
+
+	/**
+	 * Prints all information about specific router
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 */
+	public void printRouter(final Integer routerSerialNumber) {
+		if (!router.containsKey(routerSerialNumber)) {
+			System.out.print("Router doesn't exist\n");
+			return;
+		}
+		printer.get("Router").printAllDataMemberInformation(router.get(routerSerialNumber));
+	}
+
+	/**
+	 * Prints all feedbacks
+	 */
+	public void printAllFeedbacks() {
+		printAllFeedbacks(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints a page of the feedbacks. The page is copied while holding the list
+	 * and printed after releasing it.
+	 * 
+	 * @param offset Number of feedbacks to skip
+	 * @param limit  Maximum number of feedbacks to print
+	 * @return remaining Number of feedbacks after the page
+	 */
+	public synchronized int printAllFeedbacks(int offset, int limit) {
+		ArrayList<String> feedback = SystemInformationPrinter.feedback.get();
+		ArrayList<String> page;
+		int size;
+		synchronized (feedback) {
+			size = feedback.size();
+			page = new ArrayList<String>(feedback.subList(Math.min(offset, size), Math.min(end(offset, limit), size)));
+		}
+		if (size == 0) {
+			System.out.print("No feedbacks were found\n");
+		}
+		for (int i = 0; i < page.size(); i++) {
+			console.text().append(offset + i + 1).append("] ").append(page.get(i)).append("\n\n");
+			console.endItem();
+		}
+		console.flush();
+		return Math.max(0, size - end(offset, limit));
+	}
+
+	/**
+	 * Prints a page of statistics [label key: value unit]
+	 * 
+	 * @param statistics The statistics
+	 * @param label      Printed before each key
+	 * @param unit       Printed after each value
+	 * @param offset     Number of statistics to skip
+	 * @param limit      Maximum number of statistics to print
+	 * @return remaining Number of statistics after the page
+	 */
+	public synchronized int printStatistics(Map<?, Double> statistics, String label, String unit, int offset,
+			int limit) {
+		if (statistics.isEmpty())
+			System.out.print("No data was found\n");
+		int index = 0, end = end(offset, limit);
+		for (Map.Entry<?, Double> e : statistics.entrySet()) {
+			if (index >= end)
+				break;
+			if (index++ < offset)
+				continue;
+			console.text().append(label).append(e.getKey()).append(": ").append(String.format("%.2f", e.getValue()))
+					.append(unit).append('\n');
+			console.endItem();
+		}
+		console.flush();
+		return Math.max(0, statistics.size() - end);
+	}
+
+	/**
+	 * Prints a page of text lines
+	 * 
+	 * @param lines  The lines
+	 * @param offset Number of lines to skip
+	 * @param limit  Maximum number of lines to print
+	 * @return remaining Number of lines after the page
+	 */
+	public synchronized int printLines(List<String> lines, int offset, int limit) {
+		int end = Math.min(lines.size(), end(offset, limit));
+		for (int i = offset; i < end; i++) {
+			console.text().append(lines.get(i)).append('\n');
+			console.endItem();
+		}
+		console.flush();
+		return Math.max(0, lines.size() - end);
+	}
+
+	/**
+	 * @param offset Number of items to skip
+	 * @param limit  Maximum number of items to print
+	 * @return end The index after the last item of the page
+	 */
+	private static int end(int offset, int limit) {
+		return (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+	}
+}
+
+/**
+ * Receives the records of an export one field at a time and writes them to a
+ * file as soon as they are complete. Implemented by each file format.
+ */
+interface RecordSink extends Closeable {
+	/**
+	 * Starts the export. Called once before the first record.
+	 * 
+	 * @param columns Names of the fields of each record
+	 * @throws IOException
+	 */
+	abstract public void begin(String... columns) throws IOException;
+
+	/**
+	 * @param value The next field of the record
+	 * @throws IOException
+	 */
+	abstract public void field(long value) throws IOException;
+
+	/**
+	 * @param value The next field of the record
+	 * @throws IOException
+	 */
+	abstract public void field(float value) throws IOException;
+
+	/**
+	 * @param value The next field of the record
+	 * @throws IOException
+	 */
+	abstract public void field(String value) throws IOException;
+
+	/**
+	 * Ends the record. Its fields must match the columns in number and order.
+	 * 
+	 * @throws IOException
+	 */
+	abstract public void endRecord() throws IOException;
+}
+
+/**
+ * Writes the records as comma separated values with a header line. Fields
+ * containing a comma, a quote or a line break are quoted.
+ * 
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc4180"> RFC 4180: Common
+ *      Format and MIME Type for CSV Files </a>
+ */
+class CsvRecordSink implements RecordSink {
+	/**
+	 * The file being written
+	 */
+	private final Writer out;
+	/**
+	 * Used to know whether the next field is the first of its record
+	 */
+	private boolean isFirstField = true;
+
+	/**
+	 * @param out The file being written
+	 */
+	public CsvRecordSink(Writer out) {
+		this.out = out;
+	}
+
+	@Override
+	public void begin(String... columns) throws IOException {
+		for (String column : columns)
+			field(column);
+		endRecord();
+	}
+
+	/**
+	 * Separates the field from the previous one
+	 * 
+	 * @throws IOException
+	 */
+	private void separate() throws IOException {
+		if (!isFirstField)
+			out.write(',');
+		isFirstField = false;
+	}
+
+	@Override
+	public void field(long value) throws IOException {
+		separate();
+		out.write(Long.toString(value));
+	}
+
+	@Override
+	public void field(float value) throws IOException {
+		separate();
+		out.write(Float.toString(value));
+	}
+
+	@Override
+	public void field(String value) throws IOException {
+		separate();
+		boolean isQuoted = false;
+		for (int i = 0; i < value.length() && !isQuoted; i++) {
+			char c = value.charAt(i);
+			isQuoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!isQuoted) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		out.write(value.replace("\"", "\"\""));
+		out.write('"');
+	}
+
+	@Override
+	public void endRecord() throws IOException {
+		out.write("\r\n");
+		isFirstField = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
+
+/**
+ * Writes each record as a JSON object on its own line [NDJSON]. Numbers are
+ * written as JSON numbers and everything else as JSON strings.
+ * 
+ * @see <a href="https://github.com/ndjson/ndjson-spec"> NDJSON specification
+ *      </a>
+ */
+class JsonRecordSink implements RecordSink {
+	/**
+	 * The file being written
+	 */
+	private final Writer out;
+	/**
+	 * Names of the fields, already quoted and followed by a colon
+	 */
+	private String[] names;
+	/**
+	 * Index of the next field of the record
+	 */
+	private int next = 0;
+
+	/**
+	 * @param out The file being written
+	 */
+	public JsonRecordSink(Writer out) {
+		this.out = out;
+	}
+
+	@Override
+	public void begin(String... columns) throws IOException {
+		names = new String[columns.length];
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < columns.length; i++) {
+			name.setLength(0);
+			quote(columns[i], name);
+			names[i] = name.append(':').toString();
+		}
+	}
+
+	/**
+	 * Writes the name of the next field
+	 * 
+	 * @throws IOException
+	 */
+	private void name() throws IOException {
+		out.write(next == 0 ? '{' : ',');
+		out.write(names[next++]);
+	}
+
+	@Override
+	public void field(long value) throws IOException {
+		name();
+		out.write(Long.toString(value));
+	}
+
+	@Override
+	public void field(float value) throws IOException {
+		name();
+		out.write(Float.toString(value));
+	}
+
+	@Override
+	public void field(String value) throws IOException {
+		name();
+		StringBuilder quoted = new StringBuilder(value.length() + 2);
+		quote(value, quoted);
+		out.write(quoted.toString());
+	}
+
+	/**
+	 * Appends the value as a JSON string
+	 * 
+	 * @param value The value
+	 * @param out   The text to append to
+	 */
+	private static void quote(String value, StringBuilder out) {
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				out.append('\\').append(c);
+			else if (c == '\n')
+				out.append("\\n");
+			else if (c == '\r')
+				out.append("\\r");
+			else if (c == '\t')
+				out.append("\\t");
+			else if (c < 0x20)
+				out.append(String.format("\\u%04x", (int) c));
+			else
+				out.append(c);
+		}
+		out.append('"');
+	}
+
+	@Override
+	public void endRecord() throws IOException {
+		out.write(next == 0 ? "{}\n" : "}\n");
+		next = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
+
+/**
+ * Revenue and utilization of the fleet kept as running totals per router and
+ * month, so the dashboards are answered from the totals instead of scanning
+ * every reservation and invoice. The totals are built once in parallel when the
+ * stores are loaded and updated by every change after that. Revenue is counted
+ * in the month the reservation starts and booked time is split across the
+ * months the reservation spans.
+ */
+class RentalAnalytics extends SystemIformationHolder {
+	/**
+	 * Time zone the months are counted in
+	 */
+	private static final ZoneId ZONE = ZoneId.systemDefault();
+	/**
+	 * Revenue in cents [Key: Router serial number and month, Value: Revenue]
+	 */
+	private final ConcurrentHashMap<Long, LongAdder> routerRevenue = new ConcurrentHashMap<Long, LongAdder>();
+	/**
+	 * Revenue in cents [Key: Router's model and month, Value: Revenue]
+	 */
+	private final ConcurrentHashMap<Long, LongAdder> modelRevenue = new ConcurrentHashMap<Long, LongAdder>();
+	/**
+	 * Revenue in cents [Key: Month, Value: Revenue]. Kept apart from the models
+	 * since the invoices of removed routers have no model.
+	 */
+	private final ConcurrentHashMap<Integer, LongAdder> monthRevenue = new ConcurrentHashMap<Integer, LongAdder>();
+	/**
+	 * Revenue in cents [Key: Customer's ID, Value: Revenue]
+	 */
+	private final ConcurrentHashMap<Integer, LongAdder> customerRevenue = new ConcurrentHashMap<Integer, LongAdder>();
+	/**
+	 * Booked time in milliseconds [Key: Router serial number and month, Value:
+	 * Booked time]
+	 */
+	private final ConcurrentHashMap<Long, LongAdder> bookedTime = new ConcurrentHashMap<Long, LongAdder>();
+
+	/**
+	 * @param month The month
+	 * @return index Number of months since year 0
+	 */
+	private static int index(YearMonth month) {
+		return month.getYear() * 12 + month.getMonthValue() - 1;
+	}
+
+	/**
+	 * @param index Number of months since year 0
+	 * @return month The month
+	 */
+	private static YearMonth month(int index) {
+		return YearMonth.of(index / 12, index % 12 + 1);
+	}
+
+	/**
+	 * @param time Date in milliseconds
+	 * @return index Number of months since year 0 to the date
+	 */
+	private static int index(long time) {
+		return index(YearMonth.from(Instant.ofEpochMilli(time).atZone(ZONE)));
+	}
+
+	/**
+	 * @param index Number of months since year 0
+	 * @return time The start of the month in milliseconds
+	 */
+	private static long start(int index) {
+		return month(index).atDay(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * @param id    Serial number, model or customer's ID
+	 * @param index Number of months since year 0
+	 * @return key The key of the total
+	 */
+	private static long key(int id, int index) {
+		return ((long) id << 32) | (index & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param map   The totals
+	 * @param key   The key of the total
+	 * @param value Added to the total
+	 */
+	private static <K> void add(ConcurrentHashMap<K, LongAdder> map, K key, long value) {
+		map.computeIfAbsent(key, k -> new LongAdder()).add(value);
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          Start of the booked time in milliseconds
+	 * @param dueDate            End of the booked time in milliseconds
+	 */
+	public void addBooking(int routerSerialNumber, long startDate, long dueDate) {
+		book(routerSerialNumber, startDate, dueDate, 1);
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          Start of the booked time in milliseconds
+	 * @param dueDate            End of the booked time in milliseconds
+	 */
+	public void removeBooking(int routerSerialNumber, long startDate, long dueDate) {
+		book(routerSerialNumber, startDate, dueDate, -1);
+	}
+
+	/**
+	 * Splits the booked time across the months it spans
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          Start of the booked time in milliseconds
+	 * @param dueDate            End of the booked time in milliseconds
+	 * @param sign               [1: to add, -1: to remove]
+	 */
+	private void book(int routerSerialNumber, long startDate, long dueDate, int sign) {
+		for (int index = index(startDate); startDate < dueDate; index++) {
+			long end = Math.min(dueDate, start(index + 1));
+			add(bookedTime, key(routerSerialNumber, index), sign * (end - startDate));
+			startDate = end;
+		}
+	}
+
+	/**
+	 * Counts the fees of an invoice, even if its reservation was removed with its
+	 * router
+	 * 
+	 * @param customerId ID of the customer
+	 * @param i          The invoice
+	 */
+	public void addRevenue(int customerId, Invoice i) {
+		long startDate = startDate(i);
+		if (startDate != 0)
+			revenue(customerId, i, startDate, 1);
+	}
+
+	/**
+	 * Stops counting the fees of a removed invoice
+	 * 
+	 * @param customerId ID of the customer
+	 * @param i          The invoice
+	 * @param startDate  Start date of its reservation in milliseconds
+	 */
+	public void removeRevenue(int customerId, Invoice i, long startDate) {
+		revenue(customerId, i, startDate, -1);
+	}
+
+	/**
+	 * Counts the fees of an invoice instead of the one it replaces. Both are for
+	 * the same reservation.
+	 * 
+	 * @param customerId ID of the customer
+	 * @param previous   The replaced invoice
+	 * @param i          The new invoice
+	 */
+	public void replaceRevenue(int customerId, Invoice previous, Invoice i) {
+		long startDate = startDate(i);
+		if (startDate == 0)
+			return;
+		revenue(customerId, previous, startDate, -1);
+		revenue(customerId, i, startDate, 1);
+	}
+
+	/**
+	 * The invoices saved by the former versions don't have the start date, it's
+	 * taken from their reservation if it still exists
+	 * 
+	 * @param i The invoice
+	 * @return startDate Start date of its reservation in milliseconds. 0 if it's
+	 *         unknown
+	 */
+	private long startDate(Invoice i) {
+		if (i.getStartDate() != 0)
+			return i.getStartDate();
+		ReservationView r = reservation.view(i.getReservationNumber());
+		return r != null ? r.getStartTime() : 0;
+	}
+
+	/**
+	 * @param customerId ID of the customer
+	 * @param i          The invoice
+	 * @param startDate  Start date of its reservation in milliseconds
+	 * @param sign       [1: to add, -1: to remove]
+	 */
+	private void revenue(int customerId, Invoice i, long startDate, int sign) {
+		long cents = sign * Math.round(i.getFees() * 100d);
+		int index = index(startDate);
+		add(routerRevenue, key(i.getRouterSerialNumber(), index), cents);
+		Router r = router.get(i.getRouterSerialNumber());
+		if (r != null)
+			add(modelRevenue, key(r.getModel(), index), cents);
+		add(monthRevenue, index, cents);
+		add(customerRevenue, customerId, cents);
+	}
+
+	/**
+	 * Builds the booked time from the schedules in parallel. Called once the
+	 * stores are loaded and before they can be changed.
+	 */
+	public void rebuildBookings() {
+		bookedTime.clear();
+		Arrays.stream(routerSchedule.keys()).parallel().forEach(routerSerialNumber -> {
+			RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+			for (int i = 0; schedule != null && i < schedule.size(); i++)
+				addBooking(routerSerialNumber, schedule.getStartDate(i), schedule.getDueDate(i));
+		});
+	}
+
+	/**
+	 * Builds the revenue from the invoices in parallel. Called once the customers
+	 * are loaded and before they can be used.
+	 * 
+	 * @param customer All customers
+	 */
+	public void rebuildRevenue(Map<Integer, Customer> customer) {
+		routerRevenue.clear();
+		modelRevenue.clear();
+		monthRevenue.clear();
+		customerRevenue.clear();
+		customer.values().parallelStream().forEach(c -> {
+			for (Invoice i : c.getInvoices())
+				addRevenue(c.getID(), i);
+		});
+	}
+
+	/**
+	 * Sums the totals of the months in the period by their IDs
+	 * 
+	 * @param map  The totals
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return totals [Key: Serial number or model, Value: Total]
+	 */
+	private static Map<Integer, Long> sum(ConcurrentHashMap<Long, LongAdder> map, YearMonth from, YearMonth to) {
+		int first = index(from), last = index(to);
+		return map.entrySet().parallelStream().filter(e -> {
+			int index = (int) e.getKey().longValue();
+			return index >= first && index <= last;
+		}).collect(Collectors.groupingByConcurrent(e -> (int) (e.getKey() >>> 32),
+				Collectors.summingLong(e -> e.getValue().sum())));
+	}
+
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return revenue [Key: Router serial number, Value: Revenue]
+	 */
+	public TreeMap<Integer, Double> getRevenueByRouter(YearMonth from, YearMonth to) {
+		TreeMap<Integer, Double> revenue = new TreeMap<Integer, Double>();
+		for (Map.Entry<Integer, Long> e : sum(routerRevenue, from, to).entrySet())
+			if (e.getValue() != 0)
+				revenue.put(e.getKey(), e.getValue() / 100d);
+		return revenue;
+	}
+
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return revenue [Key: Router's model, Value: Revenue]
+	 */
+	public TreeMap<Character, Double> getRevenueByModel(YearMonth from, YearMonth to) {
+		TreeMap<Character, Double> revenue = new TreeMap<Character, Double>();
+		for (Map.Entry<Integer, Long> e : sum(modelRevenue, from, to).entrySet())
+			if (e.getValue() != 0)
+				revenue.put((char) e.getKey().intValue(), e.getValue() / 100d);
+		return revenue;
+	}
+
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return revenue [Key: Month, Value: Revenue]
+	 */
+	public TreeMap<YearMonth, Double> getRevenueByMonth(YearMonth from, YearMonth to) {
+		TreeMap<YearMonth, Double> revenue = new TreeMap<YearMonth, Double>();
+		for (int index = index(from), last = index(to); index <= last; index++) {
+			LongAdder cents = monthRevenue.get(index);
+			if (cents != null && cents.sum() != 0)
+				revenue.put(month(index), cents.sum() / 100d);
+		}
+		return revenue;
+	}
+
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return utilization [Key: Router serial number, Value: Booked time as a
+	 *         percentage of the period]
+	 */
+	public TreeMap<Integer, Double> getUtilization(YearMonth from, YearMonth to) {
+		Map<Integer, Long> booked = sum(bookedTime, from, to);
+		double period = start(index(to) + 1) - start(index(from));
+		TreeMap<Integer, Double> utilization = new TreeMap<Integer, Double>();
+		for (int routerSerialNumber : router.keys()) {
+			Long time = booked.get(routerSerialNumber);
+			utilization.put(routerSerialNumber, time == null ? 0 : 100 * time / period);
+		}
+		return utilization;
+	}
+
+	/**
+	 * @param count Number of customers
+	 * @return revenue The customers who paid the most, from the top [Key:
+	 *         Customer's ID, Value: Revenue]
+	 */
+	public LinkedHashMap<Integer, Double> getTopCustomers(int count) {
+		LinkedHashMap<Integer, Double> revenue = new LinkedHashMap<Integer, Double>();
+		customerRevenue.entrySet().parallelStream().map(e -> new long[] { e.getKey(), e.getValue().sum() })
+				.filter(e -> e[1] != 0)
+				.sorted((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]))
+				.limit(count).forEachOrdered(e -> revenue.put((int) e[0], e[1] / 100d));
+		return revenue;
+	}
+
+	/**
+	 * @param month The month [year-month]
+	 * @return month The parsed month
+	 * @throws InputError If the format couldn't be identified
+	 */
+	public static YearMonth parseMonth(String month) throws InputError {
+		try {
+			return YearMonth.parse(month.trim());
+		} catch (DateTimeParseException e) {
+			throw new InputError("Couldn't identify the entered month format [year-month].");
+		}
+	}
+}
+
+/**
+ * Latency histogram in the style of HdrHistogram. Durations below 2 *
+ * SUB_BUCKETS nanoseconds are counted exactly, above that every power of two is
+ * split into SUB_BUCKETS linear buckets, so any duration up to Long.MAX_VALUE
+ * is counted with a relative error under 1 / SUB_BUCKETS. Recording only
+ * increments the counters, it takes no lock and allocates nothing, so it can
+ * be called on the booking path while holding the router locks.
+ *
+ * @see <a href="https://hdrhistogram.github.io/HdrHistogram/"> HdrHistogram
+ *      </a>
+ */
+class LatencyHistogram {
+	/**
+	 * log2(SUB_BUCKETS)
+	 */
+	private static final int PRECISION_BITS = 5;
+	/**
+	 * Buckets per power of two [3% relative error]
+	 */
+	private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+	/**
+	 * Durations below it have a bucket each
+	 */
+	private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+	/**
+	 * Number of buckets needed for Long.MAX_VALUE
+	 */
+	private static final int BUCKETS = LINEAR_BUCKETS + (62 - PRECISION_BITS) * SUB_BUCKETS;
+	/**
+	 * Name of the measured operation
+	 */
+	private final String name;
+	/**
+	 * Number of durations in every bucket
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/**
+	 * Sum of the durations in nanoseconds
+	 */
+	private final LongAdder total = new LongAdder();
+	/**
+	 * Number of the operations that failed
+	 */
+	private final LongAdder failures = new LongAdder();
+	/**
+	 * Longest duration in nanoseconds
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param name Name of the measured operation
+	 */
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return name Name of the measured operation
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param nanos Duration in nanoseconds
+	 * @return index The bucket of the duration
+	 */
+	static int index(long nanos) {
+		if (nanos < LINEAR_BUCKETS)
+			return (int) Math.max(0, nanos);
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - PRECISION_BITS;
+		return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @param index The bucket
+	 * @return nanos The longest duration counted in the bucket
+	 */
+	static long highestValue(int index) {
+		if (index < LINEAR_BUCKETS)
+			return index;
+		int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+		long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Records the duration of an operation that started at the given time
+	 *
+	 * @param start Value of System.nanoTime() when the operation started
+	 */
+	public void record(long start) {
+		long nanos = System.nanoTime() - start;
+		counts.incrementAndGet(index(nanos));
+		total.add(nanos);
+		long longest;
+		while (nanos > (longest = max.get()) && !max.compareAndSet(longest, nanos))
+			;
+	}
+
+	/**
+	 * Records the duration of an operation that started at the given time
+	 *
+	 * @param start       Value of System.nanoTime() when the operation started
+	 * @param isSucceeded Whether the operation succeeded
+	 */
+	public void record(long start, boolean isSucceeded) {
+		record(start);
+		if (!isSucceeded)
+			failures.increment();
+	}
+
+	/**
+	 * Summarizes the histogram. The counts are copied first, so the percentiles
+	 * are consistent even while durations are recorded.
+	 *
+	 * @return line [name count failed mean p50 p90 p99 p99.9 max]
+	 */
+	public String summary() {
+		long[] copy = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += copy[i] = counts.get(i);
+		StringBuilder line = new StringBuilder(name).append(" count=").append(count).append(" failed=")
+				.append(failures.sum());
+		if (count == 0)
+			return line.toString();
+		line.append(" mean=").append(format(total.sum() / count));
+		double[] percentiles = { 50, 90, 99, 99.9 };
+		long longest = max.get();
+		int i = 0;
+		long seen = 0;
+		for (double percentile : percentiles) {
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			while (seen + copy[i] < rank)
+				seen += copy[i++];
+			line.append(" p").append(percentile == (long) percentile ? String.valueOf((long) percentile)
+					: String.valueOf(percentile)).append('=').append(format(Math.min(highestValue(i), longest)));
+		}
+		return line.append(" max=").append(format(longest)).toString();
+	}
+
+	/**
+	 * @param nanos Duration in nanoseconds
+	 * @return duration The duration in the most readable unit
+	 */
+	private static String format(long nanos) {
+		if (nanos < 1000L)
+			return nanos + "ns";
+		if (nanos < 1000_000L)
+			return String.format("%.1fus", nanos / 1e3);
+		if (nanos < 1000_000_000L)
+			return String.format("%.1fms", nanos / 1e6);
+		return String.format("%.2fs", nanos / 1e9);
+	}
+}
+
+/**
+ * Counters and latency histograms of the booking operations and the
+ * persistence, used to size a deployment. Every manager operation and every
+ * file read or written is measured from its start, waiting for the locks
+ * included, to its end. The totals are kept since the system started.
+ */
+final class Metrics {
+	/**
+	 * All histograms in the order they are reported
+	 */
+	private static final ArrayList<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+	/**
+	 * All counters in the order they are reported [Key: Name, Value: Counter]
+	 */
+	private static final LinkedHashMap<String, LongAdder> counters = new LinkedHashMap<String, LongAdder>();
+
+	/**
+	 * Latency of the operations
+	 */
+	public static final LatencyHistogram MAKE_RESERVATION = histogram("makeReservation");
+	public static final LatencyHistogram MAKE_RESERVATIONS = histogram("makeReservations");
+	public static final LatencyHistogram EXTEND_RESERVATION = histogram("extendReservation");
+	public static final LatencyHistogram CANCEL_RESERVATION = histogram("cancelReservation");
+	public static final LatencyHistogram CHANGE_ROUTER = histogram("changeRouter");
+	public static final LatencyHistogram IS_DATE_AVAILABLE = histogram("isDateAvailable");
+	public static final LatencyHistogram ADD_ROUTER = histogram("addRouter");
+	public static final LatencyHistogram REMOVE_ROUTER = histogram("removeRouter");
+	public static final LatencyHistogram READ_FILE = histogram("readFile");
+	public static final LatencyHistogram WRITE_FILE = histogram("writeFile");
+	public static final LatencyHistogram JOURNAL_COMMIT = histogram("journalCommit");
+	public static final LatencyHistogram CHECKPOINT = histogram("checkpoint");
+	public static final LatencyHistogram SNAPSHOT = histogram("snapshot");
+	public static final LatencyHistogram START_SYSTEM = histogram("startSystem");
+	public static final LatencyHistogram CLOSE_SYSTEM = histogram("closeSystem");
+
+	/**
+	 * Reservations made and refused, one at a time or in batches, and bytes of
+	 * the saved files
+	 */
+	public static final LongAdder RESERVATIONS_MADE = counter("reservationsMade");
+	public static final LongAdder RESERVATIONS_REFUSED = counter("reservationsRefused");
+	public static final LongAdder BYTES_READ = counter("bytesRead");
+	public static final LongAdder BYTES_WRITTEN = counter("bytesWritten");
+
+	/**
+	 * Prevents making instances of the class
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * @param name Name of the measured operation
+	 * @return histogram The registered histogram
+	 */
+	private static LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = new LatencyHistogram(name);
+		histograms.add(histogram);
+		return histogram;
+	}
+
+	/**
+	 * @param name Name of the counter
+	 * @return counter The registered counter
+	 */
+	private static LongAdder counter(String name) {
+		LongAdder counter = new LongAdder();
+		counters.put(name, counter);
+		return counter;
+	}
+
+	/**
+	 * @return lines A line per counter [name value] followed by a line per
+	 *         histogram
+	 */
+	public static ArrayList<String> report() {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, LongAdder> e : counters.entrySet())
+			lines.add(e.getKey() + " " + e.getValue().sum());
+		for (LatencyHistogram histogram : histograms)
+			lines.add(histogram.summary());
+		return lines;
+	}
+}
+
+/**
+ * Java Flight Recorder event of a reservation made, extended, canceled or moved
+ * to another router. Lasts from the call to the manager until the router locks
+ * are released, so slow bookings can be matched with the GC and I/O events of
+ * the same recording. Costs nothing while no recording is running.
+ *
+ * @see <a href="https://docs.oracle.com/en/java/javase/17/jfapi/"> JDK Flight
+ *      Recorder API Programmer's Guide </a>
+ */
+@Name("routerrental.Reservation")
+@Label("Reservation")
+@Category({ "Router Rental", "Reservations" })
+@Description("A reservation made, extended, canceled or changed")
+@StackTrace(false)
+class ReservationEvent extends Event {
+	@Label("Operation")
+	@Description("create, createBatch, extend, cancel or change")
+	String operation;
+	@Label("Router Serial Number")
+	int routerSerialNumber;
+	@Label("Reservation Number")
+	int reservationNumber;
+	@Label("Reservations")
+	@Description("Number of the reservations made or changed")
+	int reservations;
+	@Label("Succeeded")
+	boolean isSucceeded;
+
+	/**
+	 * Commits the event if it's recorded
+	 *
+	 * @param operation          [create - createBatch - extend - cancel - change]
+	 * @param routerSerialNumber Serial number of the router. 0 for a batch
+	 * @param reservationNumber  Number of the reservation. 0 for a batch
+	 * @param reservations       Number of the reservations made or changed
+	 */
+	public void report(String operation, int routerSerialNumber, int reservationNumber, int reservations) {
+		if (!shouldCommit())
+			return;
+		this.operation = operation;
+		this.routerSerialNumber = routerSerialNumber;
+		this.reservationNumber = reservationNumber;
+		this.reservations = reservations;
+		this.isSucceeded = reservations > 0;
+		commit();
+	}
+}
+
+/**
+ * Java Flight Recorder event of checking a router's schedule for a period
+ */
+@Name("routerrental.AvailabilityCheck")
+@Label("Availability Check")
+@Category({ "Router Rental", "Reservations" })
+@StackTrace(false)
+class AvailabilityCheckEvent extends Event {
+	@Label("Router Serial Number")
+	int routerSerialNumber;
+	@Label("Schedule Size")
+	@Description("Number of the reservations in the router's schedule")
+	int scheduleSize;
+	@Label("Start Date")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	long startDate;
+	@Label("Due Date")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	long dueDate;
+	@Label("Available")
+	boolean isAvailable;
+}
+
+/**
+ * Java Flight Recorder event of reading or writing a file of the database
+ */
+@Name("routerrental.StoreFile")
+@Label("Store File")
+@Category({ "Router Rental", "Persistence" })
+@Description("A file of the database read or written")
+@StackTrace(false)
+class StoreFileEvent extends Event {
+	@Label("File Name")
+	String fileName;
+	@Label("Operation")
+	@Description("read or write")
+	String operation;
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	/**
+	 * Commits the event if it's recorded
+	 *
+	 * @param fileName  The name of the file
+	 * @param operation [read - write]
+	 * @param bytes     Size of the file
+	 */
+	public void report(String fileName, String operation, long bytes) {
+		if (!shouldCommit())
+			return;
+		this.fileName = fileName;
+		this.operation = operation;
+		this.bytes = bytes;
+		commit();
+	}
+}
+
+/**
+ * Reads the records of an import. Splitting the file into records is
+ * sequential, but parsing a record doesn't depend on the others, so parse may
+ * be called by many threads at once.
+ */
+interface RecordSource extends Closeable {
+	/**
+	 * @return record The text of the next record. Null at the end of the file
+	 * @throws IOException
+	 */
+	abstract public String nextRecord() throws IOException;
+
+	/**
+	 * @return line The line the last returned record starts at
+	 */
+	abstract public int getLine();
+
+	/**
+	 * @param record The text of a record
+	 * @return fields [Key: Column, Value: Field]
+	 * @throws InputError If the record is malformed
+	 */
+	abstract public HashMap<String, String> parse(String record) throws InputError;
+}
+
+/**
+ * Reads comma separated values. The first line holds the columns and quoted
+ * fields may span many lines.
+ * 
+ * @see CsvRecordSink
+ */
+class CsvRecordSource implements RecordSource {
+	/**
+	 * The file being read
+	 */
+	private final BufferedReader in;
+	/**
+	 * Names of the fields of each record
+	 */
+	private final String[] columns;
+	/**
+	 * Number of lines read
+	 */
+	private int lines = 0;
+	/**
+	 * The line the last returned record starts at
+	 */
+	private int line = 0;
+
+	/**
+	 * Reads the header line
+	 * 
+	 * @param in The file being read
+	 * @throws IOException
+	 * @throws InputError  If the file has no header
+	 */
+	public CsvRecordSource(BufferedReader in) throws IOException, InputError {
+		this.in = in;
+		String header = nextRecord();
+		if (header == null)
+			throw new InputError("The file is empty.");
+		columns = split(header).toArray(new String[0]);
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = columns[i].trim();
+	}
+
+	@Override
+	public String nextRecord() throws IOException {
+		String record;
+		do {
+			record = in.readLine();
+			lines++;
+			if (record == null)
+				return null;
+		} while (record.isEmpty());
+		line = lines;
+
+		// A quoted field isn't closed while the number of quotes is odd
+		int quotes = count(record);
+		StringBuilder text = null;
+		while (quotes % 2 != 0) {
+			String next = in.readLine();
+			if (next == null)
+				break;
+			lines++;
+			if (text == null)
+				text = new StringBuilder(record);
+			text.append('\n').append(next);
+			quotes += count(next);
+		}
+		return text == null ? record : text.toString();
+	}
+
+	/**
+	 * @param text Part of a record
+	 * @return quotes Number of quotes in the text
+	 */
+	private static int count(String text) {
+		int quotes = 0;
+		for (int i = text.indexOf('"'); i >= 0; i = text.indexOf('"', i + 1))
+			quotes++;
+		return quotes;
+	}
+
+	@Override
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	public HashMap<String, String> parse(String record) throws InputError {
+		ArrayList<String> values = split(record);
+		if (values.size() != columns.length)
+			throw new InputError("Expected " + columns.length + " fields but found " + values.size() + ".");
+		HashMap<String, String> fields = new HashMap<String, String>();
+		for (int i = 0; i < columns.length; i++)
+			fields.put(columns[i], values.get(i));
+		return fields;
+	}
+
+	/**
+	 * @param record The text of a record
+	 * @return values The fields with the quotes removed
+	 */
+	private static ArrayList<String> split(String record) {
+		ArrayList<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean isQuoted = false;
+		for (int i = 0; i < record.length(); i++) {
+			char c = record.charAt(i);
+			if (isQuoted) {
+				if (c != '"')
+					value.append(c);
+				else if (i + 1 < record.length() && record.charAt(i + 1) == '"')
+					value.append(record.charAt(++i));
+				else
+					isQuoted = false;
+			} else if (c == '"') {
+				isQuoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		values.add(value.toString());
+		return values;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
+
+/**
+ * Reads one flat JSON object per line [NDJSON]. The values may be strings,
+ * numbers, booleans or null. Nested objects and arrays aren't supported.
+ * 
+ * @see JsonRecordSink
+ */
+class JsonRecordSource implements RecordSource {
+	/**
+	 * The file being read
+	 */
+	private final BufferedReader in;
+	/**
+	 * Number of lines read
+	 */
+	private int line = 0;
+
+	/**
+	 * @param in The file being read
+	 */
+	public JsonRecordSource(BufferedReader in) {
+		this.in = in;
+	}
+
+	@Override
+	public String nextRecord() throws IOException {
+		String record;
+		do {
+			record = in.readLine();
+			line++;
+			if (record == null)
+				return null;
+		} while (record.trim().isEmpty());
+		return record;
+	}
+
+	@Override
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	public HashMap<String, String> parse(String record) throws InputError {
+		HashMap<String, String> fields = new HashMap<String, String>();
+		int[] position = { skip(record, 0) };
+		expect(record, position, '{');
+		position[0] = skip(record, position[0]);
+		if (position[0] < record.length() && record.charAt(position[0]) == '}') {
+			position[0]++;
+		} else {
+			while (true) {
+				position[0] = skip(record, position[0]);
+				String name = string(record, position);
+				expect(record, position, ':');
+				position[0] = skip(record, position[0]);
+				fields.put(name, value(record, position));
+				position[0] = skip(record, position[0]);
+				if (position[0] < record.length() && record.charAt(position[0]) == ',') {
+					position[0]++;
+					continue;
+				}
+				expect(record, position, '}');
+				break;
+			}
+		}
+		if (skip(record, position[0]) != record.length())
+			throw new InputError("Unexpected text after the object.");
+		return fields;
+	}
+
+	/**
+	 * @param record   The text of a record
+	 * @param position Position of the next character
+	 * @return position Position of the next character that isn't a white space
+	 */
+	private static int skip(String record, int position) {
+		while (position < record.length() && Character.isWhitespace(record.charAt(position)))
+			position++;
+		return position;
+	}
+
+	/**
+	 * Reads the given character after the white spaces
+	 * 
+	 * @param record   The text of a record
+	 * @param position Position of the next character. Moved after the character
+	 * @param c        The expected character
+	 * @throws InputError If another character is found
+	 */
+	private static void expect(String record, int[] position, char c) throws InputError {
+		position[0] = skip(record, position[0]);
+		if (position[0] >= record.length() || record.charAt(position[0]) != c)
+			throw new InputError("Expected '" + c + "' at column " + (position[0] + 1) + ".");
+		position[0]++;
+	}
+
+	/**
+	 * @param record   The text of a record
+	 * @param position Position of the value. Moved after the value
+	 * @return value The value as text. Null for a JSON null
+	 * @throws InputError If the value is malformed
+	 */
+	private static String value(String record, int[] position) throws InputError {
+		if (position[0] < record.length() && record.charAt(position[0]) == '"')
+			return string(record, position);
+		int start = position[0];
+		while (position[0] < record.length() && ",}".indexOf(record.charAt(position[0])) < 0
+				&& !Character.isWhitespace(record.charAt(position[0])))
+			position[0]++;
+		String value = record.substring(start, position[0]);
+		if (value.isEmpty() || value.charAt(0) == '{' || value.charAt(0) == '[')
+			throw new InputError("Invalid value at column " + (start + 1) + ".");
+		return value.equals("null") ? null : value;
+	}
+
+	/**
+	 * @param record   The text of a record
+	 * @param position Position of the opening quote. Moved after the closing one
+	 * @return string The string without the quotes and escapes
+	 * @throws InputError If the string is malformed
+	 */
+	private static String string(String record, int[] position) throws InputError {
+		expect(record, position, '"');
+		StringBuilder string = new StringBuilder();
+		while (position[0] < record.length()) {
+			char c = record.charAt(position[0]++);
+			if (c == '"')
+				return string.toString();
+			if (c != '\\') {
+				string.append(c);
+				continue;
+			}
+			if (position[0] >= record.length())
+				break;
+			c = record.charAt(position[0]++);
+			switch (c) {
+			case 'n':
+				string.append('\n');
+				break;
+			case 'r':
+				string.append('\r');
+				break;
+			case 't':
+				string.append('\t');
+				break;
+			case 'b':
+				string.append('\b');
+				break;
+			case 'f':
+				string.append('\f');
+				break;
+			case 'u':
+				if (position[0] + 4 > record.length())
+					throw new InputError("Invalid escape at column " + position[0] + ".");
+				try {
+					string.append((char) Integer.parseInt(record.substring(position[0], position[0] + 4), 16));
+				} catch (NumberFormatException e) {
+					throw new InputError("Invalid escape at column " + position[0] + ".");
+				}
+				position[0] += 4;
+				break;
+			default:
+				string.append(c);
+			}
+		}
+		throw new InputError("Unterminated string.");
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
+
+/**
+ * Exports the data of the system to CSV or NDJSON files while the system is
+ * running. Records are written as they are read, only one router's schedule or
+ * a small chunk of the feedbacks is copied at a time, so nothing waits for the
+ * whole export. Files are written to ./export/ under a temporary name and
+ * renamed when complete, so readers never see a partial export.
+ */
+class SystemDataExporter extends SystemIformationHolder {
+	/**
+	 * Directory of the exported files
+	 */
+	private static final String EXPORT_DIRECTORY = "./export";
+	/**
+	 * Number of feedbacks copied at once
+	 */
+	private static final int FEEDBACK_CHUNK = 1024;
+
+	/**
+	 * Exports the data to a file
+	 * 
+	 * @param data     The data to export [routers - reservations - schedules -
+	 *                 invoices - feedbacks]
+	 * @param format   Format of the file [csv - ndjson]
+	 * @param fileName Name of the file in ./export/
+	 * @param customer All customers. Used when exporting the invoices
+	 * @return records Number of exported records
+	 * @throws InputError If the data, format or file name is invalid
+	 * @throws IOException
+	 */
+	public int export(String data, String format, String fileName, Map<Integer, Customer> customer)
+			throws InputError, IOException {
+		data = data.toLowerCase();
+		if (!Arrays.asList("routers", "reservations", "schedules", "invoices", "feedbacks").contains(data))
+			throw new InputError("Invalid data. It must be one of routers, reservations, schedules, invoices or "
+					+ "feedbacks.");
+		format = format.toLowerCase();
+		if (!format.equals("csv") && !format.equals("ndjson"))
+			throw new InputError("Invalid format. It must be csv or ndjson.");
+		checkFileName(fileName);
+
+		Path temporary = temporaryFile(fileName);
+		int records;
+		try (Writer out = open(temporary); RecordSink sink = format.equals("csv") ? new CsvRecordSink(out) : new JsonRecordSink(out)) {
+			switch (data) {
+			case "routers":
+				records = exportRouters(sink);
+				break;
+			case "reservations":
+				records = exportReservations(sink);
+				break;
+			case "schedules":
+				records = exportRouterSchedules(sink);
+				break;
+			case "invoices":
+				records = exportInvoices(customer, sink);
+				break;
+			default:
+				records = exportFeedbacks(sink);
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		publish(temporary, fileName);
+		return records;
+	}
+
+	/**
+	 * Writes the metrics report to a text file, a line per counter or histogram
+	 * 
+	 * @param fileName Name of the file in ./export/
+	 * @throws InputError If the file name is invalid
+	 * @throws IOException
+	 */
+	public void exportMetrics(String fileName) throws InputError, IOException {
+		checkFileName(fileName);
+		Path temporary = temporaryFile(fileName);
+		try (Writer out = open(temporary)) {
+			for (String line : Metrics.report())
+				out.write(line + "\n");
+		} catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		publish(temporary, fileName);
+	}
+
+	/**
+	 * @param fileName Name of the file
+	 * @throws InputError If the name isn't a plain file name
+	 */
+	private static void checkFileName(String fileName) throws InputError {
+		if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.startsWith("."))
+			throw new InputError("Invalid file name. It must be a plain file name.");
+	}
+
+	/**
+	 * @param fileName Name of the exported file
+	 * @return temporary The file written until the export is complete
+	 * @throws IOException
+	 */
+	private static Path temporaryFile(String fileName) throws IOException {
+		Files.createDirectories(Paths.get(EXPORT_DIRECTORY));
+		return Paths.get(EXPORT_DIRECTORY, fileName + ".part");
+	}
+
+	/**
+	 * @param temporary The temporary file
+	 * @return out Buffered UTF-8 writer of the file
+	 * @throws IOException
+	 */
+	private static Writer open(Path temporary) throws IOException {
+		return new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(temporary.toFile()), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Renames the complete temporary file to its name, atomically if the file
+	 * system supports it
+	 * 
+	 * @param temporary The temporary file
+	 * @param fileName  Name of the exported file
+	 * @throws IOException
+	 */
+	private static void publish(Path temporary, String fileName) throws IOException {
+		Path file = Paths.get(EXPORT_DIRECTORY, fileName);
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Exports the routers ordered by their serial numbers [serialNumber, model,
+	 * portsNumber]
+	 * 
+	 * @param sink Receives the records
+	 * @return records Number of exported records
+	 * @throws IOException
+	 */
+	public int exportRouters(RecordSink sink) throws IOException {
+		sink.begin("serialNumber", "model", "portsNumber");
+		int[] serialNumbers = router.keys();
+		Arrays.sort(serialNumbers);
+		int records = 0;
+		for (int serialNumber : serialNumbers) {
+			Router r = router.get(serialNumber);
+			if (r == null)
+				continue;
+			sink.field(r.getSerialNumber());
+			sink.field(String.valueOf(r.getModel()));
+			sink.field(r.getPortsNumber());
+			sink.endRecord();
+			records++;
+		}
+		return records;
+	}
+
+	/**
+	 * Exports the reservations ordered by their numbers [number,
+	 * routerSerialNumber, type, duration, reservationDate, startDate, dueDate].
+	 * Dates are ISO-8601 instants.
+	 * 
+	 * @param sink Receives the records
+	 * @return records Number of exported records
+	 * @throws IOException
+	 */
+	public int exportReservations(RecordSink sink) throws IOException {
+		sink.begin("number", "routerSerialNumber", "type", "duration", "reservationDate", "startDate", "dueDate");
+		int records = 0;
+		for (int number : reservation.numbers()) {
+			ReservationView r = reservation.view(number);
+			if (r == null)
+				continue;
+			sink.field(r.getNumber());
+			sink.field(r.getRouterSerialNumber());
+			sink.field(String.valueOf(r.getType()));
+			sink.field(r.getDuration());
+			sink.field(Instant.ofEpochMilli(r.getReservationTime()).toString());
+			sink.field(Instant.ofEpochMilli(r.getStartTime()).toString());
+			sink.field(Instant.ofEpochMilli(r.getDueTime()).toString());
+			sink.endRecord();
+			records++;
+		}
+		return records;
+	}
+
+	/**
+	 * Exports the schedule of every router ordered by the serial numbers then the
+	 * start dates [routerSerialNumber, reservationNumber, startDate, dueDate].
+	 * Each schedule is copied under its router's lock and written after releasing
+	 * it.
+	 * 
+	 * @param sink Receives the records
+	 * @return records Number of exported records
+	 * @throws IOException
+	 */
+	public int exportRouterSchedules(RecordSink sink) throws IOException {
+		sink.begin("routerSerialNumber", "reservationNumber", "startDate", "dueDate");
+		int[] serialNumbers = routerSchedule.keys();
+		Arrays.sort(serialNumbers);
+		int records = 0;
+		for (int serialNumber : serialNumbers) {
+			int[] numbers;
+			long[] startDates, dueDates;
+			routerLocks.lock(serialNumber);
+			try {
+				RouterSchedule schedule = routerSchedule.get(serialNumber);
+				int size = schedule == null ? 0 : schedule.size();
+				numbers = new int[size];
+				startDates = new long[size];
+				dueDates = new long[size];
+				for (int i = 0; i < size; i++) {
+					numbers[i] = schedule.getNumber(i);
+					startDates[i] = schedule.getStartDate(i);
+					dueDates[i] = schedule.getDueDate(i);
+				}
+			} finally {
+				routerLocks.unlock(serialNumber);
+			}
+			for (int i = 0; i < numbers.length; i++) {
+				sink.field(serialNumber);
+				sink.field(numbers[i]);
+				sink.field(Instant.ofEpochMilli(startDates[i]).toString());
+				sink.field(Instant.ofEpochMilli(dueDates[i]).toString());
+				sink.endRecord();
+			}
+			records += numbers.length;
+		}
+		return records;
+	}
+
+	/**
+	 * Exports the invoices of every customer [customerId, invoice,
+	 * reservationNumber, routerSerialNumber, fees]. The invoice is its number in
+	 * the customer's list.
+	 * 
+	 * @param customer All customers
+	 * @param sink     Receives the records
+	 * @return records Number of exported records
+	 * @throws IOException
+	 */
+	public int exportInvoices(Map<Integer, Customer> customer, RecordSink sink) throws IOException {
+		sink.begin("customerId", "invoice", "reservationNumber", "routerSerialNumber", "fees");
+		int records = 0;
+		for (Customer c : customer.values()) {
+			ArrayList<Invoice> invoices;
+			synchronized (c) {
+				invoices = new ArrayList<Invoice>(c.getInvoices());
+			}
+			for (int i = 0; i < invoices.size(); i++) {
+				Invoice invoice = invoices.get(i);
+				sink.field(c.getID());
+				sink.field(i + 1);
+				sink.field(invoice.getReservationNumber());
+				sink.field(invoice.getRouterSerialNumber());
+				sink.field(invoice.getFees());
+				sink.endRecord();
+			}
+			records += invoices.size();
+		}
+		return records;
+	}
+
+	/**
+	 * Exports the feedbacks in the order they were sent [number, feedback]. The
+	 * feedbacks are copied in small chunks so senders wait for one chunk at most.
+	 * 
+	 * @param sink Receives the records
+	 * @return records Number of exported records
+	 * @throws IOException
+	 */
+	public int exportFeedbacks(RecordSink sink) throws IOException {
+		sink.begin("number", "feedback");
+		ArrayList<String> feedbacks = feedback.get();
+		int records = 0;
+		while (true) {
+			ArrayList<String> chunk;
+			synchronized (feedbacks) {
+				int end = Math.min(records + FEEDBACK_CHUNK, feedbacks.size());
+				if (records >= end)
+					return records;
+				chunk = new ArrayList<String>(feedbacks.subList(records, end));
+			}
+			for (String f : chunk) {
+				sink.field(++records);
+				sink.field(f);
+				sink.endRecord();
+			}
+		}
+	}
+}
+
+/**
+ * Outcome of an import
+ */
+class ImportReport {
+	/**
+	 * Maximum number of kept errors
+	 */
+	private static final int MAX_ERRORS = 100;
+	/**
+	 * Number of imported records
+	 */
+	private int imported = 0;
+	/**
+	 * Number of rejected records
+	 */
+	private int rejected = 0;
+	/**
+	 * Reasons of the first rejected records [line: reason]
+	 */
+	private final ArrayList<String> errors = new ArrayList<String>();
+
+	/**
+	 * Counts an imported record
+	 */
+	void accept() {
+		imported++;
+	}
+
+	/**
+	 * Counts a rejected record
+	 * 
+	 * @param line   The line of the record
+	 * @param reason Why it was rejected
+	 */
+	void reject(int line, String reason) {
+		rejected++;
+		if (errors.size() < MAX_ERRORS)
+			errors.add("line " + line + ": " + reason);
+	}
+
+	/**
+	 * @return imported Number of imported records
+	 */
+	public int getImported() {
+		return imported;
+	}
+
+	/**
+	 * @return rejected Number of rejected records
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return errors Reasons of the first rejected records [line: reason]
+	 */
+	public ArrayList<String> getErrors() {
+		return errors;
+	}
+}
+
+/**
+ * Imports routers and reservations made before from CSV or NDJSON files in
+ * ./import/. The file is split into chunks of records that are parsed and
+ * validated in parallel while the next chunk is read. The valid records are
+ * then added with all the routers locked once, the fleet index is rebuilt once
+ * and a checkpoint saves the stores, instead of locking, indexing and
+ * journaling every record.
+ */
+class SystemDataImporter extends SystemIformationHolder {
+	/**
+	 * Directory of the imported files
+	 */
+	private static final String IMPORT_DIRECTORY = "./import";
+	/**
+	 * Number of records parsed by one task
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * Parses and validates a record
+	 * 
+	 * @param <T> Type of the parsed record
+	 */
+	private interface RecordParser<T> {
+		T parse(HashMap<String, String> fields) throws InputError;
+	}
+
+	/**
+	 * A parsed reservation with the router and the customer it belongs to
+	 */
+	private static final class ImportedReservation {
+		private final int routerSerialNumber;
+		private final Integer customerId;
+		private final Reservation reservation;
+
+		ImportedReservation(int routerSerialNumber, Integer customerId, Reservation reservation) {
+			this.routerSerialNumber = routerSerialNumber;
+			this.customerId = customerId;
+			this.reservation = reservation;
+		}
+	}
+
+	/**
+	 * Imports a file
+	 * 
+	 * @param data     The data to import [routers - reservations]
+	 * @param format   Format of the file [csv - ndjson]
+	 * @param fileName Name of the file in ./import/
+	 * @param customer All customers. The invoices of the imported reservations
+	 *                 are added to them
+	 * @return report The outcome of the import
+	 * @throws InputError If the data, format or file name is invalid
+	 * @throws IOException
+	 */
+	public ImportReport importFile(String data, String format, String fileName, Map<Integer, Customer> customer)
+			throws InputError, IOException {
+		data = data.toLowerCase();
+		if (!data.equals("routers") && !data.equals("reservations"))
+			throw new InputError("Invalid data. It must be routers or reservations.");
+		format = format.toLowerCase();
+		if (!format.equals("csv") && !format.equals("ndjson"))
+			throw new InputError("Invalid format. It must be csv or ndjson.");
+		if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.startsWith("."))
+			throw new InputError("Invalid file name. It must be a plain file name.");
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(Paths.get(IMPORT_DIRECTORY, fileName).toFile()), StandardCharsets.UTF_8),
+				1 << 16);
+		try (RecordSource source = format.equals("csv") ? new CsvRecordSource(in) : new JsonRecordSource(in)) {
+			if (data.equals("routers"))
+				return importRouters(source);
+			return importReservations(source, customer);
+		} catch (InputError e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Imports routers [serialNumber, model, portsNumber]. Routers that exist or
+	 * appear twice are rejected.
+	 * 
+	 * @param source The records
+	 * @return report The outcome of the import
+	 * @throws IOException
+	 */
+	public ImportReport importRouters(RecordSource source) throws IOException {
+		ImportReport report = new ImportReport();
+		ArrayList<int[]> lines = new ArrayList<int[]>();
+		ArrayList<Object[]> parsed = parseAll(source, lines,
+				fields -> new Router(integer(fields, "serialNumber"), character(fields, "model"),
+						integer(fields, "portsNumber")));
+
+		boolean isChanged = false;
+		routerLocks.lockAll();
+		try {
+			for (int c = 0; c < parsed.size(); c++) {
+				Object[] chunk = parsed.get(c);
+				for (int i = 0; i < chunk.length; i++) {
+					int line = lines.get(c)[i];
+					if (chunk[i] instanceof InputError) {
+						report.reject(line, ((InputError) chunk[i]).getMessage());
+						continue;
+					}
+					Router r = (Router) chunk[i];
+					if (router.containsKey(r.getSerialNumber())) {
+						report.reject(line, "Router " + r.getSerialNumber() + " exists.");
+						continue;
+					}
+					router.put(r.getSerialNumber(), r);
+					routerSchedule.put(r.getSerialNumber(), new RouterSchedule());
+					report.accept();
+					isChanged = true;
+				}
+			}
+			if (isChanged)
+				fleet.rebuild(router.values());
+		} finally {
+			routerLocks.unlockAll();
+		}
+		if (isChanged)
+			SystemManager.checkpoint();
+		return report;
+	}
+
+	/**
+	 * Imports reservations [routerSerialNumber, type, duration, startDate,
+	 * reservationDate, customerId]. The dates are ISO-8601 instants or
+	 * [day-month-year at hour:minutes PM/AM]. The reservation date is the import
+	 * time when it's missing and the customer is optional. Reservations are
+	 * validated like new ones relative to their reservation date and those
+	 * overlapping the router's schedule or an earlier record are rejected.
+	 * 
+	 * @param source   The records
+	 * @param customer All customers. The invoices are added to them
+	 * @return report The outcome of the import
+	 * @throws IOException
+	 */
+	public ImportReport importReservations(RecordSource source, Map<Integer, Customer> customer)
+			throws IOException {
+		ImportReport report = new ImportReport();
+		ArrayList<int[]> lines = new ArrayList<int[]>();
+		long now = System.currentTimeMillis();
+		ArrayList<Object[]> parsed = parseAll(source, lines, fields -> {
+			String reservationDate = fields.get("reservationDate");
+			String customerId = fields.get("customerId");
+			Integer id = customerId == null || customerId.isEmpty() ? null : integer(fields, "customerId");
+			if (id != null && !customer.containsKey(id))
+				throw new InputError("Customer " + id + " doesn't exist.");
+			return new ImportedReservation(integer(fields, "routerSerialNumber"), id,
+					new Reservation(character(fields, "type"),
+							reservationDate == null || reservationDate.isEmpty() ? now
+									: time(fields, "reservationDate"),
+							time(fields, "startDate"), integer(fields, "duration")));
+		});
+
+		// Grouped by router and sorted by start date, like a batch of reservations
+		HashMap<Integer, ArrayList<Integer>> groups = new HashMap<Integer, ArrayList<Integer>>();
+		ArrayList<ImportedReservation> made = new ArrayList<ImportedReservation>();
+		ArrayList<Integer> madeLines = new ArrayList<Integer>();
+		for (int c = 0; c < parsed.size(); c++) {
+			Object[] chunk = parsed.get(c);
+			for (int i = 0; i < chunk.length; i++) {
+				if (chunk[i] instanceof InputError) {
+					report.reject(lines.get(c)[i], ((InputError) chunk[i]).getMessage());
+					continue;
+				}
+				ImportedReservation r = (ImportedReservation) chunk[i];
+				groups.computeIfAbsent(r.routerSerialNumber, k -> new ArrayList<Integer>()).add(made.size());
+				made.add(r);
+				madeLines.add(lines.get(c)[i]);
+			}
+		}
+
+		HashMap<Integer, ArrayList<Invoice>> invoices = new HashMap<Integer, ArrayList<Invoice>>();
+		boolean isChanged = false;
+		routerLocks.lockAll();
+		try {
+			for (Map.Entry<Integer, ArrayList<Integer>> group : groups.entrySet()) {
+				int routerSerialNumber = group.getKey();
+				RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+				Router r = router.get(routerSerialNumber);
+				if (schedule == null || r == null) {
+					for (int i : group.getValue())
+						report.reject(madeLines.get(i), "Router " + routerSerialNumber + " doesn't exist.");
+					continue;
+				}
+
+				ArrayList<Integer> indexes = group.getValue();
+				indexes.sort((a, b) -> Long.compare(made.get(a).reservation.getStartTime(),
+						made.get(b).reservation.getStartTime()));
+				int[] numbers = new int[indexes.size()];
+				long[] startDates = new long[indexes.size()];
+				long[] dueDates = new long[indexes.size()];
+				int count = 0;
+				long lastDueDate = Long.MIN_VALUE;
+				for (int i : indexes) {
+					Reservation imported = made.get(i).reservation;
+					long startDate = imported.getStartTime(), dueDate = imported.getDueTime();
+					if (startDate <= lastDueDate || !schedule.isAvailable(startDate, dueDate, 0)) {
+						report.reject(madeLines.get(i), "Router " + routerSerialNumber + " isn't available.");
+						continue;
+					}
+					lastDueDate = dueDate;
+					numbers[count] = imported.getNumber();
+					startDates[count] = startDate;
+					dueDates[count++] = dueDate;
+					imported.setRouterSerialNumber(routerSerialNumber);
+					reservation.put(imported);
+					analytics.addBooking(routerSerialNumber, startDate, dueDate);
+					fleet.occupy(routerSerialNumber, startDate, dueDate);
+					Integer id = made.get(i).customerId;
+					if (id != null)
+						invoices.computeIfAbsent(id, k -> new ArrayList<Invoice>()).add(
+								new Invoice(r, imported, customer.get(id).isResident() ? 0.25f : 0f));
+					report.accept();
+				}
+				schedule.addAll(numbers, startDates, dueDates, count);
+				isChanged |= count > 0;
+			}
+		} finally {
+			routerLocks.unlockAll();
+		}
+
+		// The customer's monitor is taken before the router locks everywhere else
+		for (Map.Entry<Integer, ArrayList<Invoice>> entry : invoices.entrySet())
+			customer.get(entry.getKey()).importInvoices(entry.getValue());
+		if (isChanged)
+			SystemManager.checkpoint();
+		return report;
+	}
+
+	/**
+	 * Splits the source into chunks of records that are parsed in parallel while
+	 * the next chunk is read
+	 * 
+	 * @param source The records
+	 * @param lines  Filled with the line of each record of each chunk
+	 * @param parser Parses and validates a record
+	 * @return parsed The parsed records of each chunk in the file's order. A
+	 *         rejected record is replaced by its InputError
+	 * @throws IOException
+	 */
+	private static <T> ArrayList<Object[]> parseAll(RecordSource source, ArrayList<int[]> lines,
+			RecordParser<T> parser) throws IOException {
+		ArrayList<CompletableFuture<Object[]>> chunks = new ArrayList<CompletableFuture<Object[]>>();
+		ArrayList<String> records = new ArrayList<String>(CHUNK_SIZE);
+		int[] chunkLines = new int[CHUNK_SIZE];
+		String record;
+		do {
+			record = source.nextRecord();
+			if (record != null) {
+				chunkLines[records.size()] = source.getLine();
+				records.add(record);
+			}
+			if (records.size() == CHUNK_SIZE || (record == null && !records.isEmpty())) {
+				String[] chunk = records.toArray(new String[0]);
+				lines.add(Arrays.copyOf(chunkLines, chunk.length));
+				chunks.add(CompletableFuture.supplyAsync(() -> {
+					Object[] parsed = new Object[chunk.length];
+					for (int i = 0; i < chunk.length; i++) {
+						try {
+							parsed[i] = parser.parse(source.parse(chunk[i]));
+						} catch (InputError e) {
+							parsed[i] = e;
+						}
+					}
+					return parsed;
+				}));
+				records.clear();
+			}
+		} while (record != null);
+
+		ArrayList<Object[]> parsed = new ArrayList<Object[]>(chunks.size());
+		for (CompletableFuture<Object[]> chunk : chunks)
+			parsed.add(chunk.join());
+		return parsed;
+	}
+
+	/**
+	 * @param fields The fields of a record
+	 * @param column The column of the field
+	 * @return value The field
+	 * @throws InputError If the field is missing
+	 */
+	private static String field(HashMap<String, String> fields, String column) throws InputError {
+		String value = fields.get(column);
+		if (value == null || value.trim().isEmpty())
+			throw new InputError("Missing " + column + ".");
+		return value.trim();
+	}
+
+	/**
+	 * @param fields The fields of a record
+	 * @param column The column of the field
+	 * @return value The field as a number
+	 * @throws InputError If the field is missing or isn't a number
+	 */
+	private static int integer(HashMap<String, String> fields, String column) throws InputError {
+		try {
+			return Integer.parseInt(field(fields, column));
+		} catch (NumberFormatException e) {
+			throw new InputError("Invalid " + column + ". It must be a number.");
+		}
+	}
+
+	/**
+	 * @param fields The fields of a record
+	 * @param column The column of the field
+	 * @return value The field as a single character
+	 * @throws InputError If the field is missing or longer than a character
+	 */
+	private static char character(HashMap<String, String> fields, String column) throws InputError {
+		String value = field(fields, column);
+		if (value.length() != 1)
+			throw new InputError("Invalid " + column + ". It must be a single character.");
+		return value.charAt(0);
+	}
+
+	/**
+	 * @param fields The fields of a record
+	 * @param column The column of the field
+	 * @return time The field as a date in milliseconds
+	 * @throws InputError If the field is missing or isn't a date
+	 */
+	private static long time(HashMap<String, String> fields, String column) throws InputError {
+		String value = field(fields, column);
+		if (value.indexOf('T') < 0)
+			return Reservation.parseStartTime(value);
+		try {
+			return Instant.parse(value).toEpochMilli();
+		} catch (DateTimeParseException e) {
+			throw new InputError("Invalid " + column + ". It must be an ISO-8601 instant.");
+		}
+	}
+}
+
+/**
+ * Consistent copy of the stores taken without stopping the bookings
+ * [copy-on-write]. The snapshot starts with a cut taken while all the router
+ * locks are held, which only records the routers guarded by each lock and the
+ * number of feedbacks. After the cut, the routers of a lock are copied by the
+ * first thread taking the lock, before anything in them can change, and a
+ * customer is copied before its invoices change. Customers keep the routers
+ * locked until their invoices change, so a booking and its invoice are always
+ * on the same side of the cut. The snapshot thread copies
+ * the rest and writes the copy to temporary files which replace the saved
+ * files once all of them are complete.
+ */
+class StoreSnapshot extends SystemIformationHolder {
+	/**
+	 * Copy of the routers guarded by one lock
+	 */
+	private static class StripeCopy {
+		private final ArrayList<Router> routers = new ArrayList<Router>();
+		private final ArrayList<Reservation> reservations = new ArrayList<Reservation>();
+	}
+
+	/**
+	 * Serial numbers of the routers at the cut [Index: Lock index]
+	 */
+	private final int[][] stripeRouters;
+	/**
+	 * Copies of the routers [Index: Lock index]. Null until copied. Guarded by
+	 * the router locks.
+	 */
+	private final StripeCopy[] copies;
+	/**
+	 * Copies of the customers [Key: Customer's ID, Value: Copy]
+	 */
+	private final ConcurrentHashMap<Integer, Customer> customers = new ConcurrentHashMap<Integer, Customer>();
+	/**
+	 * Boolean to know whether the customers are copied
+	 */
+	private boolean isCopyingCustomers = false;
+	/**
+	 * Boolean to know whether the reservations are copied. They aren't when they
+	 * are kept in the memory-mapped store.
+	 */
+	private final boolean isCopyingReservations;
+	/**
+	 * Number of feedbacks at the cut. -1 if they weren't loaded.
+	 */
+	private final int feedbacks;
+	/**
+	 * The reservation counter at the cut
+	 */
+	private final int counter;
+	/**
+	 * Length of the journal at the cut. -1 if it can't be trimmed.
+	 */
+	private final long journalPosition;
+	/**
+	 * Writes the .ser files
+	 */
+	private final FileManager fileManager = new FileManager();
+	/**
+	 * Writes the .bin files
+	 */
+	private final BinaryCodec binaryCodec = new BinaryCodec();
+
+	/**
+	 * Takes the cut. All the router locks must be held by the caller.
+	 *
+	 * @param isCopyingReservations Boolean to know whether the reservations are
+	 *                              copied
+	 * @throws IOException
+	 */
+	public StoreSnapshot(boolean isCopyingReservations) throws IOException {
+		this.isCopyingReservations = isCopyingReservations;
+		int stripesNumber = routerLocks.getStripesNumber();
+		int[] serialNumbers = router.keys();
+		int[] sizes = new int[stripesNumber];
+		for (int serialNumber : serialNumbers)
+			sizes[routerLocks.stripe(serialNumber)]++;
+		stripeRouters = new int[stripesNumber][];
+		for (int i = 0; i < stripesNumber; i++)
+			stripeRouters[i] = new int[sizes[i]];
+		Arrays.fill(sizes, 0);
+		for (int serialNumber : serialNumbers) {
+			int stripe = routerLocks.stripe(serialNumber);
+			stripeRouters[stripe][sizes[stripe]++] = serialNumber;
+		}
+		copies = new StripeCopy[stripesNumber];
+		counter = Reservation.getCounter();
+
+		// No feedback is journaled while its list is locked. Before the feedbacks
+		// are loaded none is, unless the loading finishes during the cut.
+		if (feedback.isLoaded()) {
+			ArrayList<String> list = feedback.get();
+			synchronized (list) {
+				feedbacks = list.size();
+				journalPosition = journal.mark();
+			}
+		} else {
+			feedbacks = -1;
+			journalPosition = -1;
+		}
+	}
+
+	/**
+	 * Copies the routers guarded by a lock unless they are copied. The lock must
+	 * be held by the caller.
+	 *
+	 * @param stripe The index of the lock
+	 */
+	public void copy(int stripe) {
+		if (copies[stripe] != null)
+			return;
+		StripeCopy copy = new StripeCopy();
+		for (int serialNumber : stripeRouters[stripe]) {
+			copy.routers.add(router.get(serialNumber));
+			if (!isCopyingReservations)
+				continue;
+			RouterSchedule schedule = routerSchedule.get(serialNumber);
+			for (int i = 0; i < schedule.size(); i++) {
+				ReservationView r = reservation.view(schedule.getNumber(i));
+				if (r != null)
+					copy.reservations.add(new Reservation(r.getNumber(), serialNumber, r.getType(),
+							r.getReservationTime(), r.getStartTime(), r.getDuration()));
+			}
+		}
+		copies[stripe] = copy;
+	}
+
+	/**
+	 * Copies the customer unless it's copied. The customer's monitor must be held
+	 * by the caller.
+	 *
+	 * @param c The customer
+	 */
+	public void copy(Customer c) {
+		customers.computeIfAbsent(c.getID(), id -> c.copy());
+	}
+
+	/**
+	 * Copies the routers and customers nobody changed since the cut
+	 *
+	 * @param customer All customers. Null if they aren't loaded
+	 */
+	public void copyAll(Map<Integer, Customer> customer) {
+		for (int i = 0; i < copies.length; i++) {
+			routerLocks.lockStripe(i);
+			try {
+				copy(i);
+			} finally {
+				routerLocks.unlockStripe(i);
+			}
+		}
+		if (customer == null)
+			return;
+		isCopyingCustomers = true;
+		for (Customer c : customer.values())
+			synchronized (c) {
+				copy(c);
+			}
+	}
+
+	/**
+	 * Writes the copy to temporary files. When all of them are written they
+	 * replace the saved files.
+	 *
+	 * @throws IOException
+	 */
+	public void write() throws IOException {
+		HashMap<Integer, Router> routers = new HashMap<Integer, Router>();
+		HashMap<Integer, Reservation> reservations = new HashMap<Integer, Reservation>();
+		for (StripeCopy copy : copies) {
+			for (Router r : copy.routers)
+				routers.put(r.getSerialNumber(), r);
+			for (Reservation r : copy.reservations)
+				reservations.put(r.getNumber(), r);
+		}
+		ArrayList<String> feedbackCopy = new ArrayList<String>();
+		if (feedbacks >= 0) {
+			ArrayList<String> list = feedback.get();
+			synchronized (list) {
+				feedbackCopy.addAll(list.subList(0, feedbacks));
+			}
+		}
+
+		StoreFileBatch batch = new StoreFileBatch();
+		if (FileManager.isBinaryFormat()) {
+			batch.write("router.bin", fileName -> binaryCodec.writeRouters(fileName, routers.values()));
+			if (isCopyingReservations)
+				batch.write("reservation.bin", fileName -> binaryCodec.writeReservations(fileName,
+						new HashReservationStore(reservations), counter));
+			if (feedbacks >= 0)
+				batch.write("feedback.bin", fileName -> binaryCodec.writeFeedback(fileName, feedbackCopy));
+			if (isCopyingCustomers)
+				batch.write("customer.bin", fileName -> binaryCodec.writeCustomers(fileName, customers));
+		} else {
+			batch.write("router.ser", fileName -> fileManager.writeToFile(fileName, routers));
+			if (isCopyingReservations)
+				batch.write("reservation.ser", fileName -> fileManager.writeToFile(fileName, reservations));
+			if (feedbacks >= 0)
+				batch.write("feedback.ser", fileName -> fileManager.writeToFile(fileName, feedbackCopy));
+			batch.write("reservationCounter.ser", fileName -> fileManager.writeToFile(fileName, counter));
+			if (isCopyingCustomers)
+				batch.write("customer.ser",
+						fileName -> fileManager.writeToFile(fileName, new HashMap<Integer, Customer>(customers)));
+		}
+		batch.commit();
+		if (isCopyingReservations)
+			SystemManager.deleteLegacySchedule();
+	}
+
+	/**
+	 * @return journalPosition Length of the journal at the cut. -1 if it can't be
+	 *         trimmed.
+	 */
+	public long getJournalPosition() {
+		return journalPosition;
+	}
+}
+
+/**
+ * Takes the snapshots of the stores on a background thread, every interval and
+ * after a number of changes, so a crash loses at most the changes of one
+ * interval even without the journal
+ */
+class SnapshotScheduler implements Closeable {
+	/**
+	 * The snapshot thread
+	 */
+	private final ScheduledExecutorService writer;
+	/**
+	 * Number of changes after which a snapshot is taken. 0 if disabled.
+	 */
+	private final int changesThreshold;
+	/**
+	 * Number of changes since the last snapshot
+	 */
+	private final AtomicInteger changes = new AtomicInteger();
+	/**
+	 * Boolean to know whether a snapshot is waiting to be taken
+	 */
+	private final AtomicBoolean isRequested = new AtomicBoolean();
+
+	/**
+	 * Starts the snapshot thread
+	 *
+	 * @param interval         Time between two snapshots in seconds. 0 if
+	 *                         disabled
+	 * @param changesThreshold Number of changes after which a snapshot is taken. 0
+	 *                         if disabled
+	 */
+	public SnapshotScheduler(long interval, int changesThreshold) {
+		this.changesThreshold = changesThreshold;
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "snapshot-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (interval > 0)
+			writer.scheduleWithFixedDelay(this::take, interval, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param count Number of changes made to the stores
+	 */
+	public void countChanges(int count) {
+		if (changesThreshold > 0 && changes.addAndGet(count) >= changesThreshold)
+			request();
+	}
+
+	/**
+	 * Takes a snapshot as soon as possible unless one is waiting already
+	 */
+	public void request() {
+		if (!isRequested.compareAndSet(false, true))
+			return;
+		try {
+			writer.execute(this::take);
+		} catch (RejectedExecutionException e) {
+			// Closed. The stores are saved by the checkpoint of closeSystem.
+		}
+	}
+
+	/**
+	 * Takes a snapshot on the snapshot thread
+	 */
+	private void take() {
+		isRequested.set(false);
+		changes.set(0);
+		try {
+			SystemManager.snapshot(SystemManager.savedCustomers());
+		} catch (IOException e) {
+			System.out.print("Failed to take a snapshot\n");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops the snapshot thread after the snapshot being taken
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
+
+/**
+ * Class that manages the system start and close
+ */
+abstract class SystemManager extends SystemIformationHolder {
+	/**
+	 * Used to restrict the calling of start function
+	 */
+	private static boolean isCalled = false;
+	/**
+	 * The only instance of the class
+	 */
+	private static FileManager fileManager = new FileManager();
+	/**
+	 * Codec used when the stores are saved using the binary format
+	 */
+	private static BinaryCodec binaryCodec = new BinaryCodec();
+	/**
+	 * The memory-mapped reservation store. Null if it's not used.
+	 */
+	private static MappedReservationStore mappedStore;
+	/**
+	 * Held while the stores are saved, so a checkpoint and a snapshot never write
+	 * the files at the same time
+	 */
+	private static final Object persistence = new Object();
+	/**
+	 * The snapshot being copied. Null otherwise.
+	 */
+	private static volatile StoreSnapshot snapshot;
+	/**
+	 * Takes the snapshots in the background. Null until started.
+	 */
+	private static volatile SnapshotScheduler snapshots;
+	/**
+	 * All customers. Null until the snapshots are started.
+	 */
+	private static volatile StoreLoader<ConcurrentHashMap<Integer, Customer>> customers;
+
+	/**
+	 * Loads the data from the files to the Information holder class members
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static void startSystem() throws IOException, ClassNotFoundException {
+		if (!isCalled)
+			isCalled = true;
+		else
+			return;
+
+		long start = System.nanoTime();
+		fileManager.checkSystemDataBase();
+
+		if (FileManager.isBinaryFormat())
+			loadBinaryFiles();
+		else
+			loadSerializedFiles();
+
+		journal = new Journal(FileManager.isJournalEnabled());
+		journal.replay();
+		journal.open();
+		fleet.rebuild(router.values());
+		analytics.rebuildBookings();
+		Metrics.START_SYSTEM.record(start);
+	}
+
+	/**
+	 * Loads the stores from the .ser files. The files are read at the same time
+	 * and the stores are set only once all of them were read.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private static void loadSerializedFiles() throws IOException, ClassNotFoundException {
+		StoreFileBatch batch = new StoreFileBatch();
+		Future<IntMap<Router>> routers = batch.read(() -> {
+			if (!fileManager.isFileEmpty("router.ser"))
+				return new IntMap<Router>((HashMap<Integer, Router>) fileManager.readFromFile("router.ser"));
+			return new IntMap<Router>();
+		});
+
+		Future<ReservationStore> reservations = batch.read(() -> {
+			if (FileManager.isMappedStorage())
+				return openMappedStore();
+			ReservationStore store = newHeapStore();
+			if (!fileManager.isFileEmpty("reservation.ser"))
+				for (Reservation r : ((HashMap<Integer, Reservation>) fileManager.readFromFile("reservation.ser"))
+						.values())
+					store.put(r);
+			return store;
+		});
+
+		Future<HashMap<Integer, ArrayList<Integer>>> legacySchedule = batch.read(() -> {
+			if (!fileManager.isFileEmpty("routerSchedule.ser"))
+				return (HashMap<Integer, ArrayList<Integer>>) fileManager.readFromFile("routerSchedule.ser");
+			return new HashMap<Integer, ArrayList<Integer>>();
+		});
+
+		feedback = new StoreLoader<ArrayList<String>>("feedbacks", () -> {
+			if (!fileManager.isFileEmpty("feedback.ser"))
+				return (ArrayList<String>) fileManager.readFromFile("feedback.ser");
+			return new ArrayList<String>();
+		});
+		loadStore(feedback, batch);
+
+		batch.read(() -> {
+			Reservation.setCounter();
+			return null;
+		});
+
+		batch.await();
+		router = batch.get(routers);
+		reservation = batch.get(reservations);
+		restoreRouters(batch.get(legacySchedule), reservation);
+		buildRouterSchedule();
+	}
+
+	/**
+	 * Loads the stores from the .bin files. The files are read at the same time
+	 * and the stores are set only once all of them were read.
+	 * 
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private static void loadBinaryFiles() throws IOException, ClassNotFoundException {
+		StoreFileBatch batch = new StoreFileBatch();
+		Future<HashMap<Integer, Router>> routers = batch.read(() -> binaryCodec.readRouters("router.bin"));
+		Future<ReservationStore> reservations = batch.read(() -> {
+			if (FileManager.isMappedStorage())
+				return openMappedStore();
+			return binaryCodec.readReservations("reservation.bin", newHeapStore());
+		});
+		Future<HashMap<Integer, ArrayList<Integer>>> legacySchedule = batch
+				.read(() -> binaryCodec.readRouterSchedule("routerSchedule.bin"));
+		feedback = new StoreLoader<ArrayList<String>>("feedbacks", () -> binaryCodec.readFeedback("feedback.bin"));
+		loadStore(feedback, batch);
+
+		batch.await();
+		router = new IntMap<Router>(batch.get(routers));
+		reservation = batch.get(reservations);
+		restoreRouters(batch.get(legacySchedule), reservation);
+		buildRouterSchedule();
+	}
+
+	/**
+	 * Loads the store with the other files or on a background thread if lazy
+	 * loading is used
+	 * 
+	 * @param store Loader of the store
+	 * @param batch The files being read
+	 */
+	private static void loadStore(StoreLoader<?> store, StoreFileBatch batch) {
+		if (FileManager.isLazyLoading())
+			store.loadInBackground();
+		else
+			batch.read(() -> {
+				store.load();
+				return null;
+			});
+	}
+
+	/**
+	 * @return reservation An empty heap store. The columnar one if enabled
+	 */
+	private static ReservationStore newHeapStore() {
+		if (FileManager.isColumnarStorage())
+			return new ColumnarReservationStore();
+		return new HashReservationStore();
+	}
+
+	/**
+	 * Opens the memory-mapped reservation store. The first time it's opened, the
+	 * reservations saved in the .ser/.bin file are copied to it.
+	 * 
+	 * @return reservation The memory-mapped reservation store
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings("unchecked")
+	private static ReservationStore openMappedStore() throws IOException, ClassNotFoundException {
+		mappedStore = new MappedReservationStore("./database/reservation.dat");
+		if (mappedStore.isCreated()) {
+			ReservationStore saved;
+			if (FileManager.isBinaryFormat())
+				saved = binaryCodec.readReservations("reservation.bin", new HashReservationStore());
+			else if (!fileManager.isFileEmpty("reservation.ser"))
+				saved = new HashReservationStore(
+						(HashMap<Integer, Reservation>) fileManager.readFromFile("reservation.ser"));
+			else
+				saved = new HashReservationStore();
+			for (Reservation r : saved.values())
+				mappedStore.put(r);
+		}
+		Reservation.updateCounter(mappedStore.getCounter());
+		return mappedStore;
+	}
+
+	/**
+	 * Builds the schedule of every router from the routers kept by the
+	 * reservations. The reservations are grouped by their routers in a single
+	 * parallel pass, then every schedule is sorted once. Reservations of routers
+	 * that don't exist are left out.
+	 */
+	private static void buildRouterSchedule() {
+		Map<Integer, List<Reservation>> groups = reservation.values().parallelStream()
+				.filter(r -> router.containsKey(r.getRouterSerialNumber()))
+				.collect(Collectors.groupingByConcurrent(Reservation::getRouterSerialNumber));
+		routerSchedule = new IntMap<RouterSchedule>();
+		Arrays.stream(router.keys()).parallel().forEach(routerSerialNumber -> {
+			RouterSchedule schedule = new RouterSchedule();
+			List<Reservation> group = groups.get(routerSerialNumber);
+			if (group != null) {
+				group.sort((a, b) -> Long.compare(a.getStartTime(), b.getStartTime()));
+				int[] numbers = new int[group.size()];
+				long[] startDates = new long[group.size()];
+				long[] dueDates = new long[group.size()];
+				for (int i = 0; i < numbers.length; i++) {
+					Reservation r = group.get(i);
+					numbers[i] = r.getNumber();
+					startDates[i] = r.getStartTime();
+					dueDates[i] = r.getDueTime();
+				}
+				schedule.addAll(numbers, startDates, dueDates, numbers.length);
+			}
+			routerSchedule.put(routerSerialNumber, schedule);
+		});
+	}
+
+	/**
+	 * Sets the routers of the reservations saved by the former versions, which
+	 * kept them in the routerSchedule file instead
+	 * 
+	 * @param savedSchedule [Key: Router serial number, Value: Array-list of
+	 *                      Reservation's Number]
+	 * @param store         The reservations
+	 */
+	public static void restoreRouters(HashMap<Integer, ArrayList<Integer>> savedSchedule, ReservationStore store) {
+		for (Map.Entry<Integer, ArrayList<Integer>> entry : savedSchedule.entrySet()) {
+			for (int reservationNumber : entry.getValue()) {
+				Reservation r = store.get(reservationNumber);
+				if (r == null || r.getRouterSerialNumber() != 0)
+					continue;
+				r.setRouterSerialNumber(entry.getKey());
+				store.put(r);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the routerSchedule file of the former versions once the
+	 * reservations were saved with their routers
+	 * 
+	 * @throws IOException
+	 */
+	public static void deleteLegacySchedule() throws IOException {
+		Files.deleteIfExists(
+				Paths.get("./database/routerSchedule" + (FileManager.isBinaryFormat() ? ".bin" : ".ser")));
+	}
+
+	/**
+	 * Loads the data to the files from the Information holder class members
+	 * 
+	 * @param customer All customers saved with the stores. Null if they aren't
+	 *                 loaded
+	 * @throws IOException
+	 */
+	public static void closeSystem(Map<Integer, Customer> customer) throws IOException {
+		long start = System.nanoTime();
+		SnapshotScheduler s = snapshots;
+		snapshots = null;
+		if (s != null)
+			s.close();
+		checkpoint(customer);
+		journal.close();
+		if (mappedStore != null)
+			mappedStore.close(Reservation.getCounter());
+		Metrics.CLOSE_SYSTEM.record(start);
+	}
+
+	/**
+	 * Saves the Information holder class members to the files and empties the
+	 * journal. All the routers are locked while saving so that no change is
+	 * missed by both the files and the emptied journal.
+	 * 
+	 * @throws IOException
+	 */
+	public static void checkpoint() throws IOException {
+		checkpoint(savedCustomers());
+	}
+
+	/**
+	 * Gets the customers to save with the stores. They are loaded first if the
+	 * journal, which is emptied once they are saved, holds some of their invoices.
+	 * 
+	 * @return customer All customers. Null if they aren't loaded
+	 */
+	public static Map<Integer, Customer> savedCustomers() {
+		StoreLoader<ConcurrentHashMap<Integer, Customer>> c = customers;
+		if (c != null && (c.isLoaded() || journal.hasInvoices()))
+			return c.get();
+		return null;
+	}
+
+	/**
+	 * Saves the Information holder class members and the customers to the files
+	 * and empties the journal
+	 * 
+	 * @param customer All customers. Null to keep the saved ones
+	 * @throws IOException
+	 */
+	private static void checkpoint(Map<Integer, Customer> customer) throws IOException {
+		long start = System.nanoTime();
+		boolean isSaved = false;
+		synchronized (persistence) {
+			routerLocks.lockAll();
+			try {
+				// The journal is emptied, so the feedbacks it held must be loaded first
+				if (feedback.isLoaded() || feedback.hasUpdates()) {
+					synchronized (feedback.get()) {
+						saveStores(customer);
+					}
+				} else {
+					saveStores(customer);
+				}
+				isSaved = true;
+			} finally {
+				routerLocks.unlockAll();
+				Metrics.CHECKPOINT.record(start, isSaved);
+			}
+		}
+	}
+
+	/**
+	 * Starts taking the snapshots of the stores in the background
+	 * 
+	 * @param customer All customers
+	 */
+	public static void startSnapshots(StoreLoader<ConcurrentHashMap<Integer, Customer>> customer) {
+		customers = customer;
+		snapshots = new SnapshotScheduler(FileManager.getSnapshotInterval(), FileManager.getSnapshotMutations());
+	}
+
+	/**
+	 * Saves a consistent copy of the stores and the customers without stopping
+	 * the bookings. The router locks are all held only to take the cut, the copy
+	 * is written after they are released. The journal records saved by the
+	 * snapshot are removed afterwards.
+	 * 
+	 * @param customer All customers. Null if they aren't loaded
+	 * @throws IOException
+	 */
+	public static void snapshot(Map<Integer, Customer> customer) throws IOException {
+		long start = System.nanoTime();
+		boolean isSaved = false;
+		synchronized (persistence) {
+			try {
+				StoreSnapshot s;
+				routerLocks.lockAll();
+				try {
+					s = new StoreSnapshot(mappedStore == null);
+					snapshot = s;
+					routerLocks.setListener(s::copy);
+				} finally {
+					routerLocks.unlockAll();
+				}
+				try {
+					s.copyAll(customer);
+				} finally {
+					routerLocks.setListener(null);
+					snapshot = null;
+				}
+				s.write();
+				if (mappedStore != null)
+					mappedStore.force(Reservation.getCounter());
+				if (s.getJournalPosition() >= 0)
+					journal.trim(s.getJournalPosition());
+				isSaved = true;
+			} finally {
+				Metrics.SNAPSHOT.record(start, isSaved);
+			}
+		}
+	}
+
+	/**
+	 * Copies the customer to the snapshot being copied if any. Called by the
+	 * customer before its invoices change.
+	 * 
+	 * @param c The customer. Its monitor must be held by the caller.
+	 */
+	public static void beforeChange(Customer c) {
+		StoreSnapshot s = snapshot;
+		if (s != null)
+			s.copy(c);
+	}
+
+	/**
+	 * @param count Number of changes made to the stores
+	 */
+	public static void countChanges(int count) {
+		SnapshotScheduler s = snapshots;
+		if (s != null)
+			s.countChanges(count);
+	}
+
+	/**
+	 * Saves the stores so the journal can be emptied. Uses a background snapshot
+	 * when they are enabled, a checkpoint otherwise.
+	 * 
+	 * @throws IOException
+	 */
+	public static void compact() throws IOException {
+		SnapshotScheduler s = snapshots;
+		if (s != null)
+			s.request();
+		else
+			checkpoint();
+	}
+
+	/**
+	 * Saves the Information holder class members to the files and empties the
+	 * journal. The files are written at the same time and replace the saved ones
+	 * only once all of them were written.
+	 * 
+	 * @param customer All customers. Null to keep the saved ones
+	 * @throws IOException
+	 */
+	private static void saveStores(Map<Integer, Customer> customer) throws IOException {
+		int counter = Reservation.getCounter();
+		if (mappedStore != null)
+			mappedStore.force(counter);
+		StoreFileBatch batch = new StoreFileBatch();
+		if (FileManager.isBinaryFormat()) {
+			batch.write("router.bin", fileName -> binaryCodec.writeRouters(fileName, router.values()));
+			if (mappedStore == null)
+				batch.write("reservation.bin",
+						fileName -> binaryCodec.writeReservations(fileName, reservation, counter));
+			if (feedback.isLoaded())
+				batch.write("feedback.bin", fileName -> binaryCodec.writeFeedback(fileName, feedback.get()));
+			if (customer != null)
+				batch.write("customer.bin", fileName -> binaryCodec.writeCustomers(fileName, customer));
+		} else {
+			batch.write("router.ser", fileName -> fileManager.writeToFile(fileName, router.toMap()));
+			if (mappedStore == null)
+				batch.write("reservation.ser", fileName -> fileManager.writeToFile(fileName, reservation.toMap()));
+			if (feedback.isLoaded())
+				batch.write("feedback.ser", fileName -> fileManager.writeToFile(fileName, feedback.get()));
+			batch.write("reservationCounter.ser", fileName -> fileManager.writeToFile(fileName, counter));
+			if (customer != null)
+				batch.write("customer.ser",
+						fileName -> fileManager.writeToFile(fileName, new HashMap<Integer, Customer>(customer)));
+		}
+		batch.commit();
+		if (mappedStore == null)
+			deleteLegacySchedule();
+		journal.truncate();
+	}
+
+}
+
+/**
+ * Handle all needed functions by all users
+ */
+abstract class UserSystemManager extends SystemIformationHolder {
+
+	/**
+	 * Function to update all tracked records. Edit the reservation's records. The
+	 * router's lock must be held by the caller.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param r                  Reservation object
+	 * @param operation          [Operation '+': to add, Operation '-': to delete]
+	 * @return boolean Returns true if the system is updated successfully
+	 */
+	protected final boolean systemUpdate(Integer routerSerialNumber, Reservation r, char operation) {
+		if (operation == '+') {
+			if (!routerExists(routerSerialNumber))
+				return false;
+			r.setRouterSerialNumber(routerSerialNumber);
+			reservation.put(r);
+			routerSchedule.get(routerSerialNumber).add(r.getNumber(), r.getStartTime(),
+					r.getDueTime());
+			analytics.addBooking(routerSerialNumber, r.getStartTime(), r.getDueTime());
+			fleet.occupy(routerSerialNumber, r.getStartTime(), r.getDueTime());
+			journal.logAddReservation(routerSerialNumber, r);
+			return true;
+		} else if (operation == '-') {
+			if (!reservation.containsKey(r.getNumber()))
+				return false;
+			reservation.remove(r.getNumber());
+			if (!routerSchedule.get(routerSerialNumber).remove(r.getNumber(), r.getStartTime()))
+				return false;
+			analytics.removeBooking(routerSerialNumber, r.getStartTime(), r.getDueTime());
+			fleet.release(routerSerialNumber, r.getStartTime(), r.getDueTime());
+			journal.logCancelReservation(routerSerialNumber, r.getNumber());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check if there's a router that has the given serial number.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @return boolean Returns true if the router exits
+	 */
+	protected final boolean routerExists(Integer routerSerialNumber) {
+		return router.containsKey(routerSerialNumber);
+	}
+
+}
+
+/**
+ * Class that holds functionalities needed by customers
+ */
+class CustomerSystemManager extends UserSystemManager {
+	/**
+	 * The only instance of the class. It holds no state, so it's shared by all the
+	 * sessions.
+	 */
+	private static final CustomerSystemManager customerSystemManager = new CustomerSystemManager();
+
+	/**
+	 * Prevents making objects from the class
+	 */
+	private CustomerSystemManager() {
+	}
+
+	/**
+	 * @return customerSystemManager The only instance of the class
+	 */
+	public static CustomerSystemManager getInstance() {
+		return customerSystemManager;
+	}
+
+	/**
+	 * Checks if the router available by the given date.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          start date in milliseconds
+	 * @param endDate            due date in milliseconds
+	 * @return boolean Returns true if available
+	 */
+	private boolean isDateAvailable(Integer routerSerialNumber, long startDate, long endDate) {
+		return isDateAvailable(routerSerialNumber, startDate, endDate, 0);
+	}
+
+	/**
+	 * Checks if the router available by the given date ignoring one of its
+	 * reservations. Uses the router's schedule.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param startDate          start date in milliseconds
+	 * @param endDate            due date in milliseconds
+	 * @param reservationNumber  The reservation to be ignored
+	 * @return boolean Returns true if available
+	 */
+	private boolean isDateAvailable(Integer routerSerialNumber, long startDate, long endDate,
+			int reservationNumber) {
+		long start = System.nanoTime();
+		AvailabilityCheckEvent event = new AvailabilityCheckEvent();
+		event.begin();
+		RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+		boolean isAvailable = schedule.isAvailable(startDate, endDate, reservationNumber);
+		Metrics.IS_DATE_AVAILABLE.record(start);
+		if (event.shouldCommit()) {
+			event.routerSerialNumber = routerSerialNumber;
+			event.scheduleSize = schedule.size();
+			event.startDate = startDate;
+			event.dueDate = endDate;
+			event.isAvailable = isAvailable;
+			event.commit();
+		}
+		return isAvailable;
+	}
+
+	/**
+	 * Creates an invoice.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param r                  Reservation object
+	 * @param isResident         Boolean to know weather the customer is resident or
+	 *                           not
+	 * @return Invoice Used by the customer to reserve the router
+	 */
+	private Invoice createInvoice(Integer routerSerialNumber, Reservation r, boolean isResident) {
+		float discount = 0f;
+		if (isResident)
+			discount = 0.25f;
+		return new Invoice(router.get(routerSerialNumber), r, discount);
+	}
+
+	/**
+	 * Makes a reservation for the customer.
+	 * 
+	 * @param routerSerialNumber Serial number of the router
+	 * @param r                  The validated reservation
+	 * @param isResident         Boolean to know weather the customer is resident or
+	 *                           not
+	 * @return Invoice Used by the customer to reserve the router
+	 * @throws RentalError If the router doesn't exist or isn't available
+	 */
+	public Invoice makeReservation(int routerSerialNumber, Reservation r, boolean isResident) throws RentalError {
+		long start = System.nanoTime();
+		ReservationEvent event = new ReservationEvent();
+		event.begin();
+		boolean isMade = false;
+		routerLocks.lock(routerSerialNumber);
+		try {
+			requireRouter(routerSerialNumber);
+			if (!isDateAvailable(routerSerialNumber, r.getStartTime(), r.getDueTime()))
+				throw new RentalError(RentalError.Reason.ROUTER_UNAVAILABLE, "The router isn't available.");
+
+			systemUpdate(routerSerialNumber, r, '+');
+			isMade = true;
+			return createInvoice(routerSerialNumber, r, isResident);
+		} finally {
+			routerLocks.unlock(routerSerialNumber);
+			Metrics.MAKE_RESERVATION.record(start, isMade);
+			(isMade ? Metrics.RESERVATIONS_MADE : Metrics.RESERVATIONS_REFUSED).increment();
+			event.report("create", routerSerialNumber, r.getNumber(), isMade ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Makes a batch of reservations. The reservations are grouped by their routers
+	 * and each group is sorted once by the start dates, so a reservation only has
+	 * to be checked against the schedule and the last accepted reservation of its
+	 * group. All the routers of the batch are locked together and the accepted
+	 * reservations are merged into the schedules and journaled at once.
+	 * 
+	 * @param requests   The reservations. Each one holds its outcome afterwards
+	 * @param isResident Boolean to know weather the customer is resident or not
+	 * @return accepted Number of the accepted reservations
+	 */
+	public int makeReservations(List<ReservationRequest> requests, boolean isResident) {
+		long start = System.nanoTime();
+		ReservationEvent event = new ReservationEvent();
+		event.begin();
+		Reservation[] made = new Reservation[requests.size()];
+		HashMap<Integer, ArrayList<Integer>> groups = new HashMap<Integer, ArrayList<Integer>>();
+		for (int i = 0; i < made.length; i++) {
+			ReservationRequest request = requests.get(i);
+			try {
+				made[i] = new Reservation(request.getType(), request.getStartDate(), request.getDuration());
+				groups.computeIfAbsent(request.getRouterSerialNumber(), k -> new ArrayList<Integer>()).add(i);
+			} catch (InputError e) {
+				request.refuse(e);
+			}
+		}
+
+		int[] routerSerialNumbers = new int[groups.size()];
+		int n = 0;
+		for (Integer routerSerialNumber : groups.keySet())
+			routerSerialNumbers[n++] = routerSerialNumber;
+		ArrayList<Integer> journaledRouters = new ArrayList<Integer>();
+		ArrayList<Reservation> journaled = new ArrayList<Reservation>();
+		routerLocks.lock(routerSerialNumbers);
+		try {
+			for (int routerSerialNumber : routerSerialNumbers) {
+				ArrayList<Integer> group = groups.get(routerSerialNumber);
+				RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+				if (schedule == null || !routerExists(routerSerialNumber)) {
+					for (int i : group)
+						requests.get(i).refuse(
+								new RentalError(RentalError.Reason.ROUTER_NOT_FOUND, "Serial Number not found."));
+					continue;
+				}
+
+				group.sort((a, b) -> Long.compare(made[a].getStartTime(), made[b].getStartTime()));
+				int[] numbers = new int[group.size()];
+				long[] startDates = new long[group.size()];
+				long[] dueDates = new long[group.size()];
+				int count = 0;
+				long lastDueDate = Long.MIN_VALUE;
+				for (int i : group) {
+					Reservation r = made[i];
+					long startDate = r.getStartTime(), dueDate = r.getDueTime();
+					if (startDate <= lastDueDate || !schedule.isAvailable(startDate, dueDate, 0)) {
+						requests.get(i).refuse(
+								new RentalError(RentalError.Reason.ROUTER_UNAVAILABLE, "The router isn't available."));
+						continue;
+					}
+					lastDueDate = dueDate;
+					numbers[count] = r.getNumber();
+					startDates[count] = startDate;
+					dueDates[count++] = dueDate;
+					r.setRouterSerialNumber(routerSerialNumber);
+					reservation.put(r);
+					analytics.addBooking(routerSerialNumber, startDate, dueDate);
+					fleet.occupy(routerSerialNumber, startDate, dueDate);
+					journaledRouters.add(routerSerialNumber);
+					journaled.add(r);
+					requests.get(i).accept(createInvoice(routerSerialNumber, r, isResident));
+				}
+				schedule.addAll(numbers, startDates, dueDates, count);
+			}
+			journal.logAddReservations(journaledRouters, journaled);
+		} finally {
+			routerLocks.unlock(routerSerialNumbers);
+			Metrics.MAKE_RESERVATIONS.record(start);
+		}
+		Metrics.RESERVATIONS_MADE.add(journaled.size());
+		Metrics.RESERVATIONS_REFUSED.add(made.length - journaled.size());
+		event.report("createBatch", 0, 0, journaled.size());
+		return journaled.size();
+	}
+
+	/**
+	 * @param routerSerialNumber Serial number of the router
+	 * @throws RentalError If the router doesn't exist
+	 */
+	private void requireRouter(int routerSerialNumber) throws RentalError {
+		if (!routerExists(routerSerialNumber))
+			throw new RentalError(RentalError.Reason.ROUTER_NOT_FOUND, "Serial Number not found.");
+	}
+
+	/**
+	 * @param invoice The invoice of the reservation
+	 * @return reservation The reservation of the invoice
+	 * @throws RentalError If the reservation or its router doesn't exist anymore
+	 */
+	private Reservation requireReservation(Invoice invoice) throws RentalError {
+		Reservation r = reservation.get(invoice.getReservationNumber());
+		if (r == null || !routerExists(invoice.getRouterSerialNumber()))
+			throw new RentalError(RentalError.Reason.RESERVATION_NOT_FOUND, "Reservation doesn't exist.");
+		return r;
+	}
+
+	/**
+	 * Extends the reservation depending on the type given first time the
+	 * reservation made [d - w - m]
+	 * 
+	 * @param invoice     The invoice of the reservation
+	 * @param newDuration The new duration of the reservation [the type won't
+	 *                    change]
+	 * @param isResident  Boolean to know whether the customer is resident
+	 * @return Invoice New invoice with the new fees
+	 * @throws InputError  If the new duration isn't greater than the current one
+	 * @throws RentalError If the reservation doesn't exist or the router isn't
+	 *                     available
+	 */
+	public Invoice extendReservation(Invoice invoice, int newDuration, boolean isResident)
+			throws InputError, RentalError {
+		long start = System.nanoTime();
+		ReservationEvent event = new ReservationEvent();
+		event.begin();
+		boolean isExtended = false;
+		routerLocks.lock(invoice.getRouterSerialNumber());
+		try {
+			Reservation r = requireReservation(invoice);
+			if (newDuration <= r.getDuration())
+				throw new InputError("The new duration must be greater than the current duration.");
+			long newDueDate = Reservation.calculateDueTime(r.getStartTime(), r.getType(), newDuration);
+			if (!isDateAvailable(invoice.getRouterSerialNumber(), r.getStartTime(), newDueDate,
+					invoice.getReservationNumber()))
+				throw new RentalError(RentalError.Reason.ROUTER_UNAVAILABLE, "Router isn't available.");
+
+			long dueDate = r.getDueTime();
+			r.setDuration(newDuration);
+			reservation.put(r);
+			routerSchedule.get(invoice.getRouterSerialNumber()).setDueDate(r.getNumber(),
+					r.getStartTime(), r.getDueTime());
+			analytics.addBooking(invoice.getRouterSerialNumber(), dueDate, r.getDueTime());
+			fleet.occupy(invoice.getRouterSerialNumber(), dueDate, r.getDueTime());
+			journal.logExtendReservation(invoice.getRouterSerialNumber(), r);
+			isExtended = true;
+			return createInvoice(invoice.getRouterSerialNumber(), r, isResident);
+		} finally {
+			routerLocks.unlock(invoice.getRouterSerialNumber());
+			Metrics.EXTEND_RESERVATION.record(start, isExtended);
+			event.report("extend", invoice.getRouterSerialNumber(), invoice.getReservationNumber(),
+					isExtended ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Cancel a reservation. Reservations starting in less than two days can't be
+	 * canceled.
+	 * 
+	 * @param invoice Used by the customer to reserve the router
+	 * @return reservation The canceled reservation
+	 * @throws RentalError If the reservation doesn't exist or it's too late to
+	 *                     cancel it
+	 */
+	public Reservation cancelReservation(Invoice invoice) throws RentalError {
+		long start = System.nanoTime();
+		ReservationEvent event = new ReservationEvent();
+		event.begin();
+		boolean isCanceled = false;
+		routerLocks.lock(invoice.getRouterSerialNumber());
+		try {
+			Reservation r = requireReservation(invoice);
+			long timeDiff = r.getStartTime() - System.currentTimeMillis();
+			if (timeDiff < 2 * (1000 * 60 * 60 * 24))
+				throw new RentalError(RentalError.Reason.CANCELLATION_TOO_LATE,
+						"Reservations can't be canceled less than two days before their start.");
+
+			if (!systemUpdate(invoice.getRouterSerialNumber(), r, '-'))
+				throw new RentalError(RentalError.Reason.RESERVATION_NOT_FOUND, "Reservation doesn't exist.");
+			isCanceled = true;
+			return r;
+		} finally {
+			routerLocks.unlock(invoice.getRouterSerialNumber());
+			Metrics.CANCEL_RESERVATION.record(start, isCanceled);
+			event.report("cancel", invoice.getRouterSerialNumber(), invoice.getReservationNumber(),
+					isCanceled ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Change the router model
+	 * 
+	 * @param routerSerialNumber The new router serial number
+	 * @param invoice            The invoice of the reservation
+	 * @param isResident         Boolean to know whether the customer is resident
+	 * @return Invoice New invoice of the new router
+	 * @throws RentalError If any of the routers or the reservation doesn't exist,
+	 *                     or the new router isn't available
+	 */
+	public Invoice changeRouter(int routerSerialNumber, Invoice invoice, boolean isResident) throws RentalError {
+		long start = System.nanoTime();
+		ReservationEvent event = new ReservationEvent();
+		event.begin();
+		boolean isChanged = false;
+		routerLocks.lock(routerSerialNumber, invoice.getRouterSerialNumber());
+		try {
+			requireRouter(routerSerialNumber);
+			Reservation r = requireReservation(invoice);
+			if (!isDateAvailable(routerSerialNumber, r.getStartTime(), r.getDueTime(),
+					invoice.getReservationNumber()))
+				throw new RentalError(RentalError.Reason.ROUTER_UNAVAILABLE, "Router isn't available.");
+			// Move the reservation to the new router's schedule
+			systemUpdate(invoice.getRouterSerialNumber(), r, '-');
+			systemUpdate(routerSerialNumber, r, '+');
+
+			isChanged = true;
+			return createInvoice(routerSerialNumber, r, isResident);
+		} finally {
+			routerLocks.unlock(routerSerialNumber, invoice.getRouterSerialNumber());
+			Metrics.CHANGE_ROUTER.record(start, isChanged);
+			event.report("change", routerSerialNumber, invoice.getReservationNumber(), isChanged ? 1 : 0);
 		}
+	}
 
-		if (!fileManager.isFileEmpty("routerSchedule.ser")) {
-			routerSchedule = (HashMap<Integer, ArrayList<Integer>>) fileManager.readFromFile("routerSchedule.ser");
-		} else {
-			routerSchedule = new HashMap<Integer, ArrayList<Integer>>();
+	/**
+	 * Receives the feedback from the customer
+	 * 
+	 * @param feedback The feedback sent from the customer
+	 */
+	public void getFeedback(String feedback) {
+		ArrayList<String> feedbacks = SystemManager.feedback.get();
+		synchronized (feedbacks) {
+			feedbacks.add(feedback);
+			journal.logFeedback(feedbacks.size() - 1, feedback);
 		}
+	}
+}
 
-		if (!fileManager.isFileEmpty("feedback.ser")) {
-			feedback = (ArrayList<String>) fileManager.readFromFile("feedback.ser");
-		} else {
-			feedback = new ArrayList<String>();
+/**
+ * Creates Customer
+ */
+class Customer implements Serializable {
+	/**
+	 * serialVersionUID is used in serializable classes
+	 */
+	private static final long serialVersionUID = 5L;
+	/**
+	 * Array of invoices
+	 */
+	private ArrayList<Invoice> invoice;
+	/**
+	 * Boolean to know whether the customer is resident
+	 */
+	private final boolean isResident;
+	/**
+	 * ID of the customer
+	 */
+	private final int id;
+	/**
+	 * Instance of the CustomerSystemManager to interact with the system
+	 */
+	private static CustomerSystemManager customerSystemManager = CustomerSystemManager.getInstance();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param id         ID of the customer
+	 * @param isResident Boolean to know whether the customer is resident
+	 */
+	public Customer(int id, boolean isResident) {
+		this.isResident = isResident;
+		this.invoice = new ArrayList<Invoice>();
+		this.id = id;// random id number from 1 to 10
+	}
+
+	/**
+	 * @return isResident Boolean to know whether the customer is resident
+	 */
+	public boolean isResident() {
+		return isResident;
+	}
+
+	/**
+	 * @return id Customer's ID
+	 */
+	public int getID() {
+		return id;
+	}
+
+	/**
+	 * @return invoice Array-list of all the invoices
+	 */
+	public ArrayList<Invoice> getInvoices() {
+		return invoice;
+	}
+
+	/**
+	 * @return customer A copy of the customer with its own list of the invoices.
+	 *         The invoices are shared since they never change.
+	 */
+	public synchronized Customer copy() {
+		Customer c = new Customer(id, isResident);
+		c.invoice.addAll(invoice);
+		return c;
+	}
+
+	/**
+	 * @param index The number of the invoice [1 - invoices number]
+	 * @return invoice The invoice
+	 * @throws RentalError If there's no invoice with this number
+	 */
+	public synchronized Invoice getInvoice(int index) throws RentalError {
+		if (index < 1 || index > invoice.size())
+			throw new RentalError(RentalError.Reason.INVOICE_NOT_FOUND, "Invoice not found.");
+		return invoice.get(index - 1);
+	}
+
+	/**
+	 * Rent a router
+	 * 
+	 * @param routerSerialNumber serial number of the wanted router
+	 * @param r                  The validated reservation
+	 * @return invoice The new invoice
+	 * @throws RentalError If the router doesn't exist or isn't available
+	 */
+	public synchronized Invoice rentRouter(int routerSerialNumber, Reservation r) throws RentalError {
+		// The router stays locked until the invoice is added so a snapshot sees both
+		// or neither
+		SystemManager.routerLocks.lock(routerSerialNumber);
+		try {
+			Invoice i = customerSystemManager.makeReservation(routerSerialNumber, r, isResident);
+			SystemManager.beforeChange(this);
+			invoice.add(i);
+			SystemManager.journal.logPutInvoices(this, Arrays.asList(i));
+			SystemManager.analytics.addRevenue(id, i);
+			return i;
+		} finally {
+			SystemManager.routerLocks.unlock(routerSerialNumber);
+		}
+	}
+
+	/**
+	 * Adds the invoices of imported reservations
+	 * 
+	 * @param invoices The invoices
+	 */
+	public synchronized void importInvoices(List<Invoice> invoices) {
+		SystemManager.beforeChange(this);
+		invoice.addAll(invoices);
+		for (Invoice i : invoices)
+			SystemManager.analytics.addRevenue(id, i);
+	}
+
+	/**
+	 * Rent many routers at once
+	 * 
+	 * @param requests The reservations. Each one holds its outcome afterwards
+	 * @return accepted Number of the accepted reservations
+	 */
+	public synchronized int rentRouters(List<ReservationRequest> requests) {
+		int[] routerSerialNumbers = new int[requests.size()];
+		for (int i = 0; i < routerSerialNumbers.length; i++)
+			routerSerialNumbers[i] = requests.get(i).getRouterSerialNumber();
+		SystemManager.routerLocks.lock(routerSerialNumbers);
+		try {
+			int accepted = customerSystemManager.makeReservations(requests, isResident);
+			SystemManager.beforeChange(this);
+			ArrayList<Invoice> added = new ArrayList<Invoice>(accepted);
+			for (ReservationRequest request : requests)
+				if (request.getInvoice() != null) {
+					invoice.add(request.getInvoice());
+					added.add(request.getInvoice());
+					SystemManager.analytics.addRevenue(id, request.getInvoice());
+				}
+			SystemManager.journal.logPutInvoices(this, added);
+			return accepted;
+		} finally {
+			SystemManager.routerLocks.unlock(routerSerialNumbers);
+		}
+	}
+
+	/**
+	 * Extends the reservation depending on the type given first time the
+	 * reservation made [d - w - m]
+	 * 
+	 * @param index    The number of the invoice [1 - invoices number]
+	 * @param duration The new duration
+	 * @return invoice The new invoice
+	 * @throws InputError  If the new duration isn't greater than the current one
+	 * @throws RentalError If the reservation can't be extended
+	 */
+	public synchronized Invoice extendRentDuration(int index, int duration) throws InputError, RentalError {
+		Invoice previous = getInvoice(index);
+		SystemManager.routerLocks.lock(previous.getRouterSerialNumber());
+		try {
+			Invoice i = customerSystemManager.extendReservation(previous, duration, isResident);
+			SystemManager.beforeChange(this);
+			invoice.set(index - 1, i);
+			SystemManager.journal.logPutInvoices(this, Arrays.asList(i));
+			SystemManager.analytics.replaceRevenue(id, previous, i);
+			return i;
+		} finally {
+			SystemManager.routerLocks.unlock(previous.getRouterSerialNumber());
+		}
+	}
+
+	/**
+	 * Cancel a reservation
+	 * 
+	 * @param index The number of the invoice [1 - invoices number]
+	 * @throws RentalError If the reservation can't be canceled
+	 */
+	public synchronized void cancelRent(int index) throws RentalError {
+		Invoice previous = getInvoice(index);
+		SystemManager.routerLocks.lock(previous.getRouterSerialNumber());
+		try {
+			Reservation r = customerSystemManager.cancelReservation(previous);
+			SystemManager.beforeChange(this);
+			invoice.remove(index - 1);
+			SystemManager.journal.logRemoveInvoice(id, previous.getReservationNumber());
+			SystemManager.analytics.removeRevenue(id, previous, r.getStartTime());
+		} finally {
+			SystemManager.routerLocks.unlock(previous.getRouterSerialNumber());
+		}
+	}
+
+	/**
+	 * Change router model
+	 * 
+	 * @param routerSerialNumber serial number of the new router
+	 * @param index              The number of the invoice [1 - invoices number]
+	 * @return invoice The new invoice
+	 * @throws RentalError If the router can't be changed
+	 */
+	public synchronized Invoice changeModel(int routerSerialNumber, int index) throws RentalError {
+		Invoice previous = getInvoice(index);
+		SystemManager.routerLocks.lock(routerSerialNumber, previous.getRouterSerialNumber());
+		try {
+			Invoice i = customerSystemManager.changeRouter(routerSerialNumber, previous, isResident);
+			SystemManager.beforeChange(this);
+			invoice.set(index - 1, i);
+			SystemManager.journal.logPutInvoices(this, Arrays.asList(i));
+			SystemManager.analytics.replaceRevenue(id, previous, i);
+			return i;
+		} finally {
+			SystemManager.routerLocks.unlock(routerSerialNumber, previous.getRouterSerialNumber());
+		}
+	}
+
+	/**
+	 * Send feedback to the system
+	 * 
+	 * @param feedback The feedback
+	 */
+	public void sendFeedback(String feedback) {
+		customerSystemManager.getFeedback(feedback);
+	}
+}
+
+/**
+ * Class that holds functionalities needed by the admins
+ */
+class AdminstratorSystemManager extends UserSystemManager {
+	/**
+	 * The only instance of the class. It holds no state, so it's shared by all the
+	 * sessions.
+	 */
+	private static final AdminstratorSystemManager adminstratorSystemManager = new AdminstratorSystemManager();
+
+	/**
+	 * Prevents making instances of the class
+	 */
+	private AdminstratorSystemManager() {
+	}
+
+	/**
+	 * @return adminstratorSystemManager The only instance of the class
+	 */
+	public static AdminstratorSystemManager getInstance() {
+		return adminstratorSystemManager;
+	}
+
+	/**
+	 * Add new router to the system
+	 * 
+	 * @param r Router object
+	 * @throws RentalError If a router with the same serial number exists
+	 */
+	public void addRouter(Router r) throws RentalError {
+		long start = System.nanoTime();
+		boolean isAdded = false;
+		routerLocks.lock(r.getSerialNumber());
+		try {
+			if (routerExists(r.getSerialNumber()))
+				throw new RentalError(RentalError.Reason.ROUTER_EXISTS, "Router exists.");
+
+			router.put(r.getSerialNumber(), r);
+			routerSchedule.put(r.getSerialNumber(), new RouterSchedule());
+			fleet.add(r);
+			journal.logAddRouter(r);
+			isAdded = true;
+		} finally {
+			routerLocks.unlock(r.getSerialNumber());
+			Metrics.ADD_ROUTER.record(start, isAdded);
+		}
+	}
+
+	/**
+	 * Removes a router from the system with all its reservations
+	 * 
+	 * @param routerSerialNumber The serial number of the router
+	 * @throws RentalError If the router doesn't exist
+	 */
+	public void removeRouter(int routerSerialNumber) throws RentalError {
+		long start = System.nanoTime();
+		boolean isRemoved = false;
+		routerLocks.lock(routerSerialNumber);
+		try {
+			if (!routerExists(routerSerialNumber))
+				throw new RentalError(RentalError.Reason.ROUTER_NOT_FOUND, "Router doesn't exist.");
+
+			router.remove(routerSerialNumber);
+			RouterSchedule schedule = routerSchedule.get(routerSerialNumber);
+			for (int i = 0; i < schedule.size(); i++) {
+				reservation.remove(schedule.getNumber(i));
+				analytics.removeBooking(routerSerialNumber, schedule.getStartDate(i), schedule.getDueDate(i));
+			}
+			fleet.remove(routerSerialNumber);
+			routerSchedule.remove(routerSerialNumber);
+			journal.logRemoveRouter(routerSerialNumber);
+			isRemoved = true;
+		} finally {
+			routerLocks.unlock(routerSerialNumber);
+			Metrics.REMOVE_ROUTER.record(start, isRemoved);
 		}
+	}
+}
+
+/**
+ * Creates Administrator
+ */
+class Administrator {
+	/**
+	 * Instance of the AdminstratorSystemManager to interact with the system
+	 */
+	private static AdminstratorSystemManager adminstratorSystemManager;
+	/**
+	 * Admin's ID
+	 */
+	private final int id;
+
+	/**
+	 * Makes admin'n instance
+	 * 
+	 * @param id The ID of the admin
+	 */
+	public Administrator(int id) {
+		adminstratorSystemManager = AdminstratorSystemManager.getInstance();
+		this.id = id;
+	}
+
+	/**
+	 * @return id The id of the admin
+	 */
+	public int getID() {
+		return id;
+	}
+
+	/**
+	 * Add new router to the system
+	 * 
+	 * @param r The validated router
+	 * @throws RentalError If a router with the same serial number exists
+	 */
+	public void addRouter(Router r) throws RentalError {
+		adminstratorSystemManager.addRouter(r);
+	}
+
+	/**
+	 * Removes a router from the system
+	 * 
+	 * @param serialNumber The serial number of the router
+	 * @throws RentalError If the router doesn't exist
+	 */
+	public void removeRouter(int serialNumber) throws RentalError {
+		adminstratorSystemManager.removeRouter(serialNumber);
+	}
+}
+
+/**
+ * Non-interactive API of the system. Every operation takes its parameters and
+ * returns its result, nothing is read from the console. Invalid parameters
+ * throw InputError and refused requests throw RentalError. The console menu and
+ * the server are adapters over this class.
+ */
+class RentalService extends SystemIformationHolder {
+	/**
+	 * All customers. May be loaded on the first access.
+	 */
+	private final StoreLoader<ConcurrentHashMap<Integer, Customer>> customer;
+	/**
+	 * The only admin in the system
+	 */
+	private final Administrator administrator;
+	/**
+	 * Writes the exported files
+	 */
+	private final SystemDataExporter exporter = new SystemDataExporter();
+	/**
+	 * Reads the imported files
+	 */
+	private final SystemDataImporter importer = new SystemDataImporter();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param customer      All customers
+	 * @param administrator The only admin in the system
+	 */
+	public RentalService(StoreLoader<ConcurrentHashMap<Integer, Customer>> customer, Administrator administrator) {
+		this.customer = customer;
+		this.administrator = administrator;
+	}
+
+	/**
+	 * Signs-in a customer. An existing customer is returned as is.
+	 * 
+	 * @param id         ID of the customer
+	 * @param isResident Boolean to know whether the customer is resident
+	 * @return customer The customer having the ID
+	 */
+	public Customer signIn(int id, boolean isResident) {
+		customer.get().putIfAbsent(id, new Customer(id, isResident));
+		return customer.get().get(id);
+	}
+
+	/**
+	 * @param id ID of the customer
+	 * @return boolean Returns true if there's a customer having the ID
+	 */
+	public boolean customerExists(int id) {
+		return customer.get().containsKey(id);
+	}
+
+	/**
+	 * @param id ID of the customer
+	 * @return customer The customer having the ID
+	 * @throws RentalError If the ID is wrong
+	 */
+	public Customer logIn(int id) throws RentalError {
+		Customer c = customer.get().get(id);
+		if (c == null)
+			throw new RentalError(RentalError.Reason.CUSTOMER_NOT_FOUND, "Wrong ID");
+		return c;
+	}
+
+	/**
+	 * @param id ID of the admin
+	 * @throws RentalError If the ID is wrong
+	 */
+	public void logInAdmin(int id) throws RentalError {
+		if (id != administrator.getID())
+			throw new RentalError(RentalError.Reason.NOT_ALLOWED, "Wrong ID");
+	}
 
-		Reservation.setCounter();
+	/**
+	 * Rents a router
+	 * 
+	 * @param c                  The customer
+	 * @param routerSerialNumber Serial number of the router
+	 * @param type               Type of reservation [d - w - m]
+	 * @param startDate          The start date [day-month-year at hour:minutes
+	 *                           PM/AM]
+	 * @param duration           The duration of the reservation
+	 * @return invoice The invoice of the reservation
+	 * @throws InputError  If any of the reservation information is invalid
+	 * @throws RentalError If the router doesn't exist or isn't available
+	 */
+	public Invoice rentRouter(Customer c, int routerSerialNumber, char type, String startDate, int duration)
+			throws InputError, RentalError {
+		return rentRouter(c, routerSerialNumber, type, Reservation.parseStartDate(startDate), duration);
 	}
 
 	/**
-	 * Loads the data to the files from the Information holder class members
+	 * Rents a router
 	 * 
-	 * @throws IOException
-	 */
-	public static void closeSystem() throws IOException {
-		fileManager.writeToFile("router.ser", router);
-		fileManager.writeToFile("reservation.ser", reservation);
-		fileManager.writeToFile("routerSchedule.ser", routerSchedule);
-		fileManager.writeToFile("feedback.ser", feedback);
-		fileManager.writeToFile("reservationCounter.ser", Reservation.getCounter());
+	 * @param c                  The customer
+	 * @param routerSerialNumber Serial number of the router
+	 * @param type               Type of reservation [d - w - m]
+	 * @param startDate          The start date
+	 * @param duration           The duration of the reservation
+	 * @return invoice The invoice of the reservation
+	 * @throws InputError  If any of the reservation information is invalid
+	 * @throws RentalError If the router doesn't exist or isn't available
+	 */
+	public Invoice rentRouter(Customer c, int routerSerialNumber, char type, Date startDate, int duration)
+			throws InputError, RentalError {
+		return c.rentRouter(routerSerialNumber, new Reservation(type, startDate, duration));
 	}
 
-}
-
-/**
- * Handle all needed functions by all users
- */
-abstract class UserSystemManager extends SystemIformationHolder {
-
 	/**
-	 * Function to update all tracked records. Edit the reservation's records.
+	 * Rents many routers at once. Each reservation is accepted or refused on its
+	 * own.
 	 * 
-	 * @param routerSerialNumber Serial number of the router
-	 * @param r                  Reservation object
-	 * @param operation          [Operation '+': to add, Operation '-': to delete]
-	 * @return boolean Returns true if the system is updated successfully
+	 * @param c        The customer
+	 * @param requests The reservations. Each one holds its invoice or the reason
+	 *                 of refusing it afterwards
+	 * @return accepted Number of the accepted reservations
 	 */
-	protected final boolean systemUpdate(Integer routerSerialNumber, Reservation r, char operation) {
-		if (operation == '+') {
-			reservation.put(r.getNumber(), r);
-			routerSchedule.get(routerSerialNumber).add(r.getNumber());
-			sortSchedule(routerSchedule.get(routerSerialNumber));
-			return true;
-		} else if (operation == '-') {
-			if (!reservation.containsKey(r.getNumber())) {
-				System.out.print("Reservation doesn't exist\n");
-				return false;
-			}
-			reservation.remove(r.getNumber());
-			Integer removeNumber = r.getNumber();
-			return routerSchedule.get(routerSerialNumber).remove(removeNumber);
-		}
-		return false;
+	public int rentRouters(Customer c, List<ReservationRequest> requests) {
+		return c.rentRouters(requests);
 	}
 
 	/**
-	 * Sort router's reservation by start date.
-	 * 
-	 * @param reservationList Takes a list of reservations of a router
-	 * 
-	 * @see <a href=
-	 *      "https://stackoverflow.com/questions/18441846/how-to-sort-an-arraylist-in-java">
-	 *      How to sort an ArrayList in Java </a>
+	 * @param c        The customer
+	 * @param index    The number of the invoice [1 - invoices number]
+	 * @param duration The new duration
+	 * @return invoice The new invoice
+	 * @throws InputError  If the new duration isn't greater than the current one
+	 * @throws RentalError If the reservation can't be extended
 	 */
-	private void sortSchedule(ArrayList<Integer> reservationList) {
-		Collections.sort(reservationList, new Comparator<Integer>() {
-			@Override
-			public int compare(Integer arg0, Integer arg1) {
-				return reservation.get(arg0).getStartDate().compareTo(reservation.get(arg1).getStartDate());
-			}
-		});
+	public Invoice extendReservation(Customer c, int index, int duration) throws InputError, RentalError {
+		return c.extendRentDuration(index, duration);
 	}
 
 	/**
-	 * Check if there's a router that has the given serial number.
-	 * 
-	 * @param routerSerialNumber Serial number of the router
-	 * @return boolean Returns true if the router exits
+	 * @param c     The customer
+	 * @param index The number of the invoice [1 - invoices number]
+	 * @throws RentalError If the reservation can't be canceled
 	 */
-	protected final boolean routerExists(Integer routerSerialNumber) {
-		return router.containsKey(routerSerialNumber);
+	public void cancelReservation(Customer c, int index) throws RentalError {
+		c.cancelRent(index);
 	}
 
-}
+	/**
+	 * @param c                  The customer
+	 * @param index              The number of the invoice [1 - invoices number]
+	 * @param routerSerialNumber Serial number of the new router
+	 * @return invoice The new invoice
+	 * @throws RentalError If the router can't be changed
+	 */
+	public Invoice changeRouter(Customer c, int index, int routerSerialNumber) throws RentalError {
+		return c.changeModel(routerSerialNumber, index);
+	}
 
-/**
- * Class that holds functionalities needed by customers
- */
-class CustomerSystemManager extends UserSystemManager {
 	/**
-	 * The only instance of the class
+	 * @param c        The customer
+	 * @param feedback The feedback
+	 * @throws InputError If the feedback is empty
 	 */
-	private static CustomerSystemManager customerSystemManager;
+	public void sendFeedback(Customer c, String feedback) throws InputError {
+		if (feedback == null || feedback.trim().isEmpty())
+			throw new InputError("Empty feedback");
+		c.sendFeedback(feedback);
+	}
+
 	/**
-	 * Makes sure that there's only one instance used
+	 * @param c The customer
+	 * @return invoices Copy of the customer's invoices
 	 */
-	private static boolean isUsed = false;
+	public ArrayList<Invoice> getInvoices(Customer c) {
+		synchronized (c) {
+			return new ArrayList<Invoice>(c.getInvoices());
+		}
+	}
 
 	/**
-	 * Prevents making objects from the class
+	 * @return routers All routers in the system
 	 */
-	private CustomerSystemManager() {
+	public ArrayList<Router> getRouters() {
+		return new ArrayList<Router>(router.values());
 	}
 
 	/**
-	 * Creates instance of the class and returns it. If it's called again it will
-	 * return null
+	 * Finds the routers that are free during the whole period of a reservation
 	 * 
-	 * @return customerSystemManager The only instance of the class
-	 */
-	public static CustomerSystemManager getInstance() {
-		if (!isUsed) {
-			customerSystemManager = new CustomerSystemManager();
-			isUsed = true;
-			return customerSystemManager;
-		} else
-			return null;
+	 * @param type      Type of reservation [d - w - m]
+	 * @param startDate The start date
+	 * @param duration  The duration of the reservation
+	 * @param model     Router's model [a - z or A - Z]. 0 matches any model
+	 * @param minPorts  Minimum number of ports
+	 * @return routers The free routers ordered by their serial numbers
+	 * @throws InputError If the type, duration or model is invalid
+	 */
+	public ArrayList<Router> findFreeRouters(char type, Date startDate, int duration, char model, int minPorts)
+			throws InputError {
+		type = Reservation.checkType(type);
+		if (duration <= 0)
+			throw new InputError("The duration must be greater than 0.");
+		if (model != 0)
+			model = Router.checkModel(model);
+
+		Date dueDate = Reservation.calculateDueDate(startDate, type, duration);
+		return toRouters(fleet.findFree(startDate.getTime(), dueDate.getTime(), model, minPorts));
 	}
 
 	/**
-	 * Checks if the router available by the given date.
+	 * Filters the routers by model and number of ports
 	 * 
-	 * @param routerSerialNumber Serial number of the router
-	 * @param startDate          start date
-	 * @param endDate            due date
-	 * @return boolean Returns true if available
-	 */
-	private boolean isDateAvailable(Integer routerSerialNumber, Date startDate, Date endDate) {
-		ArrayList<Integer> reservationList = routerSchedule.get(routerSerialNumber);
+	 * @param model    Router's model [a - z or A - Z]. 0 matches any model
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
+	 * @return routers The matching routers ordered by their serial numbers
+	 * @throws InputError If the model is invalid
+	 */
+	public ArrayList<Router> getRouters(char model, int minPorts, int maxPorts) throws InputError {
+		if (model != 0)
+			model = Router.checkModel(model);
+		return toRouters(fleet.find(model, minPorts, maxPorts));
+	}
 
-		for (int i = 0; i < reservationList.size(); i++) {
-			if (!(startDate.after(reservation.get(reservationList.get(i)).getDueDate())
-					|| endDate.before(reservation.get(reservationList.get(i)).getStartDate())))
-				return false;
+	/**
+	 * @param serialNumbers Serial numbers of the routers
+	 * @return routers The routers. Routers removed in the meantime are skipped
+	 */
+	private static ArrayList<Router> toRouters(int[] serialNumbers) {
+		ArrayList<Router> routers = new ArrayList<Router>(serialNumbers.length);
+		for (int serialNumber : serialNumbers) {
+			Router r = router.get(serialNumber);
+			if (r != null)
+				routers.add(r);
 		}
-
-		return true;
+		return routers;
 	}
 
 	/**
-	 * Creates an invoice.
-	 * 
 	 * @param routerSerialNumber Serial number of the router
-	 * @param r                  Reservation object
-	 * @param isResident         Boolean to know weather the customer is resident or
-	 *                           not
-	 * @return Invoice Used by the customer to reserve the router
+	 * @return router The router
+	 * @throws RentalError If the router doesn't exist
+	 */
+	public Router getRouter(int routerSerialNumber) throws RentalError {
+		Router r = router.get(routerSerialNumber);
+		if (r == null)
+			throw new RentalError(RentalError.Reason.ROUTER_NOT_FOUND, "Router doesn't exist");
+		return r;
+	}
+
+	/**
+	 * @param reservationNumber Reservation's number
+	 * @return reservation The reservation
+	 * @throws RentalError If the reservation doesn't exist
 	 */
-	private Invoice createInvoice(Integer routerSerialNumber, Reservation r, boolean isResident) {
-		float discount = 0f;
-		if (isResident)
-			discount = 0.25f;
-		return new Invoice(router.get(routerSerialNumber), r, discount);
+	public ReservationView getReservation(int reservationNumber) throws RentalError {
+		ReservationView r = reservation.view(reservationNumber);
+		if (r == null)
+			throw new RentalError(RentalError.Reason.RESERVATION_NOT_FOUND, "Reservation doesn't exist");
+		return r;
 	}
 
 	/**
-	 * Makes a reservation for the customer.
-	 * 
 	 * @param routerSerialNumber Serial number of the router
-	 * @param isResident         Boolean to know weather the customer is resident or
-	 *                           not
-	 * 
-	 * @return Invoice Used by the customer to reserve the router
+	 * @return reservations The reservations of the router ordered by their start
+	 *         dates
+	 * @throws RentalError If the router doesn't exist
 	 */
-	public Invoice makeReservation(int routerSerialNumber, boolean isResident) {
-		if (!routerExists(routerSerialNumber)) {
-			System.out.print("Serial Number not found.\n");
-			return null;
+	public ArrayList<ReservationView> getRouterSchedule(int routerSerialNumber) throws RentalError {
+		ArrayList<ReservationView> schedule = new ArrayList<ReservationView>();
+		routerLocks.lock(routerSerialNumber);
+		try {
+			RouterSchedule s = routerSchedule.get(routerSerialNumber);
+			if (s == null)
+				throw new RentalError(RentalError.Reason.ROUTER_NOT_FOUND, "Router doesn't exist");
+			for (int i = 0; i < s.size(); i++)
+				schedule.add(reservation.view(s.getNumber(i)));
+		} finally {
+			routerLocks.unlock(routerSerialNumber);
 		}
+		return schedule;
+	}
 
-		System.out.print("Please, enter your reservation information\n");
+	/**
+	 * @param serialNumber Serial number of the router
+	 * @param model        Router's model [a - z or A - Z]
+	 * @param portsNumber  Number of ports of the router
+	 * @throws InputError  If the model or the number of ports is invalid
+	 * @throws RentalError If a router with the same serial number exists
+	 */
+	public void addRouter(int serialNumber, char model, int portsNumber) throws InputError, RentalError {
+		administrator.addRouter(new Router(serialNumber, model, portsNumber));
+	}
 
-		System.out.print("Start date using this format [day-month-year at hour:minutes PM/AM]: ");
-		String startDate = RouterRental.read.nextLine();
-		System.out.print("Type of reservation: ");
-		char type = RouterRental.read.next().charAt(0);
-		System.out.print("Duration: ");
-		int duration = RouterRental.read.nextInt();
-		RouterRental.read.nextLine(); // throw away the \n not consumed by nextInt()
-
-		Reservation r = new Reservation(type, startDate, duration);
-		if (!isDateAvailable(routerSerialNumber, r.getStartDate(), r.getDueDate())) {
-			System.out.print("The router isn't available.\n");
-			return null;
+	/**
+	 * @param serialNumber Serial number of the router
+	 * @throws RentalError If the router doesn't exist
+	 */
+	public void removeRouter(int serialNumber) throws RentalError {
+		administrator.removeRouter(serialNumber);
+	}
+
+	/**
+	 * @return feedbacks Copy of all feedbacks
+	 */
+	public ArrayList<String> getFeedbacks() {
+		ArrayList<String> feedbacks = feedback.get();
+		synchronized (feedbacks) {
+			return new ArrayList<String>(feedbacks);
 		}
+	}
 
-		systemUpdate(routerSerialNumber, r, '+');
-		return createInvoice(routerSerialNumber, r, isResident);
+	/**
+	 * Exports the data of the system to a file in ./export/ without stopping it
+	 * 
+	 * @param data     The data to export [routers - reservations - schedules -
+	 *                 invoices - feedbacks]
+	 * @param format   Format of the file [csv - ndjson]
+	 * @param fileName Name of the file
+	 * @return records Number of exported records
+	 * @throws InputError If the data, format or file name is invalid
+	 * @throws IOException
+	 */
+	public int export(String data, String format, String fileName) throws InputError, IOException {
+		return exporter.export(data, format, fileName, customer.get());
 	}
 
 	/**
-	 * Extends the reservation depending on the type given first time the
-	 * reservation made [d - w - m]
+	 * Imports routers or reservations made before from a file in ./import/
 	 * 
-	 * @param invoice     The invoice of the reservation
-	 * @param newDuration The new duration of the reservation [the type won't
-	 *                    change]
-	 * @param isResident  Boolean to know whether the customer is resident
-	 * @return Invoice New invoice with the new fees
+	 * @param data     The data to import [routers - reservations]
+	 * @param format   Format of the file [csv - ndjson]
+	 * @param fileName Name of the file
+	 * @return report The outcome of the import
+	 * @throws InputError If the data, format or file name is invalid
+	 * @throws IOException
 	 */
-	public Invoice extendReservation(Invoice invoice, int newDuration, boolean isResident) {
-		if (!reservation.containsKey(invoice.getReservationNumber())) {
-			System.out.print("Reservation doesn't exist\n");
-			return null;
-		}
-		char type = reservation.get(invoice.getReservationNumber()).getType();
-		int days;
-		if (type == 'd')
-			days = newDuration;
-		else if (type == 'w')
-			days = newDuration * 7;
-		else
-			days = newDuration * 30;
-		Date newDueDate = new Date(reservation.get(invoice.getReservationNumber()).getStartDate().getTime()
-				+ ((1000 * 60 * 60 * 24) * days));
-		if (!isDateAvailable(invoice.getRouterSerialNumber(),
-				reservation.get(invoice.getReservationNumber()).getStartDate(), newDueDate)) {
-			System.out.print("Router isn't available\n");
-			return null;
-		}
+	public ImportReport importFile(String data, String format, String fileName) throws InputError, IOException {
+		return importer.importFile(data, format, fileName, customer.get());
+	}
 
-		reservation.get(invoice.getReservationNumber()).setDuration(newDuration);
-		return createInvoice(invoice.getRouterSerialNumber(), reservation.get(invoice.getReservationNumber()),
-				isResident);
+	/**
+	 * @return lines The counters and the latency of the operations since the
+	 *         system started
+	 */
+	public ArrayList<String> getMetrics() {
+		return Metrics.report();
 	}
 
 	/**
-	 * Cancel a reservation.
+	 * Writes the metrics to a file in ./export/
 	 * 
-	 * @param invoice Used by the customer to reserve the router
-	 * @return boolean Returns true if the reservation canceled successfully
+	 * @param fileName Name of the file
+	 * @throws InputError If the file name is invalid
+	 * @throws IOException
 	 */
-	public boolean cancelReservation(Invoice invoice) {
-		Date today = new Date();
-		long timeDiff = reservation.get(invoice.getReservationNumber()).getStartDate().getTime() - today.getTime();
-		if (timeDiff < 2 * (1000 * 60 * 60 * 24))
-			return false;
+	public void dumpMetrics(String fileName) throws InputError, IOException {
+		exporter.exportMetrics(fileName);
+	}
 
-		return systemUpdate(invoice.getRouterSerialNumber(), reservation.get(invoice.getReservationNumber()), '-');
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @throws InputError If the period ends before it starts
+	 */
+	private static void checkPeriod(YearMonth from, YearMonth to) throws InputError {
+		if (to.isBefore(from))
+			throw new InputError("The period can't end before it starts.");
 	}
 
 	/**
-	 * Change the router model
-	 * 
-	 * @param routerSerialNumber The new router serial number
-	 * @param invoice            The invoice of the reservation
-	 * @param isResident         Boolean to know whether the customer is resident
-	 * @return
+	 * Waits for the customers to be loaded. Their invoices are counted while they
+	 * are loaded.
 	 */
-	public Invoice changeRouter(int routerSerialNumber, Invoice invoice, boolean isResident) {
-		if (!routerExists(routerSerialNumber)) {
-			System.out.print("Serial Number not found.\n");
-			return null;
-		}
+	private void awaitRevenue() {
+		customer.get();
+	}
 
-		if (!isDateAvailable(routerSerialNumber, reservation.get(invoice.getReservationNumber()).getStartDate(),
-				reservation.get(invoice.getReservationNumber()).getDueDate())) {
-			System.out.print("Router isn't available.\n");
-			return null;
-		}
-		routerSchedule.get((Integer) invoice.getRouterSerialNumber()).remove((Integer) invoice.getReservationNumber());
-		routerSchedule.get((Integer) invoice.getRouterSerialNumber()).add(invoice.getReservationNumber());
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return revenue [Key: Router serial number, Value: Revenue]
+	 * @throws InputError If the period ends before it starts
+	 */
+	public TreeMap<Integer, Double> getRevenueByRouter(YearMonth from, YearMonth to) throws InputError {
+		checkPeriod(from, to);
+		awaitRevenue();
+		return analytics.getRevenueByRouter(from, to);
+	}
 
-		return createInvoice(routerSerialNumber, reservation.get(invoice.getReservationNumber()), isResident);
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return revenue [Key: Router's model, Value: Revenue]
+	 * @throws InputError If the period ends before it starts
+	 */
+	public TreeMap<Character, Double> getRevenueByModel(YearMonth from, YearMonth to) throws InputError {
+		checkPeriod(from, to);
+		awaitRevenue();
+		return analytics.getRevenueByModel(from, to);
 	}
 
 	/**
-	 * Receives the feedback from the customer
-	 * 
-	 * @param feedback The feedback sent from the customer
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return revenue [Key: Month, Value: Revenue]
+	 * @throws InputError If the period ends before it starts
 	 */
-	public void getFeedback(String feedback) {
-		SystemManager.feedback.add(feedback);
+	public TreeMap<YearMonth, Double> getRevenueByMonth(YearMonth from, YearMonth to) throws InputError {
+		checkPeriod(from, to);
+		awaitRevenue();
+		return analytics.getRevenueByMonth(from, to);
+	}
+
+	/**
+	 * @param from First month of the period
+	 * @param to   Last month of the period
+	 * @return utilization [Key: Router serial number, Value: Booked time as a
+	 *         percentage of the period]
+	 * @throws InputError If the period ends before it starts
+	 */
+	public TreeMap<Integer, Double> getUtilization(YearMonth from, YearMonth to) throws InputError {
+		checkPeriod(from, to);
+		return analytics.getUtilization(from, to);
+	}
+
+	/**
+	 * @param count Number of customers
+	 * @return revenue The customers who paid the most, from the top [Key:
+	 *         Customer's ID, Value: Revenue]
+	 * @throws InputError If the count isn't positive
+	 */
+	public LinkedHashMap<Integer, Double> getTopCustomers(int count) throws InputError {
+		if (count <= 0)
+			throw new InputError("The number of customers must be greater than 0.");
+		awaitRevenue();
+		return analytics.getTopCustomers(count);
 	}
 }
 
 /**
- * Creates Customer
+ * Serves the customers and the admin over TCP. Every connection is a session
+ * handled on its own thread, a virtual thread when the JVM supports them.
+ * Requests and responses are text lines, see {@link RentalSession}.
+ * 
+ * @see <a href="https://openjdk.org/jeps/444"> JEP 444: Virtual Threads </a>
  */
-class Customer implements Serializable {
+class RentalServer implements Closeable {
 	/**
-	 * serialVersionUID is used in serializable classes
+	 * Default port of the server
 	 */
-	private static final long serialVersionUID = 5L;
+	public static final int DEFAULT_PORT = 7070;
 	/**
-	 * Array of invoices
+	 * Socket accepting the connections
 	 */
-	private ArrayList<Invoice> invoice;
+	private final ServerSocket serverSocket;
 	/**
-	 * Boolean to know whether the customer is resident
+	 * Runs the sessions
 	 */
-	private final boolean isResident;
+	private final ExecutorService sessions;
 	/**
-	 * ID of the customer
+	 * The API the sessions call
 	 */
-	private final int id;
+	private final RentalService service;
 	/**
-	 * Instance of the CustomerSystemManager to interact with the system
+	 * Connections of the running sessions, closed to wake the sessions blocked on
+	 * reading a request. Guarded by the server
 	 */
-	private static CustomerSystemManager customerSystemManager = CustomerSystemManager.getInstance();
+	private final HashSet<Socket> connections = new HashSet<Socket>();
+	/**
+	 * Boolean to know whether the server is closed
+	 */
+	private boolean isClosed = false;
 
 	/**
-	 * Constructor
+	 * Binds the server to the loopback address
 	 * 
-	 * @param id         ID of the customer
-	 * @param isResident Boolean to know whether the customer is resident
+	 * @param port    The port of the server [0 for any free port]
+	 * @param service The API the sessions call
+	 * @throws IOException
 	 */
-	public Customer(int id, boolean isResident) {
-		this.isResident = isResident;
-		this.invoice = new ArrayList<Invoice>();
-		this.id = id;// random id number from 1 to 10
+	public RentalServer(int port, RentalService service) throws IOException {
+		this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+		this.sessions = newSessionExecutor();
+		this.service = service;
 	}
 
 	/**
-	 * @return isResident Boolean to know whether the customer is resident
+	 * Uses a virtual thread per session when running on Java 21 or later, falls
+	 * back to a cached pool of daemon threads otherwise.
+	 * 
+	 * @return executor The executor of the sessions
 	 */
-	public boolean isResident() {
-		return isResident;
+	private static ExecutorService newSessionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "rental-session");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
 	}
 
 	/**
-	 * @return id Customer's ID
+	 * @return port The port the server is bound to
 	 */
-	public int getID() {
-		return id;
+	public int getPort() {
+		return serverSocket.getLocalPort();
 	}
 
 	/**
-	 * @return invoice Array-list of all the invoices
+	 * Accepts connections until the server is closed
 	 */
-	public ArrayList<Invoice> getInvoices() {
-		return invoice;
+	public void serve() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				if (!register(socket)) {
+					socket.close();
+					continue;
+				}
+				try {
+					sessions.execute(new RentalSession(this, socket, service));
+				} catch (RejectedExecutionException e) {
+					release(socket);
+					socket.close();
+				}
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					System.out.print("Failed to accept a connection\n");
+					e.printStackTrace();
+				}
+			}
+		}
 	}
 
 	/**
-	 * Rent a router
-	 * 
-	 * @param routerSerialNumber serial number of the wanted router
-	 * @return bool Return true if it was rented successfully
+	 * @param socket Accepted connection
+	 * @return boolean Returns false if the server is already closed
 	 */
-	public boolean rentRouter(int routerSerialNumber) {
-		Invoice i = customerSystemManager.makeReservation(routerSerialNumber, isResident);
-		if (i == null) {
+	private synchronized boolean register(Socket socket) {
+		if (isClosed)
 			return false;
-		}
-
-		invoice.add(i);
+		connections.add(socket);
 		return true;
 	}
 
 	/**
-	 * Choose the invoice number
+	 * Called by the session once its connection is closed
 	 * 
-	 * @return index The number of the invoice. Return -1 if not found
+	 * @param socket The connection of the session
 	 */
-	private int chooseInvoice() {
-		System.out.print("Please, choose the invoice number: ");
-		int index = RouterRental.read.nextInt();
-		RouterRental.read.nextLine(); // throw away the \n not consumed by nextInt()
-		if (invoice.size() < index)
-			return -1;
-		return index;
+	public synchronized void release(Socket socket) {
+		connections.remove(socket);
 	}
 
 	/**
-	 * Extends the reservation depending on the type given first time the
-	 * reservation made [d - w - m]
+	 * Stops accepting connections. Used by the admin to shut the server down.
 	 * 
-	 * @return boolean Returns true if the reservation changed successfully
+	 * @throws IOException
 	 */
-	public boolean extendRentDuration() {
-		int index = chooseInvoice();
-		if (index == -1) {
-			return false;
-		}
-
-		System.out.print("Please, enter the new duration: ");
-		int duration = RouterRental.read.nextInt();
-		RouterRental.read.nextLine(); // throw away the \n not consumed by nextInt()
-
-		Invoice i = customerSystemManager.extendReservation(invoice.get(index - 1), duration, isResident);
-
-		if (invoice == null) {
-			return false;
-		}
-
-		invoice.set(index - 1, i);
-		return true;
+	public void stop() throws IOException {
+		serverSocket.close();
 	}
 
 	/**
-	 * Cancel a reservation
+	 * Stops accepting connections, closes the connections of the running
+	 * sessions and waits for them to finish. A session handling a request
+	 * finishes it first, so the stores can be saved safely afterwards.
 	 * 
-	 * @return boolean Returns true if the reservation canceled successfully
+	 * @throws IOException
 	 */
-	public boolean cancelRent() {
-		int index = chooseInvoice();
-
-		if (index == -1) {
-			return false;
+	@Override
+	public void close() throws IOException {
+		stop();
+		sessions.shutdown();
+		synchronized (this) {
+			isClosed = true;
+			for (Socket socket : connections) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// The session ends anyway
+				}
+			}
 		}
-		boolean b = customerSystemManager.cancelReservation(invoice.get(index - 1));
-		if (!b)
-			return false;
-
-		invoice.remove(index - 1);
-		return b;
+		boolean isInterrupted = false;
+		while (true) {
+			try {
+				if (sessions.awaitTermination(5, TimeUnit.SECONDS))
+					break;
+				System.out.print("Waiting for the running requests to finish\n");
+			} catch (InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if (isInterrupted)
+			Thread.currentThread().interrupt();
 	}
+}
 
+/**
+ * Handles one connection. Each request is one line, the command then its
+ * arguments separated by spaces. Each response starts with "OK", "ERR" followed
+ * by the reason, or "DATA n" followed by n lines.
+ * 
+ * <pre>
+ * SIGNIN id y|n          LOGIN id              ADMIN id
+ * ROUTERS [model|* [minPorts [maxPorts]]]      SCHEDULE serial     INVOICES
+ * RENT serial type duration dd-MM-yyyy at hh:mm AM|PM
+ * FREE type duration model|* minPorts dd-MM-yyyy at hh:mm AM|PM
+ * EXTEND invoice duration                      CANCEL invoice
+ * CHANGE invoice serial  FEEDBACK text
+ * BATCH n                followed by n lines of [serial type duration start date], n <= 1000
+ * ADD serial model ports REMOVE serial         FEEDBACKS
+ * EXPORT routers|reservations|schedules|invoices|feedbacks csv|ndjson file
+ * IMPORT routers|reservations csv|ndjson file
+ * ANALYTICS revenue router|model|month from to   ANALYTICS utilization from to
+ * ANALYTICS customers n  [from and to are months: yyyy-MM]
+ * METRICS [file]         [prints the metrics or saves them to ./export/file]
+ * SHUTDOWN               QUIT
+ * </pre>
+ */
+class RentalSession implements Runnable {
 	/**
-	 * Change router model
-	 * 
-	 * @param routerSerialNumber serial number of the new router
-	 * @return boolean Return true if the router changed successfully
+	 * Maximum number of reservations in a batch
 	 */
-	public boolean changeModel(int routerSerialNumber) {
-		int index = chooseInvoice();
-
-		if (index == -1) {
-			return false;
-		}
-
-		Invoice i = customerSystemManager.changeRouter(routerSerialNumber, invoice.get(index - 1), isResident);
-		if (i == null) {
-			return false;
-		}
-
-		invoice.set(index - 1, i);
-		return true;
-	}
-
+	static final int MAX_BATCH = 1000;
 	/**
-	 * Send feedback to the system
+	 * The server that accepted the connection
 	 */
-	public void sendFeedback() {
-		System.out.print("Enter your feedback: ");
-		customerSystemManager.getFeedback(RouterRental.read.nextLine());
-	}
+	private final RentalServer server;
+	/**
+	 * The connection of the session
+	 */
+	private final Socket socket;
+	/**
+	 * The API of the system
+	 */
+	private final RentalService service;
+	/**
+	 * The logged-in customer. Null if no customer logged-in
+	 */
+	private Customer user;
+	/**
+	 * Used to know whether the admin logged-in
+	 */
+	private boolean isAdmin = false;
 
 	/**
-	 * used to know the reservation information
+	 * Constructor
 	 * 
-	 * @return reservationNumber The number of the reservation
-	 */
-	public Integer showReservation() {
-		int index = chooseInvoice();
-		if (index == -1) {
-			return null;
-		}
+	 * @param server  The server that accepted the connection
+	 * @param socket  The connection of the session
+	 * @param service The API of the system
+	 */
+	public RentalSession(RentalServer server, Socket socket, RentalService service) {
+		this.server = server;
+		this.socket = socket;
+		this.service = service;
+	}
 
-		return invoice.get(index - 1).getReservationNumber();
+	@Override
+	public void run() {
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(
+						new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty())
+					continue;
+				if (line.equalsIgnoreCase("QUIT")) {
+					out.print("OK\n");
+					out.flush();
+					break;
+				}
+				out.print(handle(line, in));
+				out.flush();
+				if (line.equalsIgnoreCase("SHUTDOWN") && isAdmin) {
+					server.stop();
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// The client dropped the connection
+		} finally {
+			server.release(socket);
+		}
 	}
 
 	/**
-	 * used to know the router information
+	 * Executes one request
 	 * 
-	 * @return routerSerialNumber The serial number of the router
+	 * @param line The request
+	 * @param in   The connection's input, for requests spanning many lines
+	 * @return response The response lines
+	 * @throws IOException
 	 */
-	public Integer showRouter() {
-		int index = chooseInvoice();
-		if (index == -1) {
-			return null;
+	private String handle(String line, BufferedReader in) throws IOException {
+		String[] args = line.split("\\s+", 2);
+		String command = args[0].toUpperCase();
+		String rest = args.length > 1 ? args[1] : "";
+		String[] arg = rest.split("\\s+");
+		try {
+			switch (command) {
+			case "SIGNIN":
+				user = service.signIn(Integer.parseInt(arg[0]), arg.length < 2 || isYes(arg[1]));
+				isAdmin = false;
+				return "OK\n";
+			case "LOGIN":
+				user = service.logIn(Integer.parseInt(arg[0]));
+				isAdmin = false;
+				return "OK\n";
+			case "ADMIN":
+				service.logInAdmin(Integer.parseInt(arg[0]));
+				user = null;
+				isAdmin = true;
+				return "OK\n";
+			case "ROUTERS":
+				if (rest.isEmpty())
+					return routers(service.getRouters());
+				return routers(service.getRouters(arg[0].equals("*") ? 0 : arg[0].charAt(0),
+						arg.length > 1 ? Integer.parseInt(arg[1]) : 0,
+						arg.length > 2 ? Integer.parseInt(arg[2]) : Integer.MAX_VALUE));
+			case "SCHEDULE":
+				return schedule(Integer.parseInt(arg[0]));
+			case "INVOICES":
+				return invoices();
+			case "RENT":
+				arg = rest.split("\\s+", 4);
+				return ok(service.rentRouter(requireCustomer(), Integer.parseInt(arg[0]), arg[1].charAt(0),
+						arg[3], Integer.parseInt(arg[2])));
+			case "FREE":
+				arg = rest.split("\\s+", 5);
+				return routers(service.findFreeRouters(arg[0].charAt(0), Reservation.parseStartDate(arg[4]),
+						Integer.parseInt(arg[1]), arg[2].equals("*") ? 0 : arg[2].charAt(0),
+						Integer.parseInt(arg[3])));
+			case "BATCH":
+				return batch(Integer.parseInt(arg[0]), in);
+			case "EXTEND":
+				return ok(service.extendReservation(requireCustomer(), Integer.parseInt(arg[0]),
+						Integer.parseInt(arg[1])));
+			case "CANCEL":
+				service.cancelReservation(requireCustomer(), Integer.parseInt(arg[0]));
+				return "OK\n";
+			case "CHANGE":
+				return ok(service.changeRouter(requireCustomer(), Integer.parseInt(arg[0]),
+						Integer.parseInt(arg[1])));
+			case "FEEDBACK":
+				service.sendFeedback(requireCustomer(), rest);
+				return "OK\n";
+			case "ADD":
+				requireAdmin();
+				service.addRouter(Integer.parseInt(arg[0]), arg[1].charAt(0), Integer.parseInt(arg[2]));
+				return "OK\n";
+			case "REMOVE":
+				requireAdmin();
+				service.removeRouter(Integer.parseInt(arg[0]));
+				return "OK\n";
+			case "FEEDBACKS":
+				requireAdmin();
+				return data(service.getFeedbacks());
+			case "EXPORT":
+				requireAdmin();
+				try {
+					return "OK " + service.export(arg[0], arg[1], arg[2]) + "\n";
+				} catch (IOException e) {
+					return error("Export failed: " + e.getMessage());
+				}
+			case "ANALYTICS":
+				requireAdmin();
+				return analytics(arg);
+			case "METRICS":
+				requireAdmin();
+				if (rest.isEmpty())
+					return data(service.getMetrics());
+				try {
+					service.dumpMetrics(arg[0]);
+					return "OK\n";
+				} catch (IOException e) {
+					return error("Dump failed: " + e.getMessage());
+				}
+			case "IMPORT":
+				requireAdmin();
+				try {
+					ImportReport report = service.importFile(arg[0], arg[1], arg[2]);
+					ArrayList<String> lines = new ArrayList<String>();
+					lines.add("IMPORTED " + report.getImported() + " REJECTED " + report.getRejected());
+					lines.addAll(report.getErrors());
+					return data(lines);
+				} catch (IOException e) {
+					return error("Import failed: " + e.getMessage());
+				}
+			case "SHUTDOWN":
+				requireAdmin();
+				return "OK\n";
+			default:
+				return error("Unknown command " + args[0]);
+			}
+		} catch (InputError e) {
+			return error(e.getMessage());
+		} catch (RentalError e) {
+			return error(e.getReason() + " " + e.getMessage());
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException | StringIndexOutOfBoundsException e) {
+			return error("Invalid arguments for " + args[0]);
 		}
-
-		return invoice.get(index - 1).getRouterSerialNumber();
 	}
-}
 
-/**
- * Class that holds functionalities needed by the admins
- */
-class AdminstratorSystemManager extends UserSystemManager {
-	/**
-	 * The only instance of the class
-	 */
-	private static AdminstratorSystemManager adminstratorSystemManager;
 	/**
-	 * Makes sure that there's only one instance used
+	 * @param answer The answer [y - n]
+	 * @return boolean Returns true if the answer is yes
+	 * @throws InputError If the answer isn't y or n
 	 */
-	private static boolean isUsed = false;
+	private static boolean isYes(String answer) throws InputError {
+		char c = Character.toLowerCase(answer.charAt(0));
+		if (c != 'y' && c != 'n')
+			throw new InputError("Answer with y or n");
+		return c == 'y';
+	}
 
 	/**
-	 * Prevents making instances of the class
+	 * @param message The reason of the failure
+	 * @return response The error response
 	 */
-	private AdminstratorSystemManager() {
+	private static String error(String message) {
+		return "ERR " + message + "\n";
 	}
 
 	/**
-	 * Creates instance of the class and returns it. If it's called again it will
-	 * return null
-	 * 
-	 * @return adminstratorSystemManager The only instance of the class
+	 * @param i The invoice
+	 * @return response The invoice response
 	 */
-	public static AdminstratorSystemManager getInstance() {
-		if (!isUsed) {
-			adminstratorSystemManager = new AdminstratorSystemManager();
-			isUsed = true;
-			return adminstratorSystemManager;
-		} else
-			return null;
+	private static String ok(Invoice i) {
+		return "OK " + invoiceLine(i) + "\n";
 	}
 
 	/**
-	 * Overloaded function to update all tracked records. Edit the router's records.
-	 * 
-	 * @param r         Router object
-	 * @param operation [Operation '+': to add, Operation '-': to delete]
-	 * @return boolean Returns true if the system is updated successfully
+	 * @param lines The lines of the response
+	 * @return response The data response
 	 */
-	private boolean systemUpdate(Router r, char operation) {
-		if (operation == '+') {
-			if (routerExists(r.getSerialNumber())) {
-				System.out.print("Router exists\n");
-				return false;
-			}
-
-			router.put(r.getSerialNumber(), r);
-			routerSchedule.put(r.getSerialNumber(), new ArrayList<Integer>());
-			return true;
-		} else if (operation == '-') {
-			if (router.isEmpty() || !routerExists(r.getSerialNumber())) {
-				System.out.print("Router doesn't exist\n");
-				return false;
-			}
-
-			router.remove(r.getSerialNumber());
-			ArrayList<Integer> arrayList = routerSchedule.get(r.getSerialNumber());
-			for (Integer reservationNumber : arrayList) {
-				reservation.remove(reservationNumber);
-			}
-			routerSchedule.remove(r.getSerialNumber());
-			return true;
-		}
-		return false;
+	private static String data(ArrayList<String> lines) {
+		StringBuilder response = new StringBuilder("DATA ").append(lines.size()).append('\n');
+		for (String l : lines)
+			response.append(l).append('\n');
+		return response.toString();
 	}
 
 	/**
-	 * Add new router to the system
-	 * 
-	 * @param r Router object
-	 * @return boolean Returns true if the router added successfully
+	 * @param i The invoice
+	 * @return line The invoice as [reservation number, router serial number, fees]
 	 */
-	public boolean addRouter(Router r) {
-		return systemUpdate(r, '+');
+	private static String invoiceLine(Invoice i) {
+		return i.getReservationNumber() + " " + i.getRouterSerialNumber() + " "
+				+ String.format("%.2f", i.getFees());
 	}
 
 	/**
-	 * Removes a router from the system
-	 * 
-	 * @param routerSerialNumber The serial number of the router
-	 * @return boolean Returns true if the router added successfully
+	 * @return customer The logged-in customer
+	 * @throws RentalError If no customer logged-in
 	 */
-	public boolean removeRouter(Integer routerSerialNumber) {
-		return systemUpdate(router.get(routerSerialNumber), '-');
+	private Customer requireCustomer() throws RentalError {
+		if (user == null)
+			throw new RentalError(RentalError.Reason.NOT_ALLOWED, "Login as a customer first");
+		return user;
 	}
-}
 
-/**
- * Creates Administrator
- */
-class Administrator {
-	/**
-	 * Instance of the AdminstratorSystemManager to interact with the system
-	 */
-	private static AdminstratorSystemManager adminstratorSystemManager;
 	/**
-	 * Admin's ID
+	 * @throws RentalError If the admin didn't log-in
 	 */
-	private final int id;
+	private void requireAdmin() throws RentalError {
+		if (!isAdmin)
+			throw new RentalError(RentalError.Reason.NOT_ALLOWED, "Login as the admin first");
+	}
 
 	/**
-	 * Makes admin'n instance
+	 * Rents many routers at once. Answers with the outcome of each reservation in
+	 * the order of the requests.
 	 * 
-	 * @param id The ID of the admin
-	 */
-	public Administrator(int id) {
-		adminstratorSystemManager = AdminstratorSystemManager.getInstance();
-		this.id = id;
+	 * @param count Number of the reservations
+	 * @param in    The connection's input
+	 * @throws IOException
+	 * @throws InputError If the count isn't between 1 and MAX_BATCH
+	 */
+	private String batch(int count, BufferedReader in) throws IOException, InputError, RentalError {
+		if (count < 1 || count > MAX_BATCH)
+			throw new InputError("Invalid batch size. It must be between 1 and " + MAX_BATCH + ".");
+		ArrayList<ReservationRequest> requests = new ArrayList<ReservationRequest>(count);
+		ArrayList<String> lines = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			String line = in.readLine();
+			if (line == null)
+				throw new IOException("Connection closed during a batch");
+			try {
+				String[] arg = line.trim().split("\\s+", 4);
+				requests.add(new ReservationRequest(Integer.parseInt(arg[0]), arg[1].charAt(0),
+						Reservation.parseStartDate(arg[3]), Integer.parseInt(arg[2])));
+				lines.add(null);
+			} catch (InputError e) {
+				lines.add("ERR " + e.getMessage());
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException | StringIndexOutOfBoundsException e) {
+				lines.add("ERR Invalid reservation " + line);
+			}
+		}
+
+		service.rentRouters(requireCustomer(), requests);
+		int next = 0;
+		for (int i = 0; i < count; i++) {
+			if (lines.get(i) != null)
+				continue;
+			ReservationRequest request = requests.get(next++);
+			if (request.getInvoice() != null)
+				lines.set(i, "OK " + invoiceLine(request.getInvoice()));
+			else if (request.getError() instanceof RentalError)
+				lines.set(i, "ERR " + ((RentalError) request.getError()).getReason() + " "
+						+ request.getError().getMessage());
+			else
+				lines.set(i, "ERR " + request.getError().getMessage());
+		}
+		return data(lines);
 	}
 
 	/**
-	 * @return id The id of the admin
+	 * Lists routers [serial number, model, number of ports]
 	 */
-	public int getID() {
-		return id;
+	private String routers(ArrayList<Router> routers) {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (Router r : routers)
+			lines.add(r.getSerialNumber() + " " + r.getModel() + " " + r.getPortsNumber());
+		return data(lines);
 	}
 
 	/**
-	 * Add new router to the system
-	 *
-	 * @return boolean Returns true if the router was added successfully
+	 * Lists the schedule of a router [reservation number, start date - due date]
 	 */
-	public boolean addRouter() {
-		System.out.print("Please, enter the router information\n");
-		System.out.print("Router's serial number: ");
-		int serialNumber = RouterRental.read.nextInt();
-		RouterRental.read.nextLine(); // throw away the \n not consumed by nextInt()
-		System.out.print("Router's model: ");
-		char model = RouterRental.read.next().charAt(0);
-		System.out.print("Number of ports: ");
-		int portsNumber = RouterRental.read.nextInt();
-		RouterRental.read.nextLine(); // throw away the \n not consumed by nextInt()
-		return adminstratorSystemManager.addRouter(new Router(serialNumber, model, portsNumber));
+	private String schedule(int routerSerialNumber) throws RentalError {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (ReservationView r : service.getRouterSchedule(routerSerialNumber))
+			lines.add(r.getNumber() + " " + DateFormatter.format(r.getStartTime()) + " - "
+					+ DateFormatter.format(r.getDueTime()));
+		return data(lines);
+	}
 
+	/**
+	 * Answers the dashboards [key value]
+	 */
+	private String analytics(String[] arg) throws InputError {
+		Map<?, Double> values;
+		String kind = arg[0].toLowerCase();
+		if (kind.equals("customers")) {
+			values = service.getTopCustomers(Integer.parseInt(arg[1]));
+		} else if (kind.equals("utilization")) {
+			values = service.getUtilization(RentalAnalytics.parseMonth(arg[1]), RentalAnalytics.parseMonth(arg[2]));
+		} else if (kind.equals("revenue")) {
+			YearMonth from = RentalAnalytics.parseMonth(arg[2]), to = RentalAnalytics.parseMonth(arg[3]);
+			if (arg[1].equalsIgnoreCase("router"))
+				values = service.getRevenueByRouter(from, to);
+			else if (arg[1].equalsIgnoreCase("model"))
+				values = service.getRevenueByModel(from, to);
+			else if (arg[1].equalsIgnoreCase("month"))
+				values = service.getRevenueByMonth(from, to);
+			else
+				throw new InputError("Revenue is grouped by router, model or month.");
+		} else {
+			throw new InputError("Unknown analytics " + arg[0]);
+		}
+		ArrayList<String> lines = new ArrayList<String>();
+		for (Map.Entry<?, Double> e : values.entrySet())
+			lines.add(e.getKey() + " " + String.format("%.2f", e.getValue()));
+		return data(lines);
 	}
 
 	/**
-	 * Removes a router from the system
-	 *
-	 * @return boolean Returns true if the router added successfully
+	 * Lists the invoices of the customer
 	 */
-	public boolean removeRouter() {
-		System.out.print("Please, enter router's serial number: ");
-		Integer serialNumber = RouterRental.read.nextInt();
-		RouterRental.read.nextLine(); // throw away the \n not consumed by nextInt()
-		return adminstratorSystemManager.removeRouter(serialNumber);
+	private String invoices() throws RentalError {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (Invoice i : service.getInvoices(requireCustomer()))
+			lines.add(invoiceLine(i));
+		return data(lines);
+	}
+}
+
+/**
+ * Loopback client of the server. Sends the lines read from the console and
+ * prints the responses.
+ */
+class RentalClient {
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : RentalServer.DEFAULT_PORT;
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+						true);
+				BufferedReader console = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+			String request;
+			while ((request = console.readLine()) != null) {
+				if (request.trim().isEmpty())
+					continue;
+				out.println(request);
+				String[] command = request.trim().split("\\s+");
+				if (command[0].equalsIgnoreCase("BATCH") && command.length > 1
+						&& command[1].matches("\\d{1,4}") && Integer.parseInt(command[1]) <= RentalSession.MAX_BATCH) {
+					// The reservations of the batch are sent before reading the response. The
+					// server rejects other sizes without reading any line.
+					for (int i = Integer.parseInt(command[1]); i > 0; i--) {
+						String line = console.readLine();
+						out.println(line == null ? "" : line);
+					}
+				}
+				String response = in.readLine();
+				if (response == null)
+					break;
+				System.out.println(response);
+				if (response.startsWith("DATA ")) {
+					int lines = Integer.parseInt(response.substring(5).trim());
+					for (int i = 0; i < lines; i++)
+						System.out.println(in.readLine());
+				}
+			}
+		}
 	}
 }
 
@@ -1495,13 +9530,17 @@ public class RouterRental {
 	 */
 	private static Administrator administrator = new Administrator(2222);
 	/**
-	 * Saves all customers
+	 * Saves all customers. May be loaded on the first access.
 	 */
-	private static HashMap<Integer, Customer> customer;
+	private static StoreLoader<ConcurrentHashMap<Integer, Customer>> customer;
 	/**
 	 * File manager to manage customer related files
 	 */
 	private static FileManager fileManager = new FileManager();
+	/**
+	 * Codec used when the customers are saved using the binary format
+	 */
+	private static BinaryCodec binaryCodec = new BinaryCodec();
 	/**
 	 * Makes sure that the loadUsersFromFiles is called once
 	 */
@@ -1514,6 +9553,10 @@ public class RouterRental {
 	 * Checks if any users logged-in
 	 */
 	private static boolean isLoggedin = false;
+	/**
+	 * The API of the system. The menu only reads the input and prints the results.
+	 */
+	private static RentalService service;
 
 	/**
 	 * Loads the customers from file
@@ -1529,20 +9572,112 @@ public class RouterRental {
 
 		fileManager.checkSystemDataBase();
 
-		if (!fileManager.isFileEmpty("customer.ser")) {
-			customer = (HashMap<Integer, Customer>) fileManager.readFromFile("customer.ser");
-		} else {
-			customer = new HashMap<Integer, Customer>();
+		customer = new StoreLoader<ConcurrentHashMap<Integer, Customer>>("users", () -> {
+			ConcurrentHashMap<Integer, Customer> loaded;
+			if (FileManager.isBinaryFormat())
+				loaded = new ConcurrentHashMap<Integer, Customer>(binaryCodec.readCustomers("customer.bin"));
+			else if (!fileManager.isFileEmpty("customer.ser"))
+				loaded = new ConcurrentHashMap<Integer, Customer>(
+						(HashMap<Integer, Customer>) fileManager.readFromFile("customer.ser"));
+			else
+				loaded = new ConcurrentHashMap<Integer, Customer>();
+			// Nobody can change the invoices before the customers are published
+			SystemManager.journal.applyInvoices(loaded);
+			SystemManager.analytics.rebuildRevenue(loaded);
+			return loaded;
+		});
+		if (FileManager.isLazyLoading())
+			customer.loadInBackground();
+		else
+			customer.load();
+		service = new RentalService(customer, administrator);
+	}
+
+	/**
+	 * A step of the menu that may fail because of invalid input
+	 */
+	private interface ConsoleStep<T> {
+		T run() throws InputError, RentalError;
+	}
+
+	/**
+	 * Runs the step until a valid input is provided. Prints the reason when the
+	 * request is refused.
+	 * 
+	 * @param step The step of the menu
+	 * @return result The result of the step. Null if the request was refused
+	 */
+	private static <T> T retry(ConsoleStep<T> step) {
+		while (true) {
+			try {
+				return step.run();
+			} catch (InputError e) {
+				System.out.print(e.getMessage() + "\nPlease, try again.\n");
+			} catch (RentalError e) {
+				System.out.print(e.getMessage() + "\n");
+				return null;
+			}
 		}
 	}
 
 	/**
-	 * Loads the customers to file
+	 * Reads a number and throws away the \n not consumed by nextInt()
 	 * 
-	 * @throws IOException
+	 * @param message The message printed before reading
+	 * @return number The read number
+	 */
+	private static int readInt(String message) {
+		System.out.print(message);
+		int number = read.nextInt();
+		read.nextLine();
+		return number;
+	}
+
+	/**
+	 * A listing printed one page at a time
+	 */
+	private interface ConsoleListing {
+		/**
+		 * @param offset Number of items to skip
+		 * @param limit  Maximum number of items to print
+		 * @return remaining Number of items after the page
+		 */
+		int print(int offset, int limit);
+	}
+
+	/**
+	 * Number of items printed before asking to show more
+	 */
+	private static final int PAGE_SIZE = 25;
+
+	/**
+	 * Prints the listing page by page until it ends or the user stops it
+	 * 
+	 * @param listing The listing
+	 */
+	private static void page(ConsoleListing listing) {
+		int offset = 0;
+		int remaining;
+		while ((remaining = listing.print(offset, PAGE_SIZE)) > 0) {
+			offset += PAGE_SIZE;
+			System.out.printf("%d more. Show more? [Y/n]: ", remaining);
+			String answer = read.nextLine().trim();
+			if (!answer.isEmpty() && Character.toLowerCase(answer.charAt(0)) == 'n')
+				return;
+		}
+	}
+
+	/**
+	 * Prints the matching routers page by page. The routers are found once, every
+	 * page prints a slice of them.
+	 * 
+	 * @param model    Router's model ['A' - 'Z']. 0 matches any model
+	 * @param minPorts Minimum number of ports
+	 * @param maxPorts Maximum number of ports
 	 */
-	private static void loadUsersToFiles() throws IOException {
-		fileManager.writeToFile("customer.ser", customer);
+	private static void pageRouters(char model, int minPorts, int maxPorts) {
+		int[] serialNumbers = systemInformationPrinter.findRouters(model, minPorts, maxPorts);
+		page((offset, limit) -> systemInformationPrinter.printRouters(serialNumbers, offset, limit));
 	}
 
 	/**
@@ -1551,37 +9686,27 @@ public class RouterRental {
 	 * @return id The id of the user (customer / admin)
 	 */
 	private static Integer logIn() {
-		System.out.print("1] Admin\n" + "2] Customer\n" + "Enter your choice: ");
-		int choice = read.nextInt();
-		read.nextLine();
-		if (choice != 1 || choice != 2) {
+		int choice = readInt("1] Admin\n" + "2] Customer\n" + "Enter your choice: ");
+		if (choice != 1 && choice != 2) {
 			return null;
 		}
-		System.out.print("Enter your ID: ");
-		Integer id = read.nextInt();
-		read.nextLine();
-		if (choice == 1) {
-			if (id == administrator.getID()) {
+		Integer id = readInt("Enter your ID: ");
+		try {
+			if (choice == 1) {
+				service.logInAdmin(id);
 				System.out.print("Welcome Admin :D\n");
 				isAdmin = true;
-				isLoggedin = true;
-				return id;
 			} else {
-				System.out.print("Wrong ID\n");
-				return null;
-			}
-		} else if (choice == 2) {
-			if (customer.containsKey((Integer) id)) {
+				service.logIn(id);
 				System.out.print("Welcome again :D\n");
 				isAdmin = false;
-				isLoggedin = true;
-				return id;
-			} else {
-				System.out.print("Wrong ID\n");
-				return null;
 			}
+		} catch (RentalError e) {
+			System.out.print(e.getMessage() + "\n");
+			return null;
 		}
-		return null;
+		isLoggedin = true;
+		return id;
 	}
 
 	/**
@@ -1590,23 +9715,17 @@ public class RouterRental {
 	 * @return id The ID of the user (customer)
 	 */
 	private static Integer signIn() {
-		System.out.print("Enter an ID: ");
-		Integer id = read.nextInt();
-		read.nextLine();
+		Integer id = readInt("Enter an ID: ");
 		System.out.print("Are you from egypt? [Y/n]: ");
 		char c = read.next().charAt(0);
 		c = Character.toLowerCase(c);
 
-		if (!customer.containsKey(id)) {
-			if (c == 'y' || c == '\n') {
-				customer.put(id, new Customer(id, true));
-			} else if (c == 'n') {
-				customer.put(id, new Customer(id, false));
-			} else {
-				return null;
-			}
-		} else {
+		if (service.customerExists(id)) {
 			System.out.print("Customer already exists\n" + "System will login automatically\n");
+		} else if (c == 'y' || c == 'n') {
+			service.signIn(id, c == 'y');
+		} else {
+			return null;
 		}
 
 		isLoggedin = true;
@@ -1614,15 +9733,193 @@ public class RouterRental {
 		return id;
 	}
 
-	public static void main(String[] args) {
+	/**
+	 * Reads the reservation information and rents the router
+	 * 
+	 * @param c                  The customer
+	 * @param routerSerialNumber Serial number of the router
+	 * @return invoice The invoice. Null if the router couldn't be rented
+	 */
+	private static Invoice rentRouter(Customer c, int routerSerialNumber) {
+		if (retry(() -> service.getRouter(routerSerialNumber)) == null)
+			return null;
+		System.out.print("Please, enter your reservation information\n");
+		return retry(() -> {
+			System.out.print("Start date using this format [day-month-year at hour:minutes PM/AM]: ");
+			String startDate = read.nextLine();
+			System.out.print("Type of reservation: ");
+			char type = read.next().charAt(0);
+			int duration = readInt("Duration: ");
+			return service.rentRouter(c, routerSerialNumber, type, startDate, duration);
+		});
+	}
+
+	/**
+	 * Reads the reservation period and the wanted router and finds the free
+	 * routers
+	 * 
+	 * @return routers The free routers. Null if the search failed
+	 */
+	private static ArrayList<Router> findFreeRouters() {
+		return retry(() -> {
+			System.out.print("Start date using this format [day-month-year at hour:minutes PM/AM]: ");
+			Date startDate = Reservation.parseStartDate(read.nextLine());
+			System.out.print("Type of reservation: ");
+			char type = read.next().charAt(0);
+			int duration = readInt("Duration: ");
+			System.out.print("Router's model [* for any model]: ");
+			char model = read.next().charAt(0);
+			int minPorts = readInt("Minimum number of ports: ");
+			return service.findFreeRouters(type, startDate, duration, model == '*' ? 0 : model, minPorts);
+		});
+	}
+
+	/**
+	 * Reads the router information and adds it to the system
+	 * 
+	 * @return boolean Returns true if the router was added successfully
+	 */
+	private static boolean addRouter() {
+		System.out.print("Please, enter the router information\n");
+		return retry(() -> {
+			int serialNumber = readInt("Router's serial number: ");
+			System.out.print("Router's model: ");
+			char model = read.next().charAt(0);
+			int portsNumber = readInt("Number of ports: ");
+			service.addRouter(serialNumber, model, portsNumber);
+			return true;
+		}) != null;
+	}
+
+	/**
+	 * Reads what to export and exports it to a file in ./export/
+	 */
+	private static void exportData() {
 		try {
-			loadUsersFromFiles();
-		} catch (ClassNotFoundException | IOException e2) {
-			System.out.print("Failed to load users\n");
-			e2.printStackTrace();
-			System.exit(1);
+			int records = retry(() -> {
+				System.out.print("Data [routers - reservations - schedules - invoices - feedbacks]: ");
+				String data = read.nextLine().trim();
+				System.out.print("Format [csv - ndjson]: ");
+				String format = read.nextLine().trim();
+				System.out.print("File name: ");
+				String fileName = read.nextLine().trim();
+				try {
+					return service.export(data, format, fileName);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			System.out.printf("%d records exported\n", records);
+		} catch (UncheckedIOException e) {
+			System.out.print("Export failed: " + e.getCause().getMessage() + "\n");
+		}
+	}
+
+	/**
+	 * Reads what to import and imports it from a file in ./import/
+	 */
+	private static void importData() {
+		try {
+			ImportReport report = retry(() -> {
+				System.out.print("Data [routers - reservations]: ");
+				String data = read.nextLine().trim();
+				System.out.print("Format [csv - ndjson]: ");
+				String format = read.nextLine().trim();
+				System.out.print("File name: ");
+				String fileName = read.nextLine().trim();
+				try {
+					return service.importFile(data, format, fileName);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			System.out.printf("%d records imported, %d rejected\n", report.getImported(), report.getRejected());
+			for (String error : report.getErrors())
+				System.out.print(error + "\n");
+		} catch (UncheckedIOException e) {
+			System.out.print("Import failed: " + e.getCause().getMessage() + "\n");
+		}
+	}
+
+	/**
+	 * Reads which dashboard to show and prints it page by page
+	 */
+	private static void showAnalytics() {
+		int choice = readInt("1] Revenue per router\n" + "2] Revenue per model\n" + "3] Revenue per month\n"
+				+ "4] Utilization per router\n" + "5] Top customers\n" + "Enter your choice: ");
+		if (choice < 1 || choice > 5)
+			return;
+		String label = choice == 5 ? "Customer " : choice == 2 ? "Model " : choice == 3 ? "" : "Router ";
+		String unit = choice == 4 ? "%" : "";
+		Map<?, Double> statistics;
+		if (choice == 5) {
+			statistics = retry(() -> service.getTopCustomers(readInt("Number of customers: ")));
+		} else {
+			statistics = retry(() -> {
+				System.out.print("From [year-month]: ");
+				YearMonth from = RentalAnalytics.parseMonth(read.nextLine());
+				System.out.print("To [year-month]: ");
+				YearMonth to = RentalAnalytics.parseMonth(read.nextLine());
+				if (choice == 1)
+					return service.getRevenueByRouter(from, to);
+				if (choice == 2)
+					return service.getRevenueByModel(from, to);
+				if (choice == 3)
+					return service.getRevenueByMonth(from, to);
+				return service.getUtilization(from, to);
+			});
+		}
+		page((offset, limit) -> systemInformationPrinter.printStatistics(statistics, label, unit, offset, limit));
+	}
+
+	/**
+	 * Prints the metrics and saves them to a file in ./export/ if a file name is
+	 * entered
+	 */
+	private static void showMetrics() {
+		ArrayList<String> lines = service.getMetrics();
+		page((offset, limit) -> systemInformationPrinter.printLines(lines, offset, limit));
+		try {
+			retry(() -> {
+				System.out.print("Save to file [leave empty to skip]: ");
+				String fileName = read.nextLine().trim();
+				if (fileName.isEmpty())
+					return false;
+				try {
+					service.dumpMetrics(fileName);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				System.out.print("Metrics saved\n");
+				return true;
+			});
+		} catch (UncheckedIOException e) {
+			System.out.print("Saving failed: " + e.getCause().getMessage() + "\n");
+		}
+	}
+
+	/**
+	 * Serves the users over TCP until the admin sends SHUTDOWN
+	 * 
+	 * @param port The port of the server
+	 */
+	private static void serve(int port) {
+		try (RentalServer server = new RentalServer(port, service)) {
+			System.out.printf("Serving on port %d\n", server.getPort());
+			server.serve();
+		} catch (IOException e) {
+			System.out.print("Failed to start the server\n");
+			e.printStackTrace();
 		}
+	}
 
+	/**
+	 * Starts the console menu, or the server when started with [serve port]
+	 * 
+	 * @param args Command line arguments
+	 */
+	public static void main(String[] args) {
+		// The revenue of the customer's invoices is counted using the stores
 		try {
 			SystemManager.startSystem();
 		} catch (ClassNotFoundException | IOException e1) {
@@ -1631,13 +9928,23 @@ public class RouterRental {
 			System.exit(1);
 		}
 
+		try {
+			loadUsersFromFiles();
+		} catch (ClassNotFoundException | IOException e2) {
+			System.out.print("Failed to load users\n");
+			e2.printStackTrace();
+			System.exit(1);
+		}
+		SystemManager.startSnapshots(customer);
+
 		Integer id = null;
 
-		while (true) {
+		if (args.length > 0 && args[0].equals("serve"))
+			serve(args.length > 1 ? Integer.parseInt(args[1]) : RentalServer.DEFAULT_PORT);
+
+		while (args.length == 0) {
 			if (!isLoggedin) {
-				System.out.print("1] Login\n" + "2] Signin\n" + "3] Close the system\n" + "Enter your choice: ");
-				int choice = read.nextInt();
-				read.nextLine();
+				int choice = readInt("1] Login\n" + "2] Signin\n" + "3] Close the system\n" + "Enter your choice: ");
 				if (choice == 1)
 					id = logIn();
 				else if (choice == 2)
@@ -1646,91 +9953,123 @@ public class RouterRental {
 					break;
 			} else {
 				if (isAdmin) {
-					System.out.print("1] Add new router\n" + "2] Remove existing router\n" + "3] Read all feedbacks\n"
-							+ "4] Print available routers\n" + "5] Print router's schedule\n" + "6] Logout\n"
+					int choice = readInt("1] Add new router\n" + "2] Remove existing router\n"
+							+ "3] Read all feedbacks\n" + "4] Print available routers\n"
+							+ "5] Print router's schedule\n" + "6] Filter routers by model\n"
+							+ "7] Filter routers by number of ports\n" + "8] Export data\n" + "9] Import data\n"
+							+ "10] Revenue and utilization\n" + "11] Metrics\n" + "12] Logout\n"
 							+ "Enter your choice: ");
-					int choice = read.nextInt();
-					read.nextLine();
 					if (choice == 1) {
-						if (!administrator.addRouter())
+						if (!addRouter())
 							System.out.print("Failed to add new router\n");
 						else
 							System.out.print("New router added successfully\n");
 					} else if (choice == 2) {
-						if (!administrator.removeRouter())
+						int serialNumber = readInt("Please, enter router's serial number: ");
+						if (retry(() -> {
+							service.removeRouter(serialNumber);
+							return true;
+						}) == null)
 							System.out.print("Failed to remove router\n");
 						else
 							System.out.print("Router removed successfully\n");
 					} else if (choice == 3) {
-						systemInformationPrinter.printAllFeedbacks();
+						page(systemInformationPrinter::printAllFeedbacks);
 					} else if (choice == 4) {
-						systemInformationPrinter.printSystemRouters();
+						pageRouters((char) 0, 0, Integer.MAX_VALUE);
 					} else if (choice == 5) {
-						System.out.print("Enter router serial number: ");
-						Integer routerSerialNumber = read.nextInt();
-						read.nextLine();
-						systemInformationPrinter.printRouterSchedule(routerSerialNumber);
+						Integer routerSerialNumber = readInt("Enter router serial number: ");
+						page((offset, limit) -> systemInformationPrinter.printRouterSchedule(routerSerialNumber, offset,
+								limit));
 					} else if (choice == 6) {
+						Character model = retry(() -> {
+							System.out.print("Router's model: ");
+							char input = read.next().charAt(0);
+							read.nextLine();
+							return Router.checkModel(input);
+						});
+						pageRouters(model, 0, Integer.MAX_VALUE);
+					} else if (choice == 7) {
+						int minPorts = readInt("Minimum number of ports: ");
+						int maxPorts = readInt("Maximum number of ports: ");
+						pageRouters((char) 0, minPorts, maxPorts);
+					} else if (choice == 8) {
+						exportData();
+					} else if (choice == 9) {
+						importData();
+					} else if (choice == 10) {
+						showAnalytics();
+					} else if (choice == 11) {
+						showMetrics();
+					} else if (choice == 12) {
 						isLoggedin = false;
 					}
 				} else {
-					System.out.print("1] Rent router\n" + "2] Change router\n" + "3] Extend reservation duration\n"
+					Customer c = customer.get().get(id);
+					int choice = readInt("1] Rent router\n" + "2] Change router\n" + "3] Extend reservation duration\n"
 							+ "4] Cancel Reservation\n" + "5] Send feedback\n" + "6] Print available routers\n"
 							+ "7] Print schedule of a router\n" + "8] Print your invoices\n"
-							+ "9] Print your rented router\n" + "10] Print your reservation\n" + "11] Logout\n"
-							+ "Enter your choice: ");
-					int choice = read.nextInt();
-					read.nextLine();
+							+ "9] Print your rented router\n" + "10] Print your reservation\n"
+							+ "11] Find free routers\n" + "12] Logout\n" + "Enter your choice: ");
 					if (choice == 1) {
-						System.out.print("Enter the router serial number: ");
-						Integer routerSerialNumber = read.nextInt();
-						read.nextLine();
-						if (!customer.get(id).rentRouter(routerSerialNumber))
+						Integer routerSerialNumber = readInt("Enter the router serial number: ");
+						if (rentRouter(c, routerSerialNumber) == null)
 							System.out.print("Failed to make reservation.\n");
 						else
 							System.out.print("Reservation made successfully\n");
 					} else if (choice == 2) {
-						System.out.print("Enter the new router serial number: ");
-						Integer routerSerialNumber = read.nextInt();
-						read.nextLine();
-						if (!customer.get(id).changeModel(routerSerialNumber))
+						Integer routerSerialNumber = readInt("Enter the new router serial number: ");
+						int index = readInt("Please, choose the invoice number: ");
+						if (retry(() -> service.changeRouter(c, index, routerSerialNumber)) == null)
 							System.out.print("Failed to change reservation.\n");
 						else
 							System.out.print("Reservation changed successfully\n");
 					} else if (choice == 3) {
-						if (!customer.get(id).extendRentDuration())
+						int index = readInt("Please, choose the invoice number: ");
+						if (retry(() -> service.extendReservation(c, index,
+								readInt("Please, enter the new duration: "))) == null)
 							System.out.print("Failed to extend reservation\n");
 						else
 							System.out.print("Reservation extended successfully\n");
 					} else if (choice == 4) {
-						if (!customer.get(id).cancelRent())
+						int index = readInt("Please, choose the invoice number: ");
+						if (retry(() -> {
+							service.cancelReservation(c, index);
+							return true;
+						}) == null)
 							System.out.print("Failed to cancel reservation\n");
 						else
 							System.out.print("Reservation canceled successfully\n");
 					} else if (choice == 5) {
-						customer.get(id).sendFeedback();
+						retry(() -> {
+							System.out.print("Enter your feedback: ");
+							service.sendFeedback(c, read.nextLine());
+							return true;
+						});
 					} else if (choice == 6) {
-						systemInformationPrinter.printSystemRouters();
+						pageRouters((char) 0, 0, Integer.MAX_VALUE);
 					} else if (choice == 7) {
-						System.out.print("Enter router serial number: ");
-						Integer routerSerialNumber = read.nextInt();
-						read.nextLine();
-						systemInformationPrinter.printRouterSchedule(routerSerialNumber);
+						Integer routerSerialNumber = readInt("Enter router serial number: ");
+						page((offset, limit) -> systemInformationPrinter.printRouterSchedule(routerSerialNumber, offset,
+								limit));
 					} else if (choice == 8) {
-						systemInformationPrinter.printCustomerInvoices(customer.get(id).getInvoices());
+						ArrayList<Invoice> invoices = service.getInvoices(c);
+						page((offset, limit) -> systemInformationPrinter.printCustomerInvoices(invoices, offset, limit));
 					} else if (choice == 9) {
-						Integer routerSerialNumber = customer.get(id).showRouter();
-						if (routerSerialNumber != null)
-							systemInformationPrinter.printRouter(routerSerialNumber);
-						else
-							System.out.print("Invoice not found");
+						int index = readInt("Please, choose the invoice number: ");
+						Invoice i = retry(() -> c.getInvoice(index));
+						if (i != null)
+							systemInformationPrinter.printRouter(i.getRouterSerialNumber());
 					} else if (choice == 10) {
-						Integer reservattionNumber = customer.get(id).showReservation();
-						if (reservattionNumber != null)
-							systemInformationPrinter.printReservation(reservattionNumber);
-						else
-							System.out.print("Invoice not found");
+						int index = readInt("Please, choose the invoice number: ");
+						Invoice i = retry(() -> c.getInvoice(index));
+						if (i != null)
+							systemInformationPrinter.printReservation(i.getReservationNumber());
 					} else if (choice == 11) {
+						ArrayList<Router> routers = findFreeRouters();
+						if (routers != null)
+							systemInformationPrinter.printRouters(routers);
+					} else if (choice == 12) {
 						isLoggedin = false;
 					}
 				}
@@ -1738,17 +10077,10 @@ public class RouterRental {
 		}
 
 		try {
-			SystemManager.closeSystem();
+			SystemManager.closeSystem(SystemManager.savedCustomers());
 		} catch (IOException e) {
 			System.out.print("Failed to close the system properly\n");
 			e.printStackTrace();
 		}
-
-		try {
-			loadUsersToFiles();
-		} catch (IOException e) {
-			System.out.print("Failes to save users\n");
-			e.printStackTrace();
-		}
 	}
 }